@@ -1,6 +1,7 @@
 plugins {
   id("org.springframework.boot") version "3.4.0"
   id("io.spring.dependency-management") version "1.1.6"
+  id("me.champeau.jmh") version "0.7.3"
   java
 }
 
@@ -13,6 +14,8 @@ repositories { mavenCentral() }
 dependencies {
   implementation("org.springframework.boot:spring-boot-starter-webflux")
   implementation("org.springframework.boot:spring-boot-starter-validation")
+  implementation("org.springframework.boot:spring-boot-starter-actuator")
+  runtimeOnly("io.micrometer:micrometer-registry-prometheus")
 
   implementation("org.springframework.boot:spring-boot-starter-security")
   implementation("org.springframework.boot:spring-boot-starter-oauth2-resource-server")
@@ -31,6 +34,20 @@ dependencies {
 
   testImplementation("org.springframework.boot:spring-boot-starter-test")
   testImplementation("io.projectreactor:reactor-test")
+  testImplementation("io.zonky.test:embedded-postgres:2.1.0")
+  testImplementation(enforcedPlatform("io.zonky.test.postgres:embedded-postgres-binaries-bom:16.4.0"))
+  testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
 tasks.withType<Test> { useJUnitPlatform() }
+
+// Бенчмарки горячих путей (src/jmh/java): ./gradlew jmh
+// Результаты — build/results/jmh/results.json, для сравнения между релизами.
+jmh {
+  profilers.add("gc")
+  resultFormat.set("JSON")
+  resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+  fork.set(1)
+  warmupIterations.set(3)
+  iterations.set(5)
+}
@@ -0,0 +1,77 @@
+package com.yourcompany.cosmo.batches.domain;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Расчёт себестоимости партии: BigDecimal-реализация против целочисленного ядра.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CostingBenchmark {
+
+  @Param({"10", "100", "1000"})
+  int products;
+
+  @Param({"20", "200"})
+  int ingredientsPerProduct;
+
+  /** Размер справочника сырья, из которого набираются рецепты. */
+  @Param({"1000"})
+  int rawMaterials;
+
+  List<CostingService.ProductInBatch> batch;
+  Map<UUID, List<CostingService.RecipeItem>> recipeByProduct;
+  Map<UUID, BigDecimal> pricePerGramByRaw;
+  CostingKernel.Bom compiled;
+
+  @Setup
+  public void setUp() {
+    Random rnd = new Random(1);
+
+    List<UUID> raws = new ArrayList<>(rawMaterials);
+    pricePerGramByRaw = new HashMap<>();
+    for (int i = 0; i < rawMaterials; i++) {
+      UUID raw = UUID.randomUUID();
+      raws.add(raw);
+      // как у numeric-деления в Postgres: цена фасовки / размер фасовки
+      pricePerGramByRaw.put(raw, BigDecimal.valueOf(rnd.nextLong(1, 100_000_000_000L), 20));
+    }
+
+    batch = new ArrayList<>(products);
+    recipeByProduct = new HashMap<>();
+    for (int p = 0; p < products; p++) {
+      UUID productId = UUID.randomUUID();
+      batch.add(new CostingService.ProductInBatch(productId, 1 + rnd.nextInt(500)));
+      List<CostingService.RecipeItem> items = new ArrayList<>(ingredientsPerProduct);
+      for (int i = 0; i < ingredientsPerProduct; i++) {
+        items.add(new CostingService.RecipeItem(
+            raws.get(rnd.nextInt(rawMaterials)),
+            BigDecimal.valueOf(rnd.nextLong(1, 500_000_000L), rnd.nextInt(7))));
+      }
+      recipeByProduct.put(productId, items);
+    }
+
+    compiled = CostingKernel.compile(batch, recipeByProduct);
+  }
+
+  @Benchmark
+  public CostingService.Result bigDecimal() {
+    return CostingService.calculate(batch, recipeByProduct, pricePerGramByRaw);
+  }
+
+  @Benchmark
+  public CostingService.Result kernel() {
+    return CostingKernel.calculate(batch, recipeByProduct, pricePerGramByRaw);
+  }
+
+  /** Только оценка по ценам — BOM уже развёрнут. */
+  @Benchmark
+  public CostingService.Result kernelPriceOnly() {
+    return CostingKernel.price(compiled, pricePerGramByRaw);
+  }
+}
@@ -0,0 +1,64 @@
+package com.yourcompany.cosmo.batches.service;
+
+import com.yourcompany.cosmo.batches.domain.CostingKernel;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Оценка сценариев «что если» ({@link CostSimulator#evaluateAll}) поверх загруженных состава и цен:
+ * тысячи сценариев по несколько изменений в каждом.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CostSimulatorBenchmark {
+
+  @Param({"200"})
+  int raws;
+
+  @Param({"1000", "10000"})
+  int scenarios;
+
+  CostSimulator.Base base;
+  List<CostSimulator.Scenario> list;
+
+  @Setup
+  public void setUp() {
+    Random rnd = new Random(1);
+
+    List<TemplateBomCache.Line> lines = new ArrayList<>();
+    Map<UUID, BigDecimal> pricePerGram = new HashMap<>();
+    List<UUID> rawIds = new ArrayList<>();
+    for (int p = 0; p < 20; p++) {
+      UUID productId = UUID.randomUUID();
+      UUID recipeId = UUID.randomUUID();
+      for (int r = 0; r < raws / 20; r++) {
+        UUID raw = UUID.randomUUID();
+        rawIds.add(raw);
+        lines.add(new TemplateBomCache.Line(productId, "Product " + p, 100, recipeId, raw, "Raw " + r,
+            BigDecimal.valueOf(rnd.nextLong(1, 500_000_000L), 6)));
+        pricePerGram.put(raw, BigDecimal.valueOf(rnd.nextLong(1, 100_000_000_000L), 20));
+      }
+    }
+    var bom = TemplateBomCache.TemplateBom.of(lines);
+    base = new CostSimulator.Base(bom, pricePerGram, CostingKernel.price(bom.compiled, pricePerGram), Map.of());
+
+    list = new ArrayList<>(scenarios);
+    for (int s = 0; s < scenarios; s++) {
+      Map<UUID, BigDecimal> multipliers = new HashMap<>();
+      for (int k = 0; k < 3; k++) {
+        multipliers.put(rawIds.get(rnd.nextInt(rawIds.size())), BigDecimal.valueOf(rnd.nextInt(80, 130), 2));
+      }
+      Map<UUID, BigDecimal> fixed = Map.of(rawIds.get(rnd.nextInt(rawIds.size())), BigDecimal.valueOf(5, 3));
+      list.add(new CostSimulator.Scenario("s" + s, multipliers, fixed, Map.of()));
+    }
+  }
+
+  @Benchmark
+  public List<CostSimulator.ScenarioResult> evaluateAll() {
+    return CostSimulator.evaluateAll(base, list).block();
+  }
+}
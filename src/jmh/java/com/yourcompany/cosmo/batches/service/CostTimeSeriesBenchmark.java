@@ -0,0 +1,72 @@
+package com.yourcompany.cosmo.batches.service;
+
+import com.yourcompany.cosmo.batches.domain.CostingKernel;
+import com.yourcompany.cosmo.pricing.domain.PriceTimeline;
+import com.yourcompany.cosmo.pricing.service.RawPriceTimeline;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Себестоимость шаблона на каждый день года: проход по датам смены цен ({@link CostTimeSeries#sweep})
+ * против расчёта на каждую дату (разрешение цен всего сырья + {@link CostingKernel} на каждый день).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CostTimeSeriesBenchmark {
+
+  @Param({"200"})
+  int raws;
+
+  TemplateBomCache.TemplateBom bom;
+  Map<UUID, RawPriceTimeline> timelines;
+  LocalDate from;
+  LocalDate to;
+
+  @Setup
+  public void setUp() {
+    Random rnd = new Random(1);
+    from = LocalDate.of(2026, 1, 1);
+    to = LocalDate.of(2026, 12, 31);
+
+    List<TemplateBomCache.Line> lines = new ArrayList<>();
+    timelines = new HashMap<>();
+    UUID productId = UUID.randomUUID();
+    for (int r = 0; r < raws; r++) {
+      UUID raw = UUID.randomUUID();
+      lines.add(new TemplateBomCache.Line(productId, "Product", 100, UUID.randomUUID(), raw, "Raw " + r,
+          BigDecimal.valueOf(rnd.nextLong(1, 500_000_000L), 6)));
+
+      // цена упаковки меняется примерно раз в месяц
+      List<PriceTimeline.Interval> intervals = new ArrayList<>();
+      for (LocalDate d = from.minusDays(rnd.nextInt(30)); !d.isAfter(to); ) {
+        LocalDate end = d.plusDays(rnd.nextInt(20, 40));
+        intervals.add(new PriceTimeline.Interval(d, end.minusDays(1), BigDecimal.valueOf(rnd.nextLong(1, 100_000_000L), 2)));
+        d = end;
+      }
+      timelines.put(raw, new RawPriceTimeline(raw, UUID.randomUUID(), false, BigDecimal.valueOf(1000),
+          PriceTimeline.of(intervals), PriceTimeline.EMPTY));
+    }
+    bom = TemplateBomCache.TemplateBom.of(lines);
+  }
+
+  @Benchmark
+  public List<CostTimeSeries.CostPoint> sweep() {
+    return CostTimeSeries.sweep(bom, timelines, from, to, CostTimeSeries.Step.DAY);
+  }
+
+  @Benchmark
+  public List<BigDecimal> perDay() {
+    List<BigDecimal> totals = new ArrayList<>();
+    for (LocalDate d = from; !d.isAfter(to); d = d.plusDays(1)) {
+      Map<UUID, BigDecimal> prices = new HashMap<>();
+      for (var e : timelines.entrySet()) prices.put(e.getKey(), e.getValue().at(d).pricePerGram());
+      totals.add(CostingKernel.price(bom.compiled, prices).materialsTotal());
+    }
+    return totals;
+  }
+}
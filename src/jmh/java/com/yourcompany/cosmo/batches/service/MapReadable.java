@@ -0,0 +1,32 @@
+package com.yourcompany.cosmo.batches.service;
+
+import io.r2dbc.spi.Readable;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Строка результата запроса в памяти — значения тех же типов, что отдаёт r2dbc-postgresql.
+ */
+final class MapReadable implements Readable {
+
+  private final List<String> names;
+  private final Object[] values;
+
+  MapReadable(Map<String, ?> values) {
+    this.names = List.copyOf(values.keySet());
+    this.values = this.names.stream().map(values::get).toArray();
+  }
+
+  @Override
+  public <T> T get(int index, Class<T> type) {
+    return type.cast(values[index]);
+  }
+
+  @Override
+  public <T> T get(String name, Class<T> type) {
+    int i = names.indexOf(name);
+    if (i < 0) throw new IllegalArgumentException("Unknown column: " + name);
+    return type.cast(values[i]);
+  }
+}
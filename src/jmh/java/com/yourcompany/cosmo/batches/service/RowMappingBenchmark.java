@@ -0,0 +1,126 @@
+package com.yourcompany.cosmo.batches.service;
+
+import com.yourcompany.cosmo.pricing.service.PriceResolver;
+import io.r2dbc.spi.Readable;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор строк запросов в записи и сборка ответов {@code BatchService.calculateCost}
+ * и {@code BatchSupplierService.getConfig}: развёртывание состава шаблона (выполняется при промахе
+ * {@link TemplateBomCache}) и то, что выполняется на каждый запрос поверх закэшированного состава.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RowMappingBenchmark {
+
+  @Param({"10", "100"})
+  int products;
+
+  @Param({"20", "200"})
+  int ingredientsPerProduct;
+
+  /** Offers на одно сырьё. */
+  @Param({"3"})
+  int offersPerRaw;
+
+  List<Readable> templateRows;
+  TemplateBomCache.TemplateBom bom;
+  Map<UUID, PriceResolver.ResolvedPrice> resolved;
+  LocalDate pricingDate;
+
+  List<Readable> offerRows;
+  Map<UUID, UUID> selectedOffers;
+  Map<PriceResolver.PriceKey, PriceResolver.ResolvedPrice> offerPrices;
+
+  @Setup
+  public void setUp() {
+    Random rnd = new Random(1);
+    pricingDate = LocalDate.of(2026, 1, 15);
+
+    List<UUID> raws = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) raws.add(UUID.randomUUID());
+
+    templateRows = new ArrayList<>();
+    Set<UUID> usedRaws = new LinkedHashSet<>();
+    for (int p = 0; p < products; p++) {
+      UUID productId = UUID.randomUUID();
+      UUID recipeId = UUID.randomUUID();
+      int qty = 1 + rnd.nextInt(500);
+      for (int i = 0; i < ingredientsPerProduct; i++) {
+        UUID raw = raws.get(rnd.nextInt(raws.size()));
+        BigDecimal grams = BigDecimal.valueOf(rnd.nextLong(1, 500_000_000L), 6);
+        usedRaws.add(raw);
+
+        Map<String, Object> line = new HashMap<>();
+        line.put("template_id", UUID.randomUUID());
+        line.put("product_id", productId);
+        line.put("product_name", "Product " + p);
+        line.put("quantity", qty);
+        line.put("recipe_id", recipeId);
+        line.put("raw_id", raw);
+        line.put("raw_name", "Raw " + raw);
+        line.put("amount_gram", grams);
+        templateRows.add(new MapReadable(line));
+      }
+    }
+    bom = compileTemplate();
+
+    resolved = new HashMap<>();
+    offerRows = new ArrayList<>();
+    selectedOffers = new HashMap<>();
+    offerPrices = new HashMap<>();
+    for (UUID raw : usedRaws) {
+      resolved.put(raw, new PriceResolver.ResolvedPrice(
+          raw, BigDecimal.valueOf(rnd.nextLong(1, 100_000_000_000L), 20), PriceResolver.Source.DEFAULT_OFFER, null));
+      for (int o = 0; o < offersPerRaw; o++) {
+        UUID offerId = UUID.randomUUID();
+        if (o == 0) selectedOffers.put(raw, offerId);
+
+        Map<String, Object> offer = new HashMap<>();
+        offer.put("offer_id", offerId);
+        offer.put("supplier_id", UUID.randomUUID());
+        offer.put("supplier_name", "Supplier " + o);
+        offer.put("raw_id", raw);
+        offer.put("package_size", BigDecimal.valueOf(1000L * (o + 1), 3));
+        offer.put("package_unit", "g");
+        offerRows.add(new MapReadable(offer));
+
+        BigDecimal pricePerPackage = BigDecimal.valueOf(rnd.nextLong(100, 100_000), 2);
+        offerPrices.put(new PriceResolver.PriceKey(raw, offerId, pricingDate), new PriceResolver.ResolvedPrice(
+            raw, pricePerPackage.divide(BigDecimal.valueOf(o + 1), 20, RoundingMode.HALF_UP),
+            PriceResolver.Source.OVERRIDE, offerId, pricePerPackage, BigDecimal.valueOf(1000L * (o + 1), 3)));
+      }
+    }
+  }
+
+  /** Промах кэша: строки запроса → развёрнутый состав шаблона. */
+  @Benchmark
+  public TemplateBomCache.TemplateBom compileTemplate() {
+    List<TemplateBomCache.Line> lines = new ArrayList<>(templateRows.size());
+    for (Readable row : templateRows) lines.add(TemplateBomCache.readLine(row));
+    return TemplateBomCache.TemplateBom.of(lines);
+  }
+
+  @Benchmark
+  public BatchService.CostResponse calculateCost() {
+    return BatchService.toCostResponse(pricingDate, bom, resolved, BatchService.CostMode.LINEAR);
+  }
+
+  @Benchmark
+  public List<BatchSupplierService.ProductConfig> supplierConfig() {
+    List<BatchSupplierService.IngredientRow> ingredients = BatchSupplierService.ingredientRows(bom);
+
+    List<BatchSupplierService.OfferRow> offers = new ArrayList<>(offerRows.size());
+    for (Readable row : offerRows) offers.add(BatchSupplierService.readOfferRow(row));
+
+    return BatchSupplierService.assembleProducts(ingredients, selectedOffers,
+        BatchSupplierService.withPrices(BatchSupplierService.groupOffers(offers), offerPrices, pricingDate));
+  }
+}
@@ -0,0 +1,69 @@
+package com.yourcompany.cosmo.batches.service;
+
+import com.yourcompany.cosmo.pricing.service.PriceResolver;
+import com.yourcompany.cosmo.pricing.service.PriceResolver.PriceKey;
+import com.yourcompany.cosmo.pricing.service.PriceResolver.ResolvedPrice;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Подбор самых дешёвых offers ({@link SupplierSelectionOptimizer#propose}) поверх уже разрешённых цен:
+ * сотни видов сырья × десятки offers на каждое.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SupplierSelectionOptimizerBenchmark {
+
+  @Param({"100", "500"})
+  int raws;
+
+  @Param({"10", "50"})
+  int offersPerRaw;
+
+  TemplateBomCache.TemplateBom bom;
+  Map<UUID, UUID> overrides;
+  Map<UUID, List<BatchSupplierService.OfferOption>> offersByRaw;
+  Map<PriceKey, ResolvedPrice> resolved;
+  LocalDate pricingDate;
+
+  @Setup
+  public void setUp() {
+    Random rnd = new Random(1);
+    pricingDate = LocalDate.of(2026, 1, 15);
+
+    List<TemplateBomCache.Line> lines = new ArrayList<>();
+    overrides = new HashMap<>();
+    offersByRaw = new HashMap<>();
+    resolved = new HashMap<>();
+
+    UUID productId = UUID.randomUUID();
+    UUID recipeId = UUID.randomUUID();
+    for (int r = 0; r < raws; r++) {
+      UUID raw = UUID.randomUUID();
+      lines.add(new TemplateBomCache.Line(productId, "Product", 100, recipeId, raw, "Raw " + r,
+          BigDecimal.valueOf(rnd.nextLong(1, 500_000_000L), 6)));
+
+      List<BatchSupplierService.OfferOption> offers = new ArrayList<>();
+      for (int o = 0; o < offersPerRaw; o++) {
+        UUID offerId = UUID.randomUUID();
+        offers.add(new BatchSupplierService.OfferOption(offerId, UUID.randomUUID(), "Supplier " + o,
+            BigDecimal.valueOf(1000L * (o + 1), 3), "g"));
+        resolved.put(new PriceKey(raw, offerId, pricingDate), new ResolvedPrice(
+            raw, BigDecimal.valueOf(rnd.nextLong(1, 100_000_000_000L), 20), PriceResolver.Source.OVERRIDE, offerId));
+      }
+      offersByRaw.put(raw, offers);
+      overrides.put(raw, offers.get(0).offerId());
+    }
+    bom = TemplateBomCache.TemplateBom.of(lines);
+  }
+
+  @Benchmark
+  public SupplierSelectionOptimizer.OptimizationResult propose() {
+    return SupplierSelectionOptimizer.propose(UUID.randomUUID(), pricingDate, bom, overrides, offersByRaw, resolved);
+  }
+}
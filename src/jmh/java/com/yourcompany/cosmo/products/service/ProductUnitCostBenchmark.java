@@ -0,0 +1,58 @@
+package com.yourcompany.cosmo.products.service;
+
+import com.yourcompany.cosmo.batches.domain.CostingService;
+import com.yourcompany.cosmo.pricing.service.PriceResolver;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Себестоимость единицы всех продуктов справочника ({@link ProductUnitCostService#priceAll}) поверх загруженных
+ * рецептов и цен: 50 тыс. продуктов, рецепты по 5–20 строк из 5 тыс. видов сырья.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProductUnitCostBenchmark {
+
+  @Param({"50000"})
+  int products;
+
+  List<ProductUnitCostService.ProductRow> rows;
+  Map<UUID, List<CostingService.RecipeItem>> recipes;
+  Map<UUID, PriceResolver.ResolvedPrice> resolved;
+
+  @Setup
+  public void setUp() {
+    Random rnd = new Random(1);
+
+    List<UUID> raws = new ArrayList<>();
+    resolved = new HashMap<>();
+    for (int r = 0; r < 5000; r++) {
+      UUID raw = UUID.randomUUID();
+      raws.add(raw);
+      resolved.put(raw, new PriceResolver.ResolvedPrice(raw, BigDecimal.valueOf(rnd.nextLong(1, 100_000_000_000L), 20),
+          PriceResolver.Source.DEFAULT_OFFER, UUID.randomUUID()));
+    }
+
+    rows = new ArrayList<>(products);
+    recipes = new HashMap<>();
+    for (int p = 0; p < products; p++) {
+      UUID recipeId = UUID.randomUUID();
+      List<CostingService.RecipeItem> items = new ArrayList<>();
+      for (int i = 0, n = rnd.nextInt(5, 21); i < n; i++) {
+        items.add(new CostingService.RecipeItem(raws.get(rnd.nextInt(raws.size())),
+            BigDecimal.valueOf(rnd.nextLong(1, 500_000_000L), 6)));
+      }
+      recipes.put(recipeId, items);
+      rows.add(new ProductUnitCostService.ProductRow(UUID.randomUUID(), "Product " + p, null, recipeId));
+    }
+  }
+
+  @Benchmark
+  public List<ProductUnitCostService.UnitCost> priceAll() {
+    return ProductUnitCostService.priceAll(rows, recipes, resolved).collectList().block();
+  }
+}
@@ -0,0 +1,63 @@
+package com.yourcompany.cosmo.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Извлечение ролей Keycloak из JWT — выполняется на каждый аутентифицированный запрос
+ * без кэша {@link CachingJwtAuthenticationConverter}, и повторный запрос с тем же токеном через кэш.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KeycloakRolesExtractorBenchmark {
+
+  /** Клиентов в resource_access. */
+  @Param({"1", "5"})
+  int clients;
+
+  @Param({"3", "20"})
+  int rolesPerClient;
+
+  Jwt jwt;
+  CachingJwtAuthenticationConverter converter;
+
+  @Setup
+  public void setUp() {
+    Map<String, Object> resourceAccess = new HashMap<>();
+    for (int c = 0; c < clients; c++) {
+      List<String> roles = new ArrayList<>();
+      for (int r = 0; r < rolesPerClient; r++) roles.add("client-" + c + "-role-" + r);
+      resourceAccess.put("client-" + c, Map.of("roles", roles));
+    }
+
+    jwt = Jwt.withTokenValue("token")
+        .header("alg", "RS256")
+        .subject("user")
+        // Keycloak выдаёт jti в каждом access token — по нему и ищет кэш
+        .jti("b4b1c6d2-5f0e-4f4a-9a3e-2d7c1e8f9a10")
+        .issuedAt(Instant.now())
+        .expiresAt(Instant.now().plusSeconds(3600))
+        .claim("realm_access", Map.of("roles", List.of("offline_access", "uma_authorization", "ADMIN")))
+        .claim("resource_access", resourceAccess)
+        .build();
+
+    converter = new CachingJwtAuthenticationConverter(new SimpleMeterRegistry(), 10_000);
+  }
+
+  @Benchmark
+  public Collection<GrantedAuthority> extract() {
+    return KeycloakRolesExtractor.extract(jwt);
+  }
+
+  @Benchmark
+  public Object convertCached() {
+    return converter.authenticate(jwt);
+  }
+}
@@ -8,10 +8,15 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -85,7 +90,8 @@ public class BatchController {
           description = """
           Переводит партию в статус OPEN.
           При открытии партии фиксируется дата ценообразования,
-          которая используется при расчёте себестоимости.
+          которая используется при расчёте себестоимости,
+          и сохраняется снимок себестоимости на эту дату.
           """
   )
   @ApiResponses({
@@ -101,6 +107,7 @@ public class BatchController {
   /**
    * Рассчитать себестоимость партии.
    * <p>
+   * Для открытой партии возвращается снимок, зафиксированный при открытии или последнем пересчёте.
    * Возвращает детализированный расчёт себестоимости партии:
    * <ul>
    *   <li>потребность в сырье</li>
@@ -108,6 +115,8 @@ public class BatchController {
    *   <li>стоимость сырья</li>
    *   <li>итоговую себестоимость партии</li>
    * </ul>
+   * С {@code mode=PROCUREMENT} дополнительно рассчитывается закупка целыми упаковками offers:
+   * число упаковок, затраты на закупку и остаток сырья после партии.
    * </p>
    */
   @Operation(
@@ -118,6 +127,9 @@ public class BatchController {
           - выбранных поставщиков сырья,
           - дефолтных или ручных цен,
           - зафиксированной даты ценообразования.
+          Для партии в статусе OPEN возвращается зафиксированный снимок себестоимости.
+          mode=PROCUREMENT: потребность по каждому сырью округляется вверх до целых упаковок
+          выбранного offer'а — возвращаются число упаковок, затраты на закупку и остаток в граммах.
           """
   )
   @ApiResponses({
@@ -125,7 +137,77 @@ public class BatchController {
           @ApiResponse(responseCode = "404", description = "Партия не найдена")
   })
   @GetMapping("/{id}/cost")
-  public Mono<BatchService.CostResponse> cost(@PathVariable UUID id) {
-    return service.calculateCost(id);
+  public Mono<BatchService.CostResponse> cost(
+          @PathVariable UUID id,
+          @RequestParam(defaultValue = "LINEAR") BatchService.CostMode mode
+  ) {
+    return service.calculateCost(id, mode);
+  }
+
+  /**
+   * Пересчитать зафиксированную себестоимость открытой партии.
+   * <p>
+   * Используется после изменения выбора поставщиков партии: снимок себестоимости
+   * пересчитывается на зафиксированную дату ценообразования.
+   * </p>
+   */
+  @Operation(
+          summary = "Пересчитать себестоимость открытой партии",
+          description = """
+          Пересчитывает и заново фиксирует снимок себестоимости партии в статусе OPEN
+          на её дату ценообразования (с учётом текущего выбора поставщиков).
+          """
+  )
+  @ApiResponses({
+          @ApiResponse(responseCode = "200", description = "Себестоимость пересчитана"),
+          @ApiResponse(responseCode = "400", description = "Партия не в статусе OPEN"),
+          @ApiResponse(responseCode = "404", description = "Партия не найдена")
+  })
+  @PostMapping("/{id}/reprice")
+  public Mono<BatchService.CostResponse> reprice(@PathVariable UUID id) {
+    return service.reprice(id);
+  }
+
+  /**
+   * DTO запроса на пакетный расчёт себестоимости.
+   */
+  public record BulkCostRequest(
+
+          @Schema(
+                  description = "Идентификаторы партий для расчёта себестоимости",
+                  example = "[\"b8b9f1c2-8a3b-4c1e-9d4a-2f1a9a3d2e77\"]"
+          )
+          @NotEmpty
+          @Size(max = 1000)
+          List<@NotNull UUID> batchIds
+  ) {}
+
+  /**
+   * Рассчитать себестоимость нескольких партий за один вызов.
+   * <p>
+   * Результат по каждой партии совпадает с {@code GET /api/batches/{id}/cost}.
+   * Состав шаблонов и цены сырья загружаются один раз для всех партий.
+   * При запросе с {@code Accept: application/x-ndjson} результаты передаются потоком по одной партии в строке.
+   * </p>
+   */
+  @Operation(
+          summary = "Рассчитать себестоимость нескольких партий",
+          description = """
+          Выполняет расчёт себестоимости для списка партий (до 1000) за один вызов.
+          Результат по каждой партии совпадает с расчётом GET /api/batches/{id}/cost.
+          Для несуществующей партии возвращается элемент с ошибкой.
+          Поддерживает потоковую выдачу в формате application/x-ndjson.
+          """
+  )
+  @ApiResponses({
+          @ApiResponse(responseCode = "200", description = "Себестоимость успешно рассчитана"),
+          @ApiResponse(responseCode = "400", description = "Ошибка валидации входных данных")
+  })
+  @PostMapping(value = "/cost:bulk", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+  public Flux<BatchService.BulkCostItem> bulkCost(
+          @RequestBody @Valid BulkCostRequest req,
+          @RequestParam(defaultValue = "LINEAR") BatchService.CostMode mode
+  ) {
+    return service.calculateCostBulk(req.batchIds(), mode);
   }
 }
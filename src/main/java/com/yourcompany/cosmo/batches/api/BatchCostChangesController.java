@@ -0,0 +1,58 @@
+package com.yourcompany.cosmo.batches.api;
+
+import com.yourcompany.cosmo.batches.service.BatchCostTracker;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * Контроллер журнала изменений себестоимости партий после изменения цен и выбора поставщиков.
+ */
+@Tag(
+        name = "Партии — изменения себестоимости",
+        description = "Партии, себестоимость материалов которых изменилась после изменения цен, offers или выбора поставщиков"
+)
+@RestController
+@RequestMapping("/api/batches")
+@RequiredArgsConstructor
+public class BatchCostChangesController {
+
+  private final BatchCostTracker tracker;
+
+  /**
+   * Последние изменения себестоимости партий.
+   */
+  @Operation(
+          summary = "Последние изменения себестоимости партий",
+          description = """
+          После каждого изменения цен offers, ручных цен, дефолтных offers или выбора поставщиков
+          пересчитываются только затронутые партии (по дате ценообразования партии).
+          Возвращает партии, себестоимость материалов которых изменилась (mode=LINEAR, по текущим данным):
+          прежнее и новое значение и разницу. Снимки открытых партий не меняются — для них нужен reprice.
+          """
+  )
+  @ApiResponses({
+          @ApiResponse(responseCode = "200", description = "Журнал изменений")
+  })
+  @GetMapping(value = "/cost-changes", produces = MediaType.APPLICATION_JSON_VALUE)
+  public List<BatchCostTracker.CostChange> recent() {
+    return tracker.recentChanges();
+  }
+
+  /**
+   * Изменения себестоимости партий потоком по мере обнаружения (NDJSON).
+   */
+  @GetMapping(value = "/cost-changes", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public Flux<BatchCostTracker.CostChange> stream() {
+    return tracker.changes();
+  }
+}
@@ -0,0 +1,44 @@
+package com.yourcompany.cosmo.batches.api;
+
+import com.yourcompany.cosmo.batches.service.BatchSupplierService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+
+/**
+ * {@code GET /api/batches/{batchId}/supplier-config} с JSON, собранным в Postgres
+ * ({@link BatchSupplierService#getConfigJson}); включается {@code cosmo.batches.supplier-config.sql-json=true}.
+ * <p>
+ * Функциональные маршруты проверяются раньше аннотированных контроллеров, поэтому этот маршрут перекрывает
+ * {@link BatchSupplierController#config}. Части готового JSON пишутся в ответ как есть, минуя кодеки Jackson.
+ * </p>
+ */
+@Configuration
+@ConditionalOnProperty(name = "cosmo.batches.supplier-config.sql-json", havingValue = "true")
+public class BatchSupplierConfigJsonRoute {
+
+  @Bean
+  RouterFunction<ServerResponse> supplierConfigJsonRoute(BatchSupplierService service) {
+    return RouterFunctions.route(GET("/api/batches/{batchId}/supplier-config"), request -> {
+      UUID batchId = UUID.fromString(request.pathVariable("batchId"));
+      Flux<DataBuffer> body = service.getConfigJson(batchId)
+          .map(part -> DefaultDataBufferFactory.sharedInstance.wrap(part.getBytes(StandardCharsets.UTF_8)));
+      return ServerResponse.ok()
+          .contentType(MediaType.APPLICATION_JSON)
+          .body(BodyInserters.fromDataBuffers(body));
+    });
+  }
+}
@@ -1,7 +1,9 @@
 package com.yourcompany.cosmo.batches.api;
 
 import com.yourcompany.cosmo.batches.service.BatchSupplierService;
+import com.yourcompany.cosmo.batches.service.SupplierSelectionOptimizer;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
@@ -23,6 +25,7 @@ import java.util.UUID;
  *   <li>получить конфигурацию партии для UI (продукты → ингредиенты → доступные предложения поставщиков)</li>
  *   <li>сохранить выбранные предложения поставщиков (override) для партии</li>
  *   <li>сбросить выбор для конкретного сырья, чтобы использовать значения по умолчанию</li>
+ *   <li>подобрать самые дешёвые предложения на дату ценообразования партии</li>
  * </ul>
  * </p>
  *
@@ -40,6 +43,7 @@ import java.util.UUID;
 public class BatchSupplierController {
 
   private final BatchSupplierService service;
+  private final SupplierSelectionOptimizer optimizer;
 
 
   /**
@@ -49,6 +53,10 @@ public class BatchSupplierController {
    * продукты партии, их ингредиенты (сырьё), текущие выбранные предложения (если есть),
    * а также список доступных предложений поставщиков для каждого вида сырья.
    * </p>
+   * <p>
+   * С {@code cosmo.batches.supplier-config.sql-json=true} запрос обслуживает {@link BatchSupplierConfigJsonRoute}:
+   * тот же JSON собирается одним запросом в Postgres и пишется в ответ по мере чтения строк, по продукту.
+   * </p>
    *
    * @param batchId идентификатор партии
    * @return конфигурация для UI выбора поставщиков
@@ -60,11 +68,13 @@ public class BatchSupplierController {
           - список продуктов партии,
           - ингредиенты рецептов (сырьё и граммовки),
           - текущий выбранный offer по каждому сырью (если задан),
-          - список доступных offers поставщиков для каждого сырья.
+          - список доступных offers поставщиков для каждого сырья
+            с ценой упаковки и грамма на дату ценообразования партии.
           """
   )
   @ApiResponses({
-          @ApiResponse(responseCode = "200", description = "Конфигурация успешно получена"),
+          @ApiResponse(responseCode = "200", description = "Конфигурация успешно получена",
+                  content = @Content(schema = @Schema(implementation = BatchSupplierService.BatchSupplierConfigResponse.class))),
           @ApiResponse(responseCode = "404", description = "Партия не найдена")
   })
   @GetMapping("/supplier-config")
@@ -151,4 +161,36 @@ public class BatchSupplierController {
   public Mono<Void> clear(@PathVariable UUID batchId, @PathVariable UUID rawMaterialId) {
     return service.clearSelection(batchId, rawMaterialId);
   }
+
+  /**
+   * Подобрать самые дешёвые предложения поставщиков для партии.
+   * <p>
+   * Для каждого сырья сравниваются все активные offers по цене на дату ценообразования партии.
+   * Предлагается offer, который строго дешевле текущей цены сырья; с {@code apply=true} выбор сохраняется.
+   * </p>
+   *
+   * @param batchId идентификатор партии
+   * @param apply сохранить предложенный выбор как override партии
+   * @return предложения по сырью и себестоимость материалов до и после
+   */
+  @Operation(
+          summary = "Подобрать самые дешёвые предложения поставщиков",
+          description = """
+          Для каждого сырья партии оценивает все активные offers по цене на дату ценообразования
+          и предлагает самый дешёвый, если он дешевле текущей цены.
+          С apply=true предложенный выбор сохраняется (как PUT /supplier-selections).
+          Для открытой партии снимок себестоимости обновляется через reprice.
+          """
+  )
+  @ApiResponses({
+          @ApiResponse(responseCode = "200", description = "Предложения рассчитаны"),
+          @ApiResponse(responseCode = "404", description = "Партия не найдена")
+  })
+  @PostMapping("/supplier-selections:optimize")
+  public Mono<SupplierSelectionOptimizer.OptimizationResult> optimize(
+          @PathVariable UUID batchId,
+          @RequestParam(defaultValue = "false") boolean apply
+  ) {
+    return optimizer.optimize(batchId, apply);
+  }
 }
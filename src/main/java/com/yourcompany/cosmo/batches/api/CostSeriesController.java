@@ -0,0 +1,82 @@
+package com.yourcompany.cosmo.batches.api;
+
+import com.yourcompany.cosmo.batches.service.CostTimeSeries;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Контроллер динамики себестоимости материалов по датам (для графиков).
+ */
+@Tag(
+        name = "Партии — динамика себестоимости",
+        description = "Себестоимость материалов партии или шаблона на каждую дату диапазона"
+)
+@RestController
+@RequestMapping("/api")
+@RequiredArgsConstructor
+public class CostSeriesController {
+
+  private final CostTimeSeries series;
+
+  /**
+   * Себестоимость материалов партии на даты диапазона.
+   * <p>
+   * Используются состав шаблона партии и выбор поставщиков партии; дата ценообразования партии не учитывается.
+   * </p>
+   */
+  @Operation(
+          summary = "Динамика себестоимости партии",
+          description = """
+          Возвращает себестоимость материалов партии (как GET /api/batches/{id}/cost, mode=LINEAR)
+          на каждую дату смены цен между from и to (step=CHANGES) или на каждый день (step=DAY).
+          Первая точка — на дату from. Для каждой точки перечислено сырьё, цена которого сменилась.
+          """
+  )
+  @ApiResponses({
+          @ApiResponse(responseCode = "200", description = "Динамика рассчитана"),
+          @ApiResponse(responseCode = "400", description = "Неверный диапазон дат"),
+          @ApiResponse(responseCode = "404", description = "Партия не найдена")
+  })
+  @GetMapping("/batches/{id}/cost:series")
+  public Mono<CostTimeSeries.Series> batchSeries(
+          @PathVariable UUID id,
+          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+          @RequestParam(defaultValue = "CHANGES") CostTimeSeries.Step step
+  ) {
+    return series.forBatch(id, from, to, step);
+  }
+
+  /**
+   * Себестоимость материалов шаблона партии на даты диапазона (по дефолтным offers сырья).
+   */
+  @Operation(
+          summary = "Динамика себестоимости шаблона партии",
+          description = """
+          То же, что динамика партии, но без выбора поставщиков партии:
+          цены берутся по дефолтным offers, а где их нет — по ручным ценам сырья.
+          """
+  )
+  @ApiResponses({
+          @ApiResponse(responseCode = "200", description = "Динамика рассчитана"),
+          @ApiResponse(responseCode = "400", description = "Неверный диапазон дат")
+  })
+  @GetMapping("/batch-templates/{id}/cost:series")
+  public Mono<CostTimeSeries.Series> templateSeries(
+          @PathVariable UUID id,
+          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+          @RequestParam(defaultValue = "CHANGES") CostTimeSeries.Step step
+  ) {
+    return series.forTemplate(id, from, to, step);
+  }
+}
@@ -0,0 +1,90 @@
+package com.yourcompany.cosmo.batches.api;
+
+import com.yourcompany.cosmo.batches.service.CostSimulator;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Контроллер сценариев «что если» для себестоимости материалов.
+ * <p>
+ * Сценарии не меняют ни цены, ни выбор поставщиков — всё считается в памяти
+ * поверх загруженных один раз состава и цен.
+ * </p>
+ */
+@Tag(
+        name = "Партии — сценарии",
+        description = "Оценка себестоимости материалов при изменении цен и поставщиков без сохранения изменений"
+)
+@RestController
+@RequestMapping("/api/batches")
+@RequiredArgsConstructor
+public class CostSimulationController {
+
+  private final CostSimulator simulator;
+
+  /**
+   * DTO запроса на расчёт сценариев: партия либо шаблон с датой ценообразования.
+   */
+  public record SimulationRequest(
+
+          @Schema(
+                  description = "Идентификатор партии (дата ценообразования и выбор поставщиков берутся из партии)",
+                  example = "b8b9f1c2-8a3b-4c1e-9d4a-2f1a9a3d2e77"
+          )
+          UUID batchId,
+
+          @Schema(
+                  description = "Идентификатор шаблона партии (если партия не задана)",
+                  example = "4c3e2a1b-9d8f-4e7a-8b6c-5d4e3f2a1b0c"
+          )
+          UUID templateId,
+
+          @Schema(description = "Дата ценообразования для шаблона (по умолчанию — сегодня)", example = "2026-01-15")
+          LocalDate pricingDate,
+
+          @Schema(description = "Сценарии: множители цен, фиксированные цены за грамм и смена offers по сырью")
+          @NotEmpty
+          List<CostSimulator.Scenario> scenarios
+  ) {}
+
+  /**
+   * Рассчитать себестоимость материалов по сценариям.
+   * <p>
+   * Для каждого сценария возвращается себестоимость материалов, отличие от базовой
+   * и сырьё, стоимость которого изменилась.
+   * </p>
+   */
+  @Operation(
+          summary = "Рассчитать сценарии «что если»",
+          description = """
+          Оценивает список сценариев для партии (batchId) или шаблона на дату (templateId + pricingDate).
+          Сценарий задаёт по сырью: множитель цены, фиксированную цену за грамм или offer,
+          на который переключить сырьё (только активный offer этого сырья).
+          Изменения применяются в порядке: offer → цена → множитель.
+          Расчёт совпадает с GET /api/batches/{id}/cost (mode=LINEAR); данные не меняются.
+          """
+  )
+  @ApiResponses({
+          @ApiResponse(responseCode = "200", description = "Сценарии рассчитаны"),
+          @ApiResponse(responseCode = "400", description = "Ошибка валидации входных данных"),
+          @ApiResponse(responseCode = "404", description = "Партия не найдена")
+  })
+  @PostMapping("/cost:simulate")
+  public Mono<CostSimulator.SimulationResult> simulate(@RequestBody @Valid SimulationRequest req) {
+    if (req.batchId() != null) return simulator.simulateBatch(req.batchId(), req.scenarios());
+    if (req.templateId() == null) return Mono.error(new IllegalArgumentException("batchId or templateId is required"));
+    return simulator.simulateTemplate(req.templateId(), req.pricingDate(), req.scenarios());
+  }
+}
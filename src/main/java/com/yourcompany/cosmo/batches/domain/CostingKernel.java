@@ -0,0 +1,209 @@
+package com.yourcompany.cosmo.batches.domain;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Расчёт себестоимости на целочисленной арифметике с фиксированной точкой.
+ * <p>
+ * Даёт тот же результат, что и {@link CostingService#calculate}, вплоть до scale каждого {@link BigDecimal},
+ * но без {@code BigDecimal.multiply/merge} на каждую строку рецепта: сырьё отображается в плотные
+ * порядковые номера, граммы и стоимости накапливаются в массивах {@code long} (scale граммов — 6,
+ * как у {@code numeric(14,6)}), а {@link BigDecimal} создаются только на выходе.
+ * Строки сортируются по битам UUID — это тот же порядок, что и по {@code UUID.toString()}.
+ * </p>
+ * <p>
+ * Если граммовки не помещаются в эту модель (scale больше 6, переполнение {@code long}), расчёт выполняется
+ * через {@link CostingService#calculate}; стоимость по цене, не помещающейся в {@code long}, считается
+ * через {@link BigDecimal} — один раз на вид сырья, а не на строку рецепта.
+ * </p>
+ */
+public final class CostingKernel {
+
+  /** Scale граммов (как у колонки {@code amount_gram numeric(14,6)}). */
+  public static final int GRAMS_SCALE = 6;
+
+  private static final long[] POW10 = new long[19];
+
+  /** Признак переполнения в {@link #multiply}. */
+  private static final long OVERFLOW = Long.MIN_VALUE;
+
+  static {
+    POW10[0] = 1;
+    for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+  }
+
+  /**
+   * Потребность в сырье, отсортированная по UUID: граммы хранятся как {@code unscaled × 10^-scale}.
+   * Не зависит от цен, поэтому может переиспользоваться для разных дат и сценариев.
+   */
+  public static final class Bom {
+    private final UUID[] rawMaterialIds;
+    private final long[] grams;
+    private final int[] gramsScale;
+    /** Исходные данные — только если целочисленная модель неприменима. */
+    private final List<CostingService.ProductInBatch> products;
+    private final Map<UUID, List<CostingService.RecipeItem>> recipeByProduct;
+
+    private Bom(UUID[] rawMaterialIds, long[] grams, int[] gramsScale) {
+      this.rawMaterialIds = rawMaterialIds;
+      this.grams = grams;
+      this.gramsScale = gramsScale;
+      this.products = null;
+      this.recipeByProduct = null;
+    }
+
+    private Bom(List<CostingService.ProductInBatch> products, Map<UUID, List<CostingService.RecipeItem>> recipeByProduct) {
+      this.rawMaterialIds = null;
+      this.grams = null;
+      this.gramsScale = null;
+      this.products = products;
+      this.recipeByProduct = recipeByProduct;
+    }
+
+    public int size() {
+      return rawMaterialIds == null ? -1 : rawMaterialIds.length;
+    }
+  }
+
+  public static CostingService.Result calculate(
+      List<CostingService.ProductInBatch> products,
+      Map<UUID, List<CostingService.RecipeItem>> recipeByProduct,
+      Map<UUID, BigDecimal> pricePerGramByRaw
+  ) {
+    return price(compile(products, recipeByProduct), pricePerGramByRaw);
+  }
+
+  /**
+   * Развернуть продукты и рецепты в суммарную потребность по сырью.
+   */
+  public static Bom compile(
+      List<CostingService.ProductInBatch> products,
+      Map<UUID, List<CostingService.RecipeItem>> recipeByProduct
+  ) {
+    Map<UUID, Integer> ordinals = new HashMap<>();
+    UUID[] ids = new UUID[16];
+    long[] acc = new long[16];
+    int[] scale = new int[16];
+    int n = 0;
+
+    for (var p : products) {
+      var items = recipeByProduct.get(p.productId());
+      if (items == null) continue;
+      long qty = p.quantity();
+
+      for (var it : items) {
+        BigDecimal amount = it.gramsPerProductUnit();
+        int s = amount.scale();
+        if (s < 0 || s > GRAMS_SCALE || amount.precision() > 18) return new Bom(products, recipeByProduct);
+
+        Integer ord = ordinals.get(it.rawMaterialId());
+        if (ord == null) {
+          ord = n;
+          ordinals.put(it.rawMaterialId(), ord);
+          if (n == ids.length) {
+            ids = Arrays.copyOf(ids, n * 2);
+            acc = Arrays.copyOf(acc, n * 2);
+            scale = Arrays.copyOf(scale, n * 2);
+          }
+          ids[n] = it.rawMaterialId();
+          scale[n] = s;
+          n++;
+        }
+
+        long add = multiply(amount.scaleByPowerOfTen(s).longValue(), POW10[GRAMS_SCALE - s] * qty);
+        long sum = acc[ord] + add;
+        if (add == OVERFLOW || ((acc[ord] ^ sum) & (add ^ sum)) < 0) {
+          return new Bom(products, recipeByProduct);
+        }
+        acc[ord] = sum;
+        if (s > scale[ord]) scale[ord] = s;
+      }
+    }
+
+    UUID[] sorted = Arrays.copyOf(ids, n);
+    Arrays.sort(sorted, CostingKernel::compareUuid);
+
+    long[] grams = new long[n];
+    int[] gramsScale = new int[n];
+    for (int i = 0; i < n; i++) {
+      int ord = ordinals.get(sorted[i]);
+      gramsScale[i] = scale[ord];
+      // сумма вкладов со scale <= scale[ord] делится на 10^(6 - scale[ord]) без остатка
+      grams[i] = acc[ord] / POW10[GRAMS_SCALE - scale[ord]];
+    }
+    return new Bom(sorted, grams, gramsScale);
+  }
+
+  /**
+   * Оценить потребность по ценам за грамм.
+   */
+  public static CostingService.Result price(Bom bom, Map<UUID, BigDecimal> pricePerGramByRaw) {
+    if (bom.rawMaterialIds == null) {
+      return CostingService.calculate(bom.products, bom.recipeByProduct, pricePerGramByRaw);
+    }
+
+    int n = bom.rawMaterialIds.length;
+    long[] cost = new long[n];
+    int[] costScale = new int[n];
+    boolean allExact = true;
+    int totalScale = 0;
+
+    List<CostingService.RawCost> rows = new ArrayList<>(n);
+    BigDecimal[] costs = new BigDecimal[n];
+
+    for (int i = 0; i < n; i++) {
+      BigDecimal price = pricePerGramByRaw.getOrDefault(bom.rawMaterialIds[i], BigDecimal.ZERO);
+      BigDecimal grams = BigDecimal.valueOf(bom.grams[i], bom.gramsScale[i]);
+      costScale[i] = bom.gramsScale[i] + price.scale();
+      if (costScale[i] > totalScale) totalScale = costScale[i];
+
+      cost[i] = price.scale() >= 0 && price.precision() <= 18
+          ? multiply(bom.grams[i], price.scaleByPowerOfTen(price.scale()).longValue())
+          : OVERFLOW;
+      if (cost[i] == OVERFLOW) {
+        // цена с большим числом значащих цифр (например, результат numeric-деления в Postgres)
+        allExact = false;
+        costs[i] = grams.multiply(price);
+      } else {
+        costs[i] = BigDecimal.valueOf(cost[i], costScale[i]);
+      }
+      rows.add(new CostingService.RawCost(bom.rawMaterialIds[i], grams, price, costs[i]));
+    }
+
+    return new CostingService.Result(rows, allExact ? total(costs, cost, costScale, totalScale) : total(costs));
+  }
+
+  private static BigDecimal total(BigDecimal[] costs, long[] cost, int[] costScale, int totalScale) {
+    long sum = 0;
+    for (int i = 0; i < cost.length; i++) {
+      int shift = totalScale - costScale[i];
+      long term = shift < POW10.length ? multiply(cost[i], POW10[shift]) : OVERFLOW;
+      long next = sum + term;
+      if (term == OVERFLOW || ((sum ^ next) & (term ^ next)) < 0) return total(costs);
+      sum = next;
+    }
+    return BigDecimal.valueOf(sum, totalScale);
+  }
+
+  private static BigDecimal total(BigDecimal[] costs) {
+    BigDecimal total = BigDecimal.ZERO;
+    for (BigDecimal c : costs) total = total.add(c);
+    return total;
+  }
+
+  /** {@code a × b} или {@link #OVERFLOW}, если произведение не помещается в {@code long} (без исключений). */
+  private static long multiply(long a, long b) {
+    long lo = a * b;
+    long hi = Math.multiplyHigh(a, b);
+    return hi == (lo >> 63) && lo != OVERFLOW ? lo : OVERFLOW;
+  }
+
+  /** Порядок UUID как у {@code UUID.toString()}: беззнаковое сравнение старших, затем младших 64 бит. */
+  static int compareUuid(UUID a, UUID b) {
+    int c = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+    return c != 0 ? c : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+  }
+
+  private CostingKernel() {}
+}
@@ -0,0 +1,144 @@
+package com.yourcompany.cosmo.batches.repository;
+
+import com.yourcompany.cosmo.config.HotPathMetrics;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Репозиторий зафиксированной себестоимости партии (таблица batch_cost_snapshot).
+ * Снимок пишется при открытии партии и при явном пересчёте (reprice).
+ */
+@Repository
+public class BatchCostSnapshotRepository {
+
+    /**
+     * Строка снимка: себестоимость одного вида сырья в партии.
+     * {@code packageSize} и {@code pricePerPackage} — фасовка и цена упаковки offer'а ({@code null} без offer'а).
+     */
+    public record SnapshotRow(
+        UUID rawMaterialId,
+        BigDecimal grams,
+        BigDecimal unitPrice,
+        BigDecimal cost,
+        String priceSource,
+        UUID supplierMaterialId,
+        BigDecimal packageSize,
+        BigDecimal pricePerPackage
+    ) {}
+
+    /**
+     * Партия и её снимок; {@code rows} пуст, если снимка нет.
+     */
+    public record BatchSnapshot(UUID batchId, UUID templateId, String status, LocalDate pricingDate, List<SnapshotRow> rows) {}
+
+    private record Line(UUID batchId, UUID templateId, String status, LocalDate pricingDate, SnapshotRow row) {}
+
+    private final DatabaseClient db;
+    private final HotPathMetrics metrics;
+
+    public BatchCostSnapshotRepository(DatabaseClient db, HotPathMetrics metrics) {
+        this.db = db;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Читает партию вместе со снимком одним запросом. Пусто, если партии нет.
+     */
+    public Mono<BatchSnapshot> findByBatchId(UUID batchId) {
+        return findByBatchIds(List.of(batchId)).next();
+    }
+
+    /**
+     * Читает партии вместе со снимками одним запросом. Отсутствующие партии пропускаются.
+     */
+    public Flux<BatchSnapshot> findByBatchIds(Collection<UUID> batchIds) {
+        return metrics.sql("batch_cost_snapshot.find", db.sql("""
+                SELECT b.id AS batch_id, b.template_id, b.status, b.pricing_date,
+                       s.raw_material_id, s.grams, s.unit_price, s.cost, s.price_source, s.supplier_material_id,
+                       s.package_size, s.price_per_package
+                FROM batch b
+                LEFT JOIN batch_cost_snapshot s ON s.batch_id = b.id
+                WHERE b.id = ANY(:bids)
+                ORDER BY b.id, s.raw_material_id
+                """)
+                .bind("bids", batchIds.toArray(new UUID[0]))
+                .map((row, meta) -> {
+                    UUID rawId = row.get("raw_material_id", UUID.class);
+                    SnapshotRow snapshotRow = rawId == null ? null : new SnapshotRow(
+                            rawId,
+                            new BigDecimal(row.get("grams").toString()),
+                            new BigDecimal(row.get("unit_price").toString()),
+                            new BigDecimal(row.get("cost").toString()),
+                            row.get("price_source", String.class),
+                            row.get("supplier_material_id", UUID.class),
+                            decimal(row.get("package_size")),
+                            decimal(row.get("price_per_package"))
+                    );
+                    return new Line(
+                            row.get("batch_id", UUID.class),
+                            row.get("template_id", UUID.class),
+                            row.get("status", String.class),
+                            row.get("pricing_date", LocalDate.class),
+                            snapshotRow
+                    );
+                })
+                .all())
+                .bufferUntilChanged(Line::batchId)
+                .map(lines -> new BatchSnapshot(
+                        lines.get(0).batchId(),
+                        lines.get(0).templateId(),
+                        lines.get(0).status(),
+                        lines.get(0).pricingDate(),
+                        lines.stream().map(Line::row).filter(Objects::nonNull).toList()
+                ));
+    }
+
+    /**
+     * Полностью заменяет снимок партии переданными строками (вставка одним многострочным запросом).
+     */
+    public Mono<Void> replace(UUID batchId, List<SnapshotRow> rows) {
+        Mono<Void> delete = metrics.sql("batch_cost_snapshot.delete",
+                db.sql("DELETE FROM batch_cost_snapshot WHERE batch_id = :bid")
+                        .bind("bid", batchId)
+                        .then());
+
+        if (rows.isEmpty()) return delete;
+
+        Mono<Void> insert = metrics.sql("batch_cost_snapshot.insert", db.sql("""
+                INSERT INTO batch_cost_snapshot(
+                  batch_id, raw_material_id, grams, unit_price, cost, price_source, supplier_material_id,
+                  package_size, price_per_package, created_at
+                )
+                SELECT :bid, r.raw_material_id, r.grams, r.unit_price, r.cost, r.price_source, r.supplier_material_id,
+                       r.package_size, r.price_per_package, now()
+                FROM unnest(:rawIds, :grams, :unitPrices, :costs, :sources, :offerIds, :packageSizes, :packagePrices)
+                  AS r(raw_material_id, grams, unit_price, cost, price_source, supplier_material_id,
+                       package_size, price_per_package)
+                """)
+                .bind("bid", batchId)
+                .bind("rawIds", rows.stream().map(SnapshotRow::rawMaterialId).toArray(UUID[]::new))
+                .bind("grams", rows.stream().map(SnapshotRow::grams).toArray(BigDecimal[]::new))
+                .bind("unitPrices", rows.stream().map(SnapshotRow::unitPrice).toArray(BigDecimal[]::new))
+                .bind("costs", rows.stream().map(SnapshotRow::cost).toArray(BigDecimal[]::new))
+                .bind("sources", rows.stream().map(SnapshotRow::priceSource).toArray(String[]::new))
+                .bind("offerIds", rows.stream().map(SnapshotRow::supplierMaterialId).toArray(UUID[]::new))
+                .bind("packageSizes", rows.stream().map(SnapshotRow::packageSize).toArray(BigDecimal[]::new))
+                .bind("packagePrices", rows.stream().map(SnapshotRow::pricePerPackage).toArray(BigDecimal[]::new))
+                .then());
+
+        return delete.then(insert);
+    }
+
+    private static BigDecimal decimal(Object value) {
+        return value == null ? null : new BigDecimal(value.toString());
+    }
+}
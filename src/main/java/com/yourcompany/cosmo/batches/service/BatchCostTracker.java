@@ -0,0 +1,430 @@
+package com.yourcompany.cosmo.batches.service;
+
+import com.yourcompany.cosmo.config.HotPathMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Пересчёт себестоимости только тех партий, которых касается изменение цен или выбора поставщиков.
+ * <p>
+ * Держит в памяти обратный индекс: сырьё → партии, в состав шаблона которых оно входит (с датой ценообразования),
+ * offer → партии, выбравшие его (override), и дефолтные offers сырья. Сервисы, которые пишут цены, offers,
+ * дефолтные offers и выбор поставщиков, после фиксации изменения сообщают о нём трекеру, а трекер по индексу ставит
+ * в очередь только затронутые партии — с датой ценообразования в интервале изменённой цены.
+ * </p>
+ * <p>
+ * Очередь пересчитывается в фоне раз в {@code cosmo.batches.cost-tracking.delay} через
+ * {@link BatchService#calculateLiveCosts}; партии, себестоимость материалов которых (по текущим данным, режим LINEAR)
+ * изменилась, попадают в журнал изменений. Индекс перестраивается раз в {@code refresh-interval} — так подхватываются
+ * новые партии и шаблоны и изменения других экземпляров приложения.
+ * </p>
+ * <p>
+ * Себестоимость, от которой отсчитываются изменения, фиксируется при перестройке индекса, до того как новые партии
+ * попадут в индекс: у открытой партии это сумма её снимка (снимки не меняются — изменение их себестоимости повод
+ * для reprice), у остальных — расчёт по текущим данным пачками по {@value #CHUNK} партий, по одной пачке за раз.
+ * Поэтому о первом же изменении себестоимости проиндексированной партии в журнал пишется; без отсчёта остаются
+ * только партии, о выборе поставщиков которых трекер узнал раньше перестройки индекса, — первый пересчёт
+ * такой партии становится отсчётом. Трекинг включается явно ({@code cosmo.batches.cost-tracking.enabled}).
+ * </p>
+ */
+@Service
+public class BatchCostTracker implements InitializingBean, DisposableBean {
+
+  private static final Logger log = LoggerFactory.getLogger(BatchCostTracker.class);
+
+  /** Размер пачки партий для {@link BatchService#calculateLiveCosts}. */
+  private static final int CHUNK = 1000;
+
+  /**
+   * Изменение себестоимости материалов партии.
+   */
+  public record CostChange(UUID batchId, LocalDate pricingDate, BigDecimal previousTotal, BigDecimal materialsTotal,
+                           BigDecimal delta, OffsetDateTime detectedAt) {}
+
+  record BatchRef(UUID batchId, LocalDate pricingDate) {}
+
+  private record BatchRow(UUID batchId, UUID templateId, LocalDate pricingDate) {}
+
+  private record SelectionRow(UUID batchId, UUID rawMaterialId, UUID offerId) {}
+
+  /**
+   * Обратный индекс зависимостей. Не потокобезопасен: используется под монитором трекера.
+   */
+  static final class Index {
+    final Map<UUID, BatchRef> batches = new HashMap<>();
+    final Map<UUID, List<BatchRef>> batchesByRaw = new HashMap<>();
+    /** Партия → сырьё → выбранный offer. */
+    final Map<UUID, Map<UUID, UUID>> overridesByBatch = new HashMap<>();
+    /** Offer → партии, выбравшие его. */
+    final Map<UUID, Set<UUID>> batchesByOverride = new HashMap<>();
+    /** Сырьё → дефолтный offer и обратно. */
+    final Map<UUID, UUID> defaultOffers = new HashMap<>();
+    final Map<UUID, UUID> rawByDefaultOffer = new HashMap<>();
+
+    void addBatch(UUID batchId, LocalDate pricingDate, Set<UUID> rawIds) {
+      var ref = new BatchRef(batchId, pricingDate);
+      batches.put(batchId, ref);
+      for (UUID rawId : rawIds) batchesByRaw.computeIfAbsent(rawId, k -> new ArrayList<>()).add(ref);
+    }
+
+    /** {@code offerId = null} — выбор для сырья снят. */
+    void setOverride(UUID batchId, UUID rawId, UUID offerId) {
+      var overrides = overridesByBatch.computeIfAbsent(batchId, k -> new HashMap<>());
+      UUID previous = offerId == null ? overrides.remove(rawId) : overrides.put(rawId, offerId);
+      if (previous != null && !overrides.containsValue(previous)) {
+        var selected = batchesByOverride.get(previous);
+        if (selected != null) selected.remove(batchId);
+      }
+      if (offerId != null) batchesByOverride.computeIfAbsent(offerId, k -> new HashSet<>()).add(batchId);
+    }
+
+    /** {@code offerId = null} — дефолтный offer снят. */
+    void setDefaultOffer(UUID rawId, UUID offerId) {
+      UUID previous = offerId == null ? defaultOffers.remove(rawId) : defaultOffers.put(rawId, offerId);
+      if (previous != null) rawByDefaultOffer.remove(previous);
+      if (offerId != null) rawByDefaultOffer.put(offerId, rawId);
+    }
+
+    /**
+     * Партии, цена сырья которых берётся из одного из offers (как override или как дефолтный offer),
+     * с датой ценообразования в {@code [from, to]} ({@code null} — без ограничения).
+     */
+    Set<UUID> affectedByOffers(Collection<UUID> offerIds, LocalDate from, LocalDate to, LocalDate today) {
+      Set<UUID> out = new HashSet<>();
+      for (UUID offerId : offerIds) {
+        for (UUID batchId : batchesByOverride.getOrDefault(offerId, Set.of())) {
+          if (covers(batches.get(batchId), from, to, today)) out.add(batchId);
+        }
+        UUID rawId = rawByDefaultOffer.get(offerId);
+        if (rawId != null) out.addAll(affectedByRaw(rawId, true, from, to, today));
+      }
+      return out;
+    }
+
+    /**
+     * Партии с сырьём в составе; {@code withoutOverride} — только те, где для сырья нет выбора партии.
+     */
+    Set<UUID> affectedByRaw(UUID rawId, boolean withoutOverride, LocalDate from, LocalDate to, LocalDate today) {
+      Set<UUID> out = new HashSet<>();
+      for (var ref : batchesByRaw.getOrDefault(rawId, List.of())) {
+        if (withoutOverride && overridesByBatch.getOrDefault(ref.batchId(), Map.of()).containsKey(rawId)) continue;
+        if (covers(ref, from, to, today)) out.add(ref.batchId());
+      }
+      return out;
+    }
+
+    private static boolean covers(BatchRef ref, LocalDate from, LocalDate to, LocalDate today) {
+      if (ref == null) return false;
+      // у партии без даты ценообразования цена берётся на сегодня
+      LocalDate pd = ref.pricingDate() != null ? ref.pricingDate() : today;
+      return (from == null || !pd.isBefore(from)) && (to == null || !pd.isAfter(to));
+    }
+  }
+
+  private final DatabaseClient db;
+  private final TemplateBomCache boms;
+  private final BatchService batches;
+  private final HotPathMetrics metrics;
+  private final boolean enabled;
+  private final Duration delay;
+  private final Duration refreshInterval;
+  private final int historySize;
+
+  private Index index = new Index();
+  private boolean rebuilding;
+  private final List<Consumer<Index>> replayAfterRebuild = new ArrayList<>();
+
+  private final Set<UUID> pending = ConcurrentHashMap.newKeySet();
+  /** Последняя известная себестоимость материалов партии; только партии из индекса. */
+  private final Map<UUID, BigDecimal> totals = new ConcurrentHashMap<>();
+  private final Deque<CostChange> history = new ArrayDeque<>();
+  private final Sinks.Many<CostChange> changes = Sinks.many().multicast().directBestEffort();
+  private Disposable tasks;
+
+  public BatchCostTracker(
+      DatabaseClient db,
+      TemplateBomCache boms,
+      BatchService batches,
+      HotPathMetrics metrics,
+      @Value("${cosmo.batches.cost-tracking.enabled:false}") boolean enabled,
+      @Value("${cosmo.batches.cost-tracking.delay:PT1S}") Duration delay,
+      @Value("${cosmo.batches.cost-tracking.refresh-interval:PT5M}") Duration refreshInterval,
+      @Value("${cosmo.batches.cost-tracking.history-size:1000}") int historySize
+  ) {
+    this.db = db;
+    this.boms = boms;
+    this.batches = batches;
+    this.metrics = metrics;
+    this.enabled = enabled;
+    this.delay = delay;
+    this.refreshInterval = refreshInterval;
+    this.historySize = historySize;
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    if (!enabled) return;
+    tasks = Disposables.composite(
+        Flux.interval(Duration.ZERO, refreshInterval)
+            .onBackpressureDrop()
+            .concatMap(tick -> rebuild()
+                .onErrorResume(e -> {
+                  log.warn("Batch cost index rebuild failed", e);
+                  return Mono.empty();
+                }))
+            .subscribe(),
+        Flux.interval(delay, delay)
+            .onBackpressureDrop()
+            .concatMap(tick -> recompute()
+                .onErrorResume(e -> {
+                  log.warn("Batch cost recomputation failed", e);
+                  return Mono.empty();
+                }))
+            .subscribe()
+    );
+  }
+
+  @Override
+  public void destroy() {
+    if (tasks != null) tasks.dispose();
+  }
+
+  // ---------------------------------------------------------------------------------------------
+  // Изменения (вызываются после фиксации транзакции изменения)
+
+  /** Изменились цены offers (или фасовка) на {@code [from, to]}; {@code null} — без ограничения. */
+  public void offerPricesChanged(Collection<UUID> offerIds, LocalDate from, LocalDate to) {
+    if (!enabled || offerIds.isEmpty()) return;
+    LocalDate today = LocalDate.now();
+    enqueue(affected(i -> i.affectedByOffers(offerIds, from, to, today)));
+  }
+
+  /** Изменились ручные цены сырья на {@code [from, to]}. */
+  public void manualPricesChanged(UUID rawMaterialId, LocalDate from, LocalDate to) {
+    if (!enabled) return;
+    LocalDate today = LocalDate.now();
+    enqueue(affected(i -> i.affectedByRaw(rawMaterialId, false, from, to, today)));
+  }
+
+  /** Изменился дефолтный offer сырья ({@code null} — снят). */
+  public void defaultOfferChanged(UUID rawMaterialId, UUID offerId) {
+    if (!enabled) return;
+    mutate(i -> i.setDefaultOffer(rawMaterialId, offerId));
+    enqueue(affected(i -> i.affectedByRaw(rawMaterialId, true, null, null, LocalDate.now())));
+  }
+
+  /** Сохранён выбор offers партии: сырьё → offer. */
+  public void selectionsSaved(UUID batchId, Map<UUID, UUID> offerByRaw) {
+    if (!enabled || offerByRaw.isEmpty()) return;
+    mutate(i -> offerByRaw.forEach((rawId, offerId) -> i.setOverride(batchId, rawId, offerId)));
+    enqueue(Set.of(batchId));
+  }
+
+  /** Снят выбор offer'а партии для сырья. */
+  public void selectionCleared(UUID batchId, UUID rawMaterialId) {
+    if (!enabled) return;
+    mutate(i -> i.setOverride(batchId, rawMaterialId, null));
+    enqueue(Set.of(batchId));
+  }
+
+  // ---------------------------------------------------------------------------------------------
+  // Журнал изменений
+
+  /** Последние изменения себестоимости (не больше {@code history-size}), от старых к новым. */
+  public List<CostChange> recentChanges() {
+    synchronized (history) {
+      return List.copyOf(history);
+    }
+  }
+
+  /** Изменения себестоимости по мере обнаружения. */
+  public Flux<CostChange> changes() {
+    return changes.asFlux();
+  }
+
+  // ---------------------------------------------------------------------------------------------
+
+  private synchronized Set<UUID> affected(Function<Index, Set<UUID>> query) {
+    return query.apply(index);
+  }
+
+  /**
+   * Применяет изменение к индексу; если в этот момент индекс перестраивается, повторяет изменение
+   * на новом индексе, чтобы оно не потерялось.
+   */
+  private synchronized void mutate(Consumer<Index> change) {
+    change.accept(index);
+    if (rebuilding) replayAfterRebuild.add(change);
+  }
+
+  private synchronized void swap(Index fresh) {
+    replayAfterRebuild.forEach(change -> change.accept(fresh));
+    replayAfterRebuild.clear();
+    rebuilding = false;
+    index = fresh;
+  }
+
+  private synchronized void rebuildFailed() {
+    replayAfterRebuild.clear();
+    rebuilding = false;
+  }
+
+  private void enqueue(Set<UUID> batchIds) {
+    if (batchIds.isEmpty()) return;
+    pending.addAll(batchIds);
+    log.debug("Batch costs queued for recomputation: {}", batchIds);
+  }
+
+  Mono<Void> recompute() {
+    return Mono.defer(() -> {
+      List<UUID> ids = new ArrayList<>();
+      for (Iterator<UUID> it = pending.iterator(); it.hasNext(); ) {
+        ids.add(it.next());
+        it.remove();
+      }
+      if (ids.isEmpty()) return Mono.empty();
+
+      return metrics.service("BatchCostTracker.recompute", Flux.fromIterable(chunks(ids))
+          .concatMap(batches::calculateLiveCosts)
+          .doOnNext(this::compare)
+          .then())
+          // не пересчитанные партии — в следующий раз
+          .doOnError(e -> pending.addAll(ids));
+    });
+  }
+
+  private void compare(Map<UUID, BatchService.CostResponse> costs) {
+    OffsetDateTime now = OffsetDateTime.now();
+    costs.forEach((batchId, cost) -> {
+      BigDecimal current = cost.materialsTotal();
+      BigDecimal previous = totals.put(batchId, current);
+      if (previous == null || previous.compareTo(current) == 0) return;
+
+      var change = new CostChange(batchId, cost.pricingDate(), previous, current, current.subtract(previous), now);
+      synchronized (history) {
+        history.addLast(change);
+        while (history.size() > historySize) history.removeFirst();
+      }
+      changes.tryEmitNext(change);
+      log.info("Batch {} materials cost moved: {} -> {}", batchId, previous, current);
+    });
+  }
+
+  Mono<Void> rebuild() {
+    return Mono.defer(() -> {
+      synchronized (this) {
+        rebuilding = true;
+      }
+
+      Mono<List<BatchRow>> batchesMono = metrics.sql("batch.find_all", db.sql("SELECT id, template_id, pricing_date FROM batch")
+          .map((row, meta) -> new BatchRow(
+              row.get("id", UUID.class),
+              row.get("template_id", UUID.class),
+              row.get("pricing_date", LocalDate.class)
+          ))
+          .all())
+          .collectList();
+
+      Mono<List<SelectionRow>> selectionsMono = metrics.sql("batch.selections.find_all", db.sql("""
+              SELECT batch_id, raw_material_id, supplier_material_id FROM batch_supplier_selection
+              """)
+          .map((row, meta) -> new SelectionRow(
+              row.get("batch_id", UUID.class),
+              row.get("raw_material_id", UUID.class),
+              row.get("supplier_material_id", UUID.class)
+          ))
+          .all())
+          .collectList();
+
+      Mono<Map<UUID, UUID>> defaultsMono = metrics.sql("default_offers.find_all", db.sql(
+              "SELECT raw_material_id, supplier_material_id FROM raw_material_default_offer")
+          .map((row, meta) -> Map.entry(row.get("raw_material_id", UUID.class), row.get("supplier_material_id", UUID.class)))
+          .all())
+          .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+
+      return Mono.zip(batchesMono, selectionsMono, defaultsMono)
+          .flatMap(t -> {
+            Set<UUID> templateIds = new HashSet<>();
+            for (var b : t.getT1()) if (b.templateId() != null) templateIds.add(b.templateId());
+
+            return boms.getAll(templateIds).map(bomByTemplate -> {
+              Index fresh = new Index();
+              for (var b : t.getT1()) {
+                var bom = b.templateId() == null ? TemplateBomCache.TemplateBom.EMPTY
+                    : bomByTemplate.getOrDefault(b.templateId(), TemplateBomCache.TemplateBom.EMPTY);
+                fresh.addBatch(b.batchId(), b.pricingDate(), bom.neededRaw);
+              }
+              for (var s : t.getT2()) fresh.setOverride(s.batchId(), s.rawMaterialId(), s.offerId());
+              t.getT3().forEach(fresh::setDefaultOffer);
+              return fresh;
+            });
+          })
+          .flatMap(fresh -> {
+            // удалённые партии больше не отслеживаются
+            totals.keySet().retainAll(fresh.batches.keySet());
+            return seedFromSnapshots(fresh.batches.keySet())
+                .then(Mono.defer(() -> seedLive(fresh.batches.keySet())))
+                .thenReturn(fresh);
+          })
+          .doOnNext(this::swap)
+          .doOnError(e -> rebuildFailed())
+          .doOnNext(fresh -> log.info("Batch cost index rebuilt: {} batches", fresh.batches.size()))
+          .then();
+    });
+  }
+
+  /**
+   * Себестоимость открытых партий, которых трекер ещё не видел, — сумма снимка, без расчёта.
+   */
+  private Mono<Void> seedFromSnapshots(Set<UUID> indexed) {
+    return metrics.sql("batch_cost_snapshot.open_totals", db.sql("""
+            SELECT s.batch_id, sum(s.cost) AS total
+            FROM batch_cost_snapshot s
+            JOIN batch b ON b.id = s.batch_id AND b.status = 'OPEN'
+            GROUP BY s.batch_id
+            """)
+        .map((row, meta) -> Map.entry(row.get("batch_id", UUID.class), new BigDecimal(row.get("total").toString())))
+        .all())
+        .filter(e -> indexed.contains(e.getKey()))
+        .doOnNext(e -> totals.putIfAbsent(e.getKey(), e.getValue()))
+        .then();
+  }
+
+  /**
+   * Себестоимость остальных партий, которых трекер ещё не видел, — по текущим данным.
+   */
+  private Mono<Void> seedLive(Set<UUID> indexed) {
+    List<UUID> unseen = indexed.stream().filter(id -> !totals.containsKey(id)).toList();
+    if (unseen.isEmpty()) return Mono.empty();
+
+    return metrics.service("BatchCostTracker.seed", Flux.fromIterable(chunks(unseen))
+        .concatMap(batches::calculateLiveCosts)
+        .doOnNext(costs -> costs.forEach((batchId, cost) -> totals.putIfAbsent(batchId, cost.materialsTotal())))
+        .then());
+  }
+
+  private static List<List<UUID>> chunks(List<UUID> ids) {
+    List<List<UUID>> out = new ArrayList<>();
+    for (int from = 0; from < ids.size(); from += CHUNK) out.add(ids.subList(from, Math.min(from + CHUNK, ids.size())));
+    return out;
+  }
+}
@@ -1,14 +1,19 @@
 package com.yourcompany.cosmo.batches.service;
 
-import com.yourcompany.cosmo.batches.domain.CostingService;
+import com.yourcompany.cosmo.batches.domain.CostingKernel;
+import com.yourcompany.cosmo.batches.repository.BatchCostSnapshotRepository;
 import com.yourcompany.cosmo.batches.repository.BatchEntity;
 import com.yourcompany.cosmo.batches.repository.BatchRepository;
+import com.yourcompany.cosmo.config.HotPathMetrics;
+import com.yourcompany.cosmo.pricing.service.PriceResolver;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
 import java.util.*;
@@ -18,11 +23,20 @@ public class BatchService {
   private final BatchRepository repo;
   private final DatabaseClient db;
   private final TransactionalOperator tx;
+  private final PriceResolver prices;
+  private final BatchCostSnapshotRepository snapshots;
+  private final TemplateBomCache boms;
+  private final HotPathMetrics metrics;
 
-  public BatchService(BatchRepository repo, DatabaseClient db, TransactionalOperator tx) {
+  public BatchService(BatchRepository repo, DatabaseClient db, TransactionalOperator tx, PriceResolver prices,
+                      BatchCostSnapshotRepository snapshots, TemplateBomCache boms, HotPathMetrics metrics) {
     this.repo = repo;
     this.db = db;
     this.tx = tx;
+    this.prices = prices;
+    this.snapshots = snapshots;
+    this.boms = boms;
+    this.metrics = metrics;
   }
 
   public Mono<BatchEntity> create(UUID templateId) {
@@ -30,142 +44,278 @@ public class BatchService {
     return repo.save(entity);
   }
 
+  /**
+   * Открыть партию: статус OPEN, дата ценообразования — сегодня.
+   * В той же транзакции рассчитывается и фиксируется снимок себестоимости.
+   */
   public Mono<BatchEntity> open(UUID batchId) {
     return tx.transactional(
         repo.findById(batchId)
             .switchIfEmpty(Mono.error(new IllegalArgumentException("Batch not found")))
             .flatMap(b -> repo.save(new BatchEntity(b.id(), b.templateId(), "OPEN", LocalDate.now(), b.createdAt())))
+            .flatMap(saved -> writeSnapshot(batchId).thenReturn(saved))
     );
   }
 
-  public record CostRow(UUID rawMaterialId, BigDecimal grams, BigDecimal unitPrice, BigDecimal cost) {}
-  public record CostResponse(LocalDate pricingDate, List<CostRow> materials, BigDecimal materialsTotal) {}
+  /**
+   * Пересчитать снимок себестоимости открытой партии (например, после изменения выбора поставщиков).
+   * Дата ценообразования не меняется.
+   */
+  public Mono<CostResponse> reprice(UUID batchId) {
+    return tx.transactional(
+        repo.findById(batchId)
+            .switchIfEmpty(Mono.error(new IllegalArgumentException("Batch not found")))
+            .filter(b -> "OPEN".equals(b.status()))
+            .switchIfEmpty(Mono.error(new IllegalArgumentException("Only OPEN batch can be repriced")))
+            .flatMap(b -> writeSnapshot(batchId))
+    );
+  }
+
+  private Mono<CostResponse> writeSnapshot(UUID batchId) {
+    return calculateLiveCost(batchId)
+        .flatMap(cost -> snapshots.replace(batchId, cost.materials().stream()
+                .map(r -> new BatchCostSnapshotRepository.SnapshotRow(
+                    r.rawMaterialId(), r.grams(), r.unitPrice(), r.cost(), r.priceSource().name(), r.offerId(),
+                    r.packageSize(), r.pricePerPackage()))
+                .toList())
+            .thenReturn(cost));
+  }
+
+  /**
+   * Режим расчёта себестоимости.
+   * <ul>
+   *   <li>{@code LINEAR} — сырьё оценивается по цене за грамм ровно в объёме потребности;</li>
+   *   <li>{@code PROCUREMENT} — дополнительно считается закупка: потребность округляется вверх
+   *   до целых упаковок offer'а, по которому взята цена.</li>
+   * </ul>
+   */
+  public enum CostMode { LINEAR, PROCUREMENT }
+
+  /**
+   * Строка себестоимости по сырью.
+   *
+   * @param priceSource источник цены
+   * @param offerId offer, по которому взята цена ({@code null} для ручной цены и её отсутствия)
+   * @param packageSize фасовка offer'а в граммах ({@code null} без offer'а)
+   * @param pricePerPackage цена упаковки offer'а ({@code null} без offer'а)
+   * @param packages сколько упаковок купить (только {@link CostMode#PROCUREMENT}; {@code null} без offer'а)
+   * @param purchaseCost затраты на закупку (только {@link CostMode#PROCUREMENT}; без offer'а — равны {@code cost})
+   * @param leftoverGrams остаток после партии (только {@link CostMode#PROCUREMENT}; {@code null} без offer'а)
+   */
+  public record CostRow(UUID rawMaterialId, BigDecimal grams, BigDecimal unitPrice, BigDecimal cost,
+                        PriceResolver.Source priceSource, UUID offerId,
+                        BigDecimal packageSize, BigDecimal pricePerPackage,
+                        BigDecimal packages, BigDecimal purchaseCost, BigDecimal leftoverGrams) {}
 
-  public Mono<CostResponse> calculateCost(UUID batchId) {
-    return repo.findById(batchId)
+  /**
+   * @param purchaseTotal затраты на закупку целыми упаковками (только {@link CostMode#PROCUREMENT})
+   */
+  public record CostResponse(LocalDate pricingDate, List<CostRow> materials, BigDecimal materialsTotal,
+                             BigDecimal purchaseTotal) {}
+
+  /**
+   * Себестоимость партии.
+   * <p>
+   * Для открытой партии возвращается снимок, зафиксированный при открытии (или последнем reprice) —
+   * это один индексированный запрос. Для остальных партий себестоимость рассчитывается по текущим данным:
+   * состав шаблона берётся из {@link TemplateBomCache}, цены разрешает {@link PriceResolver}.
+   * </p>
+   */
+  public Mono<CostResponse> calculateCost(UUID batchId, CostMode mode) {
+    return metrics.service("BatchService.calculateCost", snapshots.findByBatchId(batchId)
         .switchIfEmpty(Mono.error(new IllegalArgumentException("Batch not found")))
-        .flatMap(batch -> {
-          LocalDate pricingDate = batch.pricingDate() != null ? batch.pricingDate() : LocalDate.now();
-
-          Mono<List<CostingService.ProductInBatch>> productsMono =
-              db.sql("""
-                  SELECT bti.product_id, bti.quantity
-                  FROM batch b
-                  JOIN batch_template_item bti ON b.template_id = bti.template_id
-                  WHERE b.id = :bid
-                  """)
-                .bind("bid", batchId)
-                .map((row, meta) -> new CostingService.ProductInBatch(
-                    row.get("product_id", UUID.class),
-                    Objects.requireNonNull(row.get("quantity", Integer.class))
-                ))
-                .all()
-                .collectList();
-
-          Mono<Map<UUID, List<CostingService.RecipeItem>>> recipeByProductMono =
-              db.sql("""
-                  SELECT p.id AS product_id, ri.raw_material_id, ri.amount_gram
-                  FROM batch b
-                  JOIN batch_template_item bti ON b.template_id = bti.template_id
-                  JOIN product p ON p.id = bti.product_id
-                  JOIN recipe_item ri ON ri.recipe_id = p.recipe_id
-                  WHERE b.id = :bid
-                  """)
-                .bind("bid", batchId)
-                .map((row, meta) -> Map.entry(
-                    row.get("product_id", UUID.class),
-                    new CostingService.RecipeItem(
-                        row.get("raw_material_id", UUID.class),
-                        new BigDecimal(Objects.requireNonNull(row.get("amount_gram")).toString())
-                    )
-                ))
-                .all()
-                .collectList()
-                .map(list -> {
-                  Map<UUID, List<CostingService.RecipeItem>> m = new HashMap<>();
-                  for (var e : list) m.computeIfAbsent(e.getKey(), k -> new ArrayList<>()).add(e.getValue());
-                  return m;
-                });
-
-          Mono<Map<UUID, BigDecimal>> pricesMono =
-              db.sql("""
-                  WITH needed_raw AS (
-                    SELECT DISTINCT ri.raw_material_id AS raw_id
-                    FROM batch b
-                    JOIN batch_template_item bti ON b.template_id = bti.template_id
-                    JOIN product p ON p.id = bti.product_id
-                    JOIN recipe_item ri ON ri.recipe_id = p.recipe_id
-                    WHERE b.id = :bid
-                  ),
-                  selected AS (
-                    SELECT nr.raw_id,
-                           COALESCE(bss.supplier_material_id, rmd.supplier_material_id) AS offer_id
-                    FROM needed_raw nr
-                    LEFT JOIN batch_supplier_selection bss
-                      ON bss.batch_id = :bid AND bss.raw_material_id = nr.raw_id
-                    LEFT JOIN raw_material_default_offer rmd
-                      ON rmd.raw_material_id = nr.raw_id
-                  ),
-                  offer_price AS (
-                    SELECT s.raw_id,
-                           (smp.price_per_package / NULLIF(sm.package_size, 0)) AS price_per_gram
-                    FROM selected s
-                    JOIN supplier_material sm ON sm.id = s.offer_id
-                    LEFT JOIN LATERAL (
-                      SELECT price_per_package
-                      FROM supplier_material_price
-                      WHERE supplier_material_id = s.offer_id
-                        AND valid_from <= :pd
-                        AND (valid_to IS NULL OR valid_to >= :pd)
-                      ORDER BY valid_from DESC
-                      LIMIT 1
-                    ) smp ON TRUE
-                  ),
-                  manual_price AS (
-                    SELECT nr.raw_id,
-                      (
-                        SELECT price_per_gram
-                        FROM raw_material_manual_price rmp
-                        WHERE rmp.raw_material_id = nr.raw_id
-                          AND rmp.valid_from <= :pd
-                          AND (rmp.valid_to IS NULL OR rmp.valid_to >= :pd)
-                        ORDER BY rmp.valid_from DESC
-                        LIMIT 1
-                      ) AS price_per_gram
-                    FROM needed_raw nr
-                  )
-                  SELECT nr.raw_id AS raw_id,
-                         COALESCE(op.price_per_gram, mp.price_per_gram, 0) AS price_per_gram
-                  FROM needed_raw nr
-                  LEFT JOIN offer_price op ON op.raw_id = nr.raw_id
-                  LEFT JOIN manual_price mp ON mp.raw_id = nr.raw_id
-                  """)
-                .bind("bid", batchId)
-                .bind("pd", pricingDate)
-                .map((row, meta) -> Map.entry(
-                    row.get("raw_id", UUID.class),
-                    row.get("price_per_gram") == null ? BigDecimal.ZERO : new BigDecimal(row.get("price_per_gram").toString())
-                ))
-                .all()
-                .collectList()
-                .map(list -> {
-                  Map<UUID, BigDecimal> m = new HashMap<>();
-                  for (var e : list) m.put(e.getKey(), e.getValue());
-                  return m;
-                });
-return Mono.zip(productsMono, recipeByProductMono, pricesMono)
-              .map(tuple -> {
-                var products = tuple.getT1();
-                var recipeByProduct = tuple.getT2();
-                var prices = tuple.getT3();
-
-                var res = CostingService.calculate(products, recipeByProduct, prices);
-                var rows = res.rows().stream()
-                    .map(r -> new CostRow(r.rawMaterialId(), r.grams(), r.unitPrice(), r.cost()))
-                    .toList();
-
-                return new CostResponse(pricingDate, rows, res.materialsTotal());
-              });
+        .flatMap(snapshot -> isFrozen(snapshot)
+            ? Mono.just(fromSnapshot(snapshot, mode))
+            : calculateLiveCosts(List.of(snapshot), mode).map(costs -> costs.get(batchId))));
+  }
+
+  private static boolean isFrozen(BatchCostSnapshotRepository.BatchSnapshot snapshot) {
+    return "OPEN".equals(snapshot.status()) && !snapshot.rows().isEmpty();
+  }
+
+  private static CostResponse fromSnapshot(BatchCostSnapshotRepository.BatchSnapshot snapshot, CostMode mode) {
+    List<CostRow> rows = new ArrayList<>(snapshot.rows().size());
+    BigDecimal total = BigDecimal.ZERO;
+    for (var r : snapshot.rows()) {
+      rows.add(costRow(r.rawMaterialId(), r.grams(), r.unitPrice(), r.cost(),
+          PriceResolver.Source.valueOf(r.priceSource()), r.supplierMaterialId(), r.packageSize(), r.pricePerPackage(), mode));
+      total = total.add(r.cost());
+    }
+    return new CostResponse(snapshot.pricingDate(), rows, total, purchaseTotal(rows, mode));
+  }
+
+  /**
+   * Себестоимость партии по текущим данным.
+   */
+  private Mono<CostResponse> calculateLiveCost(UUID batchId) {
+    return snapshots.findByBatchId(batchId)
+        .switchIfEmpty(Mono.error(new IllegalArgumentException("Batch not found")))
+        .flatMap(batch -> calculateLiveCosts(List.of(batch), CostMode.LINEAR))
+        .map(costs -> costs.get(batchId));
+  }
+
+  static CostResponse toCostResponse(LocalDate pricingDate, TemplateBomCache.TemplateBom bom,
+                                     Map<UUID, PriceResolver.ResolvedPrice> resolved, CostMode mode) {
+    Map<UUID, BigDecimal> pricePerGram = new HashMap<>();
+    resolved.forEach((rawId, p) -> pricePerGram.put(rawId, p.pricePerGram()));
+
+    var res = CostingKernel.price(bom.compiled, pricePerGram);
+    var rows = res.rows().stream()
+        .map(r -> {
+          var price = resolved.get(r.rawMaterialId());
+          return costRow(r.rawMaterialId(), r.grams(), r.unitPrice(), r.cost(), price.source(), price.offerId(),
+              price.packageSize(), price.pricePerPackage(), mode);
+        })
+        .toList();
+
+    return new CostResponse(pricingDate, rows, res.materialsTotal(), purchaseTotal(rows, mode));
+  }
+
+  /**
+   * Строка себестоимости; в режиме закупки потребность округляется вверх до целых упаковок.
+   * Без offer'а (ручная цена или её отсутствие) фасовка неизвестна — закупка равна линейной стоимости.
+   */
+  static CostRow costRow(UUID rawMaterialId, BigDecimal grams, BigDecimal unitPrice, BigDecimal cost,
+                         PriceResolver.Source source, UUID offerId,
+                         BigDecimal packageSize, BigDecimal pricePerPackage, CostMode mode) {
+    if (mode != CostMode.PROCUREMENT) {
+      return new CostRow(rawMaterialId, grams, unitPrice, cost, source, offerId, packageSize, pricePerPackage,
+          null, null, null);
+    }
+    if (packageSize == null || pricePerPackage == null || packageSize.signum() <= 0) {
+      return new CostRow(rawMaterialId, grams, unitPrice, cost, source, offerId, packageSize, pricePerPackage,
+          null, cost, null);
+    }
+    BigDecimal packages = grams.divide(packageSize, 0, RoundingMode.CEILING);
+    return new CostRow(rawMaterialId, grams, unitPrice, cost, source, offerId, packageSize, pricePerPackage,
+        packages, packages.multiply(pricePerPackage), packages.multiply(packageSize).subtract(grams));
+  }
+
+  private static BigDecimal purchaseTotal(List<CostRow> rows, CostMode mode) {
+    if (mode != CostMode.PROCUREMENT) return null;
+    BigDecimal total = BigDecimal.ZERO;
+    for (var r : rows) total = total.add(r.purchaseCost());
+    return total;
+  }
+
+  // ---------------------------------------------------------------------------------------------
+  // Пакетный расчёт
+
+  /**
+   * Результат пакетного расчёта по одной партии: себестоимость или ошибка.
+   */
+  public record BulkCostItem(UUID batchId, CostResponse cost, String error) {}
+
+  /**
+   * Себестоимость набора партий.
+   * <p>
+   * Результат совпадает с {@link #calculateCost(UUID, CostMode)} для каждой партии, но данные загружаются
+   * общими запросами: снимки и статусы — одним запросом, состав каждого шаблона разворачивается
+   * один раз для всех его партий, а цена по каждому ключу (сырьё, дата, offer) разрешается один раз.
+   * Результаты выдаются потоком в порядке запроса.
+   * </p>
+   */
+  public Flux<BulkCostItem> calculateCostBulk(Collection<UUID> batchIds, CostMode mode) {
+    List<UUID> ids = List.copyOf(new LinkedHashSet<>(batchIds));
+    if (ids.isEmpty()) return Flux.empty();
+
+    return metrics.service("BatchService.calculateCostBulk", snapshots.findByBatchIds(ids)
+        .collectMap(BatchCostSnapshotRepository.BatchSnapshot::batchId)
+        .flatMapMany(byId -> {
+          List<BatchCostSnapshotRepository.BatchSnapshot> live = byId.values().stream()
+              .filter(s -> !isFrozen(s))
+              .toList();
+
+          Mono<Map<UUID, CostResponse>> liveCosts = live.isEmpty()
+              ? Mono.just(Map.of())
+              : calculateLiveCosts(live, mode);
+
+          return liveCosts.flatMapMany(costs -> Flux.fromIterable(ids)
+              .map(id -> {
+                var snapshot = byId.get(id);
+                if (snapshot == null) return new BulkCostItem(id, null, "Batch not found");
+                return new BulkCostItem(id, isFrozen(snapshot) ? fromSnapshot(snapshot, mode) : costs.get(id), null);
+              }));
+        }));
+  }
+
+  /**
+   * Себестоимость партий по текущим данным (в режиме LINEAR), в том числе открытых — без их снимков.
+   *
+   * @return партия → себестоимость (отсутствующие партии пропускаются)
+   */
+  public Mono<Map<UUID, CostResponse>> calculateLiveCosts(Collection<UUID> batchIds) {
+    if (batchIds.isEmpty()) return Mono.just(Map.of());
+    return snapshots.findByBatchIds(batchIds)
+        .collectList()
+        .flatMap(batches -> batches.isEmpty() ? Mono.just(Map.of()) : calculateLiveCosts(batches, CostMode.LINEAR));
+  }
+
+  /**
+   * Себестоимость партий по текущим данным: составы шаблонов — из кэша, выбор offers — одним запросом,
+   * цены — одним обращением к {@link PriceResolver}.
+   */
+  private Mono<Map<UUID, CostResponse>> calculateLiveCosts(List<BatchCostSnapshotRepository.BatchSnapshot> batches,
+                                                           CostMode mode) {
+    UUID[] templateIds = batches.stream()
+        .map(BatchCostSnapshotRepository.BatchSnapshot::templateId)
+        .filter(Objects::nonNull)
+        .distinct()
+        .toArray(UUID[]::new);
+    UUID[] batchIds = batches.stream().map(BatchCostSnapshotRepository.BatchSnapshot::batchId).toArray(UUID[]::new);
+
+    Mono<Map<UUID, TemplateBomCache.TemplateBom>> bomByTemplateMono = boms.getAll(Arrays.asList(templateIds));
+
+    Mono<Map<UUID, Map<UUID, UUID>>> selectionsMono = metrics.sql("batch.selections.find", db.sql("""
+            SELECT batch_id, raw_material_id, supplier_material_id
+            FROM batch_supplier_selection
+            WHERE batch_id = ANY(:bids)
+            """)
+        .bind("bids", batchIds)
+        .map((row, meta) -> new Selection(
+            row.get("batch_id", UUID.class),
+            row.get("raw_material_id", UUID.class),
+            row.get("supplier_material_id", UUID.class)
+        ))
+        .all())
+        .collect(HashMap::new, (Map<UUID, Map<UUID, UUID>> m, Selection s) -> m.computeIfAbsent(s.batchId(), k -> new HashMap<>())
+            .put(s.rawMaterialId(), s.offerId()));
+
+    return Mono.zip(bomByTemplateMono, selectionsMono)
+        .flatMap(t -> {
+          Map<UUID, TemplateBomCache.TemplateBom> bomByTemplate = t.getT1();
+          Map<UUID, Map<UUID, UUID>> selectionsByBatch = t.getT2();
+          var empty = TemplateBomCache.TemplateBom.EMPTY;
+
+          Set<PriceResolver.PriceKey> keys = new HashSet<>();
+          for (var b : batches) {
+            var bom = b.templateId() == null ? empty : bomByTemplate.getOrDefault(b.templateId(), empty);
+            var selections = selectionsByBatch.getOrDefault(b.batchId(), Map.of());
+            LocalDate pd = pricingDate(b);
+            for (UUID rawId : bom.neededRaw) keys.add(new PriceResolver.PriceKey(rawId, selections.get(rawId), pd));
+          }
+
+          return prices.resolve(keys).map(resolved -> {
+            Map<UUID, CostResponse> out = new HashMap<>();
+            for (var b : batches) {
+              var bom = b.templateId() == null ? empty : bomByTemplate.getOrDefault(b.templateId(), empty);
+              var selections = selectionsByBatch.getOrDefault(b.batchId(), Map.of());
+              LocalDate pd = pricingDate(b);
+
+              Map<UUID, PriceResolver.ResolvedPrice> byRaw = new HashMap<>();
+              for (UUID rawId : bom.neededRaw) {
+                byRaw.put(rawId, resolved.get(new PriceResolver.PriceKey(rawId, selections.get(rawId), pd)));
+              }
+              out.put(b.batchId(), toCostResponse(pd, bom, byRaw, mode));
+            }
+            return out;
+          });
         });
   }
+
+  private static LocalDate pricingDate(BatchCostSnapshotRepository.BatchSnapshot batch) {
+    return batch.pricingDate() != null ? batch.pricingDate() : LocalDate.now();
+  }
+
+  private record Selection(UUID batchId, UUID rawMaterialId, UUID offerId) {}
 }
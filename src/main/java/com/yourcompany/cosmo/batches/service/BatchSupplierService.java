@@ -1,9 +1,13 @@
 package com.yourcompany.cosmo.batches.service;
 
+import com.yourcompany.cosmo.config.HotPathMetrics;
+import com.yourcompany.cosmo.pricing.service.PriceResolver;
+import io.r2dbc.spi.Readable;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuples;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -18,20 +22,37 @@ import java.util.stream.Collectors;
 public class BatchSupplierService {
 
   private final DatabaseClient db;
-  private final TransactionalOperator tx;
+  private final TemplateBomCache boms;
+  private final PriceResolver prices;
+  private final HotPathMetrics metrics;
+  private final BatchCostTracker costTracker;
 
-  public BatchSupplierService(DatabaseClient db, TransactionalOperator tx) {
+  public BatchSupplierService(DatabaseClient db, TemplateBomCache boms, PriceResolver prices, HotPathMetrics metrics,
+                              BatchCostTracker costTracker) {
     this.db = db;
-    this.tx = tx;
+    this.costTracker = costTracker;
+    this.boms = boms;
+    this.prices = prices;
+    this.metrics = metrics;
   }
 
+  /**
+   * Offer сырья. Цены — на дату ценообразования партии ({@code null}, если у offer'а нет цены на эту дату).
+   */
   public record OfferOption(
       UUID offerId,
       UUID supplierId,
       String supplierName,
       BigDecimal packageSize,
-      String packageUnit
-  ) {}
+      String packageUnit,
+      BigDecimal pricePerPackage,
+      BigDecimal pricePerGram
+  ) {
+    /** Offer без цены. */
+    public OfferOption(UUID offerId, UUID supplierId, String supplierName, BigDecimal packageSize, String packageUnit) {
+      this(offerId, supplierId, supplierName, packageSize, packageUnit, null, null);
+    }
+  }
 
   public record IngredientConfig(
       UUID rawMaterialId,
@@ -54,52 +75,29 @@ public class BatchSupplierService {
       List<ProductConfig> products
   ) {}
 
-  private record IngredientRow(UUID productId, String productName, Integer productQty,
-                               UUID rawId, String rawName, BigDecimal gramsPerUnit) {}
+  record IngredientRow(UUID productId, String productName, Integer productQty,
+                       UUID rawId, String rawName, BigDecimal gramsPerUnit) {}
+
+  record OfferRow(UUID offerId, UUID supplierId, String supplierName,
+                  UUID rawId, BigDecimal packageSize, String packageUnit) {}
 
-  private record OfferRow(UUID offerId, UUID supplierId, String supplierName,
-                          UUID rawId, BigDecimal packageSize, String packageUnit) {}
+  private record BatchRow(LocalDate pricingDate, UUID templateId) {}
 
   /**
-   * Конфигурация партии для UI: продукты -> ингредиенты -> доступные offers и текущий выбранный offer.
+   * Конфигурация партии для UI: продукты -> ингредиенты -> доступные offers с ценами и текущий выбранный offer.
+   * Состав шаблона берётся из {@link TemplateBomCache}, цены всех offers разрешаются одним обращением
+   * к {@link PriceResolver}.
    */
   public Mono<BatchSupplierConfigResponse> getConfig(UUID batchId) {
-    Mono<LocalDate> pricingDateMono = db.sql("SELECT pricing_date FROM batch WHERE id = :bid")
+    Mono<BatchRow> batchRow = metrics.sql("batch.find", db.sql("SELECT pricing_date, template_id FROM batch WHERE id = :bid")
         .bind("bid", batchId)
-        .map((row, meta) -> row.get("pricing_date", LocalDate.class))
-        .one()
-        .defaultIfEmpty(LocalDate.now());
-
-    Mono<List<IngredientRow>> ingredientRowsMono =
-        db.sql("""
-            SELECT
-              p.id  AS product_id,
-              p.name AS product_name,
-              bti.quantity AS product_qty,
-              rm.id AS raw_id,
-              rm.name AS raw_name,
-              ri.amount_gram AS grams_per_unit
-            FROM batch b
-            JOIN batch_template_item bti ON b.template_id = bti.template_id
-            JOIN product p ON p.id = bti.product_id
-            JOIN recipe_item ri ON ri.recipe_id = p.recipe_id
-            JOIN raw_material rm ON rm.id = ri.raw_material_id
-            WHERE b.id = :bid
-            ORDER BY p.name, rm.name
-            """)
-          .bind("bid", batchId)
-          .map((row, meta) -> new IngredientRow(
-              row.get("product_id", UUID.class),
-              row.get("product_name", String.class),
-              row.get("product_qty", Integer.class),
-              row.get("raw_id", UUID.class),
-              row.get("raw_name", String.class),
-              new BigDecimal(row.get("grams_per_unit").toString())
-          ))
-          .all()
-          .collectList();
-
-    return Mono.zip(pricingDateMono, ingredientRowsMono)
+        .map((row, meta) -> new BatchRow(row.get("pricing_date", LocalDate.class), row.get("template_id", UUID.class)))
+        .one());
+
+    return metrics.service("BatchSupplierService.getConfig", batchRow
+        .flatMap(batch -> boms.get(batch.templateId())
+            .map(bom -> Tuples.of(batch.pricingDate() != null ? batch.pricingDate() : LocalDate.now(), ingredientRows(bom))))
+        .defaultIfEmpty(Tuples.of(LocalDate.now(), List.<IngredientRow>of()))
         .flatMap(tuple -> {
           LocalDate pricingDate = tuple.getT1();
           List<IngredientRow> ingredientRows = tuple.getT2();
@@ -110,42 +108,194 @@ public class BatchSupplierService {
           Mono<Map<UUID, List<OfferOption>>> offersByRawMono = loadOffersByRaw(rawIds);
 
           return Mono.zip(selectedOffersMono, offersByRawMono)
-              .map(t2 -> {
-                Map<UUID, UUID> selectedOffers = t2.getT1();
-                Map<UUID, List<OfferOption>> offersByRaw = t2.getT2();
-
-                // Group rows by product
-                Map<UUID, List<IngredientRow>> byProduct = ingredientRows.stream()
-                    .collect(Collectors.groupingBy(r -> r.productId));
-
-                List<ProductConfig> products = new ArrayList<>();
-                for (var e : byProduct.entrySet()) {
-                  UUID productId = e.getKey();
-                  List<IngredientRow> rows = e.getValue();
-                  String productName = rows.get(0).productName;
-                  int qty = rows.get(0).productQty == null ? 0 : rows.get(0).productQty;
-
-                  List<IngredientConfig> ingredients = rows.stream().map(r -> new IngredientConfig(
-                      r.rawId,
-                      r.rawName,
-                      r.gramsPerUnit,
-                      selectedOffers.get(r.rawId),
-                      offersByRaw.getOrDefault(r.rawId, List.of())
-                  )).toList();
-
-                  products.add(new ProductConfig(productId, productName, qty, ingredients));
-                }
-
-                products.sort(Comparator.comparing(ProductConfig::productName));
-                return new BatchSupplierConfigResponse(batchId, pricingDate, products);
-              });
-        });
+              .flatMap(t2 -> prices.resolve(priceKeys(t2.getT2(), pricingDate))
+                  .map(resolved -> new BatchSupplierConfigResponse(batchId, pricingDate, assembleProducts(
+                      ingredientRows, t2.getT1(), withPrices(t2.getT2(), resolved, pricingDate)))));
+        }));
+  }
+
+  /**
+   * То же, что {@link #getConfig(UUID)}, но целиком одним запросом: JSON ответа собирается в Postgres
+   * ({@code json_build_object}/{@code json_agg}) и отдаётся как есть, без промежуточных записей.
+   * Документ приходит частями — по строке на продукт (с заголовком и концовкой), которые вместе составляют
+   * JSON ответа; целиком он в памяти не собирается.
+   * Состав шаблона читается из таблиц, а не из {@link TemplateBomCache}.
+   * Порядок продуктов — по имени в collation "C", как {@code String.compareTo} в {@link #assembleProducts}.
+   */
+  public Flux<String> getConfigJson(UUID batchId) {
+    return metrics.service("BatchSupplierService.getConfigJson", metrics.sql("batch.supplier_config.json", db.sql("""
+            WITH b AS (
+              SELECT template_id, pricing_date FROM batch WHERE id = :bid
+            ),
+            ing AS (
+              SELECT bti.product_id, p.name AS product_name, bti.quantity,
+                     rm.id AS raw_id, rm.name AS raw_name, ri.amount_gram
+              FROM b
+              JOIN batch_template_item bti ON bti.template_id = b.template_id
+              JOIN product p ON p.id = bti.product_id
+              JOIN recipe_item ri ON ri.recipe_id = p.recipe_id
+              JOIN raw_material rm ON rm.id = ri.raw_material_id
+            ),
+            raws AS (
+              SELECT DISTINCT raw_id FROM ing
+            ),
+            offers AS (
+              SELECT sm.raw_material_id AS raw_id,
+                     json_agg(json_build_object(
+                       'offerId', sm.id, 'supplierId', s.id, 'supplierName', s.name,
+                       'packageSize', sm.package_size, 'packageUnit', sm.package_unit,
+                       'pricePerPackage', p.price_per_package,
+                       'pricePerGram', p.price_per_package / sm.package_size
+                     ) ORDER BY s.name, sm.package_size) AS offers
+              FROM supplier_material sm
+              JOIN supplier s ON s.id = sm.supplier_id
+              LEFT JOIN supplier_material_price p
+                ON p.supplier_material_id = sm.id
+               AND sm.package_size <> 0
+               AND p.validity @> COALESCE((SELECT pricing_date FROM b), CAST(:today AS date))
+              WHERE sm.raw_material_id IN (SELECT raw_id FROM raws)
+                AND sm.is_active = true
+                AND s.is_active = true
+              GROUP BY sm.raw_material_id
+            ),
+            selected AS (
+              SELECT r.raw_id, COALESCE(bss.supplier_material_id, rmd.supplier_material_id) AS offer_id
+              FROM raws r
+              LEFT JOIN batch_supplier_selection bss ON bss.batch_id = :bid AND bss.raw_material_id = r.raw_id
+              LEFT JOIN raw_material_default_offer rmd ON rmd.raw_material_id = r.raw_id
+            ),
+            products AS (
+              SELECT i.product_id, i.product_name, i.quantity,
+                     json_agg(json_build_object(
+                       'rawMaterialId', i.raw_id, 'rawMaterialName', i.raw_name,
+                       'gramsPerProductUnit', i.amount_gram, 'selectedOfferId', sel.offer_id,
+                       'offers', COALESCE(o.offers, '[]'::json)
+                     ) ORDER BY i.raw_name) AS ingredients
+              FROM ing i
+              JOIN selected sel ON sel.raw_id = i.raw_id
+              LEFT JOIN offers o ON o.raw_id = i.raw_id
+              GROUP BY i.product_id, i.product_name, i.quantity
+            )
+            SELECT part FROM (
+              SELECT 0 AS section, 0::bigint AS n,
+                     '{"batchId":' || to_json(CAST(:bid AS uuid)) || ',"pricingDate":'
+                       || to_json(COALESCE((SELECT pricing_date FROM b), CAST(:today AS date))) || ',"products":[' AS part
+              UNION ALL
+              SELECT 1, row_number() OVER w,
+                     CASE WHEN row_number() OVER w > 1 THEN ',' ELSE '' END
+                       || json_build_object(
+                            'productId', product_id, 'productName', product_name,
+                            'quantity', quantity, 'ingredients', ingredients)
+              FROM products
+              WINDOW w AS (ORDER BY product_name COLLATE "C")
+              UNION ALL
+              SELECT 2, 0, ']}'
+            ) parts
+            ORDER BY section, n
+            """)
+        .bind("bid", batchId)
+        .bind("today", LocalDate.now())
+        .map((row, meta) -> row.get("part", String.class))
+        .all()));
+  }
+
+  /** Строки ингредиентов шаблона (продукты без рецептуры в конфигурацию не попадают). */
+  static List<IngredientRow> ingredientRows(TemplateBomCache.TemplateBom bom) {
+    List<IngredientRow> rows = new ArrayList<>(bom.lines.size());
+    for (var l : bom.lines) {
+      if (l.rawMaterialId() == null) continue;
+      rows.add(new IngredientRow(l.productId(), l.productName(), l.quantity(),
+          l.rawMaterialId(), l.rawMaterialName(), l.gramsPerUnit()));
+    }
+    return rows;
+  }
+
+  static OfferRow readOfferRow(Readable row) {
+    return new OfferRow(
+        row.get("offer_id", UUID.class),
+        row.get("supplier_id", UUID.class),
+        row.get("supplier_name", String.class),
+        row.get("raw_id", UUID.class),
+        new BigDecimal(row.get("package_size").toString()),
+        row.get("package_unit", String.class)
+    );
   }
 
-  private Mono<Map<UUID, List<OfferOption>>> loadOffersByRaw(Set<UUID> rawIds) {
+  /**
+   * Сгруппировать строки ингредиентов по продуктам и дополнить их выбором и списком offers.
+   */
+  static List<ProductConfig> assembleProducts(List<IngredientRow> ingredientRows,
+                                              Map<UUID, UUID> selectedOffers,
+                                              Map<UUID, List<OfferOption>> offersByRaw) {
+    // Group rows by product
+    Map<UUID, List<IngredientRow>> byProduct = ingredientRows.stream()
+        .collect(Collectors.groupingBy(r -> r.productId));
+
+    List<ProductConfig> products = new ArrayList<>();
+    for (var e : byProduct.entrySet()) {
+      UUID productId = e.getKey();
+      List<IngredientRow> rows = e.getValue();
+      String productName = rows.get(0).productName;
+      int qty = rows.get(0).productQty == null ? 0 : rows.get(0).productQty;
+
+      List<IngredientConfig> ingredients = rows.stream().map(r -> new IngredientConfig(
+          r.rawId,
+          r.rawName,
+          r.gramsPerUnit,
+          selectedOffers.get(r.rawId),
+          offersByRaw.getOrDefault(r.rawId, List.of())
+      )).toList();
+
+      products.add(new ProductConfig(productId, productName, qty, ingredients));
+    }
+
+    products.sort(Comparator.comparing(ProductConfig::productName));
+    return products;
+  }
+
+  static Set<PriceResolver.PriceKey> priceKeys(Map<UUID, List<OfferOption>> offersByRaw, LocalDate pricingDate) {
+    Set<PriceResolver.PriceKey> keys = new HashSet<>();
+    offersByRaw.forEach((rawId, offers) -> {
+      for (var o : offers) keys.add(new PriceResolver.PriceKey(rawId, o.offerId(), pricingDate));
+    });
+    return keys;
+  }
+
+  /**
+   * Offers с ценами на дату. Цена берётся, только если она именно этого offer'а: для offer'а без цены
+   * резолвер отдаёт ручную цену сырья, которая к offer'у не относится.
+   */
+  static Map<UUID, List<OfferOption>> withPrices(Map<UUID, List<OfferOption>> offersByRaw,
+                                                 Map<PriceResolver.PriceKey, PriceResolver.ResolvedPrice> resolved,
+                                                 LocalDate pricingDate) {
+    Map<UUID, List<OfferOption>> out = new HashMap<>(offersByRaw.size());
+    offersByRaw.forEach((rawId, offers) -> {
+      List<OfferOption> priced = new ArrayList<>(offers.size());
+      for (var o : offers) {
+        var p = resolved.get(new PriceResolver.PriceKey(rawId, o.offerId(), pricingDate));
+        boolean own = p != null && p.source() == PriceResolver.Source.OVERRIDE;
+        priced.add(new OfferOption(o.offerId(), o.supplierId(), o.supplierName(), o.packageSize(), o.packageUnit(),
+            own ? p.pricePerPackage() : null, own ? p.pricePerGram() : null));
+      }
+      out.put(rawId, priced);
+    });
+    return out;
+  }
+
+  static Map<UUID, List<OfferOption>> groupOffers(List<OfferRow> rows) {
+    Map<UUID, List<OfferOption>> m = new HashMap<>();
+    for (var r : rows) {
+      m.computeIfAbsent(r.rawId, k -> new ArrayList<>())
+          .add(new OfferOption(r.offerId, r.supplierId, r.supplierName, r.packageSize, r.packageUnit));
+    }
+    return m;
+  }
+
+  /** Активные offers активных поставщиков по сырью. */
+  Mono<Map<UUID, List<OfferOption>>> loadOffersByRaw(Set<UUID> rawIds) {
     if (rawIds.isEmpty()) return Mono.just(Map.of());
 
-    return db.sql("""
+    return metrics.sql("supplier_offers.find_by_raw", db.sql("""
         SELECT
           sm.id AS offer_id,
           s.id AS supplier_id,
@@ -161,31 +311,33 @@ public class BatchSupplierService {
         ORDER BY s.name, sm.package_size
         """)
       .bind("rawIds", rawIds.toArray(new UUID[0]))
-      .map((row, meta) -> new OfferRow(
-          row.get("offer_id", UUID.class),
-          row.get("supplier_id", UUID.class),
-          row.get("supplier_name", String.class),
-          row.get("raw_id", UUID.class),
-          new BigDecimal(row.get("package_size").toString()),
-          row.get("package_unit", String.class)
-      ))
-      .all()
+      .map((row, meta) -> readOfferRow(row))
+      .all())
       .collectList()
-      .map(rows -> {
-        Map<UUID, List<OfferOption>> m = new HashMap<>();
-        for (var r : rows) {
-          m.computeIfAbsent(r.rawId, k -> new ArrayList<>())
-              .add(new OfferOption(r.offerId, r.supplierId, r.supplierName, r.packageSize, r.packageUnit));
-        }
-        return m;
-      });
+      .map(BatchSupplierService::groupOffers);
+  }
+
+  /** Выбор offers, сохранённый для партии (override): сырьё → offer. */
+  Mono<Map<UUID, UUID>> loadOverrides(UUID batchId, Set<UUID> rawIds) {
+    if (rawIds.isEmpty()) return Mono.just(Map.of());
+
+    return metrics.sql("batch.selections.find", db.sql("""
+            SELECT raw_material_id, supplier_material_id
+            FROM batch_supplier_selection
+            WHERE batch_id = :bid AND raw_material_id = ANY(:rawIds)
+            """)
+        .bind("bid", batchId)
+        .bind("rawIds", rawIds.toArray(new UUID[0]))
+        .map((row, meta) -> Map.entry(row.get("raw_material_id", UUID.class), row.get("supplier_material_id", UUID.class)))
+        .all())
+        .collectMap(Map.Entry::getKey, Map.Entry::getValue);
   }
 
   private Mono<Map<UUID, UUID>> loadSelectedOffers(UUID batchId, Set<UUID> rawIds) {
     if (rawIds.isEmpty()) return Mono.just(Map.of());
 
     // selection priority: batch override -> default offer
-    return db.sql("""
+    return metrics.sql("batch.selections.resolve", db.sql("""
         SELECT
           rm.id AS raw_id,
           COALESCE(bss.supplier_material_id, rmd.supplier_material_id) AS selected_offer_id
@@ -195,6 +347,7 @@ public class BatchSupplierService {
         LEFT JOIN raw_material_default_offer rmd
           ON rmd.raw_material_id = rm.id
         WHERE rm.id = ANY(:rawIds)
+          AND COALESCE(bss.supplier_material_id, rmd.supplier_material_id) IS NOT NULL
         """)
       .bind("bid", batchId)
       .bind("rawIds", rawIds.toArray(new UUID[0]))
@@ -202,39 +355,35 @@ public class BatchSupplierService {
           row.get("raw_id", UUID.class),
           row.get("selected_offer_id", UUID.class)
       ))
-      .all()
-      .collectList()
-      .map(list -> {
-        Map<UUID, UUID> m = new HashMap<>();
-        for (var e : list) {
-          if (e.getValue() != null) m.put(e.getKey(), e.getValue());
-        }
-        return m;
-      });
+      .all())
+      .collectMap(Map.Entry::getKey, Map.Entry::getValue);
   }
 
   public record Selection(UUID rawMaterialId, UUID supplierMaterialId) {}
 
   /**
    * Сохранить выбор offers для партии (override на партию).
-   * Полностью перезаписывает выбор по переданным rawMaterialId.
+   * Полностью перезаписывает выбор по переданным rawMaterialId (одним многострочным запросом).
    */
   public Mono<Void> saveSelections(UUID batchId, List<Selection> selections) {
     if (selections == null || selections.isEmpty()) return Mono.empty();
 
-    return tx.transactional(
-        Mono.when(selections.stream().map(s -> db.sql("""
-                INSERT INTO batch_supplier_selection(batch_id, raw_material_id, supplier_material_id, created_at)
-                VALUES (:bid, :rid, :oid, now())
-                ON CONFLICT (batch_id, raw_material_id)
-                DO UPDATE SET supplier_material_id = EXCLUDED.supplier_material_id
-                """)
-              .bind("bid", batchId)
-              .bind("rid", s.rawMaterialId())
-              .bind("oid", s.supplierMaterialId())
-              .then()
-        ).toList())
-    );
+    // одна строка на сырьё: при повторах действует последний выбор
+    Map<UUID, UUID> offerByRaw = new LinkedHashMap<>();
+    for (var sel : selections) offerByRaw.put(sel.rawMaterialId(), sel.supplierMaterialId());
+
+    return metrics.service("BatchSupplierService.saveSelections", metrics.sql("batch.selections.upsert", db.sql("""
+            INSERT INTO batch_supplier_selection(batch_id, raw_material_id, supplier_material_id, created_at)
+            SELECT :bid, s.raw_material_id, s.supplier_material_id, now()
+            FROM unnest(:rids, :oids) AS s(raw_material_id, supplier_material_id)
+            ON CONFLICT (batch_id, raw_material_id)
+            DO UPDATE SET supplier_material_id = EXCLUDED.supplier_material_id
+            """)
+        .bind("bid", batchId)
+        .bind("rids", offerByRaw.keySet().toArray(new UUID[0]))
+        .bind("oids", offerByRaw.values().toArray(new UUID[0]))
+        .then()))
+        .doOnSuccess(v -> costTracker.selectionsSaved(batchId, offerByRaw));
   }
 
   /**
@@ -244,6 +393,7 @@ public class BatchSupplierService {
     return db.sql("DELETE FROM batch_supplier_selection WHERE batch_id = :bid AND raw_material_id = :rid")
         .bind("bid", batchId)
         .bind("rid", rawMaterialId)
-        .then();
+        .then()
+        .doOnSuccess(v -> costTracker.selectionCleared(batchId, rawMaterialId));
   }
 }
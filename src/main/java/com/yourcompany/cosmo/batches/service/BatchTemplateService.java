@@ -16,11 +16,14 @@ public class BatchTemplateService {
   private final BatchTemplateRepository repo;
   private final DatabaseClient db;
   private final TransactionalOperator tx;
+  private final TemplateBomCache boms;
 
-  public BatchTemplateService(BatchTemplateRepository repo, DatabaseClient db, TransactionalOperator tx) {
+  public BatchTemplateService(BatchTemplateRepository repo, DatabaseClient db, TransactionalOperator tx,
+                              TemplateBomCache boms) {
     this.repo = repo;
     this.db = db;
     this.tx = tx;
+    this.boms = boms;
   }
 
   public record Item(UUID productId, int quantity) {}
@@ -29,19 +32,17 @@ public class BatchTemplateService {
     UUID id = UUID.randomUUID();
     var entity = new BatchTemplateEntity(id, name, description, OffsetDateTime.now());
 
-    Mono<Void> insertItems = Mono.when(
-        items.stream().map(i ->
-            db.sql("""
-                INSERT INTO batch_template_item(template_id, product_id, quantity)
-                VALUES (:tid, :pid, :qty)
-                """)
-              .bind("tid", id)
-              .bind("pid", i.productId())
-              .bind("qty", i.quantity())
-              .then()
-        ).toList()
-    );
-
-    return tx.transactional(repo.save(entity).flatMap(saved -> insertItems.thenReturn(saved)));
+    Mono<Void> insertItems = items.isEmpty() ? Mono.empty() : db.sql("""
+            INSERT INTO batch_template_item(template_id, product_id, quantity)
+            SELECT :tid, i.product_id, i.quantity
+            FROM unnest(:pids, :qtys) AS i(product_id, quantity)
+            """)
+        .bind("tid", id)
+        .bind("pids", items.stream().map(Item::productId).toArray(UUID[]::new))
+        .bind("qtys", items.stream().map(Item::quantity).toArray(Integer[]::new))
+        .then();
+
+    return tx.transactional(repo.save(entity).flatMap(saved -> insertItems.thenReturn(saved)))
+        .doOnSuccess(saved -> boms.invalidateTemplate(id));
   }
 }
@@ -0,0 +1,254 @@
+package com.yourcompany.cosmo.batches.service;
+
+import com.yourcompany.cosmo.batches.domain.CostingKernel;
+import com.yourcompany.cosmo.batches.domain.CostingService;
+import com.yourcompany.cosmo.config.HotPathMetrics;
+import com.yourcompany.cosmo.pricing.service.PriceResolver;
+import com.yourcompany.cosmo.pricing.service.PriceResolver.PriceKey;
+import com.yourcompany.cosmo.pricing.service.PriceResolver.ResolvedPrice;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Сценарии «что если» для себестоимости материалов партии или шаблона на дату.
+ * <p>
+ * Состав шаблона, выбор offers партии и все нужные цены загружаются один раз (цены — одним обращением
+ * к {@link PriceResolver}, включая offers, на которые сценарии переключают сырьё). Затем каждый сценарий
+ * оценивается в памяти через {@link CostingKernel} — с той же семантикой, что и {@code GET /cost}.
+ * Сценарии делятся на части по числу ядер и считаются параллельно на {@link Schedulers#parallel()}.
+ * </p>
+ * Изменения сценария применяются к цене за грамм сырья по порядку: смена offer'а → фиксированная цена →
+ * множитель. Сырьё, которого нет в составе, в сценарии игнорируется. Смена на offer без цены на дату отклоняется:
+ * resolver подставил бы вместо неё ручную цену сырья, и сценарий показал бы её как цену offer'а.
+ */
+@Service
+public class CostSimulator {
+
+  private final DatabaseClient db;
+  private final TemplateBomCache boms;
+  private final BatchSupplierService selections;
+  private final PriceResolver prices;
+  private final HotPathMetrics metrics;
+  private final int maxScenarios;
+
+  public CostSimulator(DatabaseClient db, TemplateBomCache boms, BatchSupplierService selections, PriceResolver prices,
+                       HotPathMetrics metrics,
+                       @Value("${cosmo.batches.simulation.max-scenarios:10000}") int maxScenarios) {
+    this.db = db;
+    this.boms = boms;
+    this.selections = selections;
+    this.prices = prices;
+    this.metrics = metrics;
+    this.maxScenarios = maxScenarios;
+  }
+
+  /**
+   * Сценарий.
+   *
+   * @param priceMultipliers сырьё → множитель цены за грамм (1.15 — рост на 15%)
+   * @param pricesPerGram сырьё → фиксированная цена за грамм
+   * @param offerSwaps сырьё → offer, по цене которого считать сырьё (как выбор поставщика для партии)
+   */
+  public record Scenario(
+      String name,
+      Map<UUID, BigDecimal> priceMultipliers,
+      Map<UUID, BigDecimal> pricesPerGram,
+      Map<UUID, UUID> offerSwaps
+  ) {}
+
+  /**
+   * Сырьё, стоимость которого в сценарии отличается от базовой.
+   */
+  public record ChangedMaterial(UUID rawMaterialId, BigDecimal grams, BigDecimal baseUnitPrice, BigDecimal unitPrice,
+                                BigDecimal baseCost, BigDecimal cost) {}
+
+  public record ScenarioResult(String name, BigDecimal materialsTotal, BigDecimal delta, List<ChangedMaterial> changed) {}
+
+  /**
+   * @param baseMaterialsTotal себестоимость материалов без изменений (как {@code GET /cost} в режиме LINEAR)
+   */
+  public record SimulationResult(UUID batchId, UUID templateId, LocalDate pricingDate, BigDecimal baseMaterialsTotal,
+                                 List<ScenarioResult> scenarios) {}
+
+  private record BatchRow(LocalDate pricingDate, UUID templateId) {}
+
+  /**
+   * Загруженные один раз данные: состав и базовые цены; {@code offerPrices} — цены offers сценариев.
+   */
+  record Base(TemplateBomCache.TemplateBom bom, Map<UUID, BigDecimal> pricePerGram, CostingService.Result cost,
+              Map<UUID, Map<UUID, BigDecimal>> offerPrices) {}
+
+  /**
+   * Сценарии для партии: дата ценообразования и выбор offers — партии.
+   */
+  public Mono<SimulationResult> simulateBatch(UUID batchId, List<Scenario> scenarios) {
+    validate(scenarios);
+    return metrics.sql("batch.find", db.sql("SELECT pricing_date, template_id FROM batch WHERE id = :bid")
+            .bind("bid", batchId)
+            .map((row, meta) -> new BatchRow(row.get("pricing_date", LocalDate.class), row.get("template_id", UUID.class)))
+            .one())
+        .switchIfEmpty(Mono.error(new IllegalArgumentException("Batch not found")))
+        .flatMap(batch -> {
+          LocalDate pd = batch.pricingDate() != null ? batch.pricingDate() : LocalDate.now();
+          return simulate(batchId, batch.templateId(), pd, scenarios);
+        });
+  }
+
+  /**
+   * Сценарии для шаблона на дату: цены — по дефолтным offers (как у партии без выбора поставщиков).
+   */
+  public Mono<SimulationResult> simulateTemplate(UUID templateId, LocalDate pricingDate, List<Scenario> scenarios) {
+    validate(scenarios);
+    return simulate(null, templateId, pricingDate != null ? pricingDate : LocalDate.now(), scenarios);
+  }
+
+  private void validate(List<Scenario> scenarios) {
+    if (scenarios == null || scenarios.isEmpty()) throw new IllegalArgumentException("No scenarios");
+    if (scenarios.size() > maxScenarios) {
+      throw new IllegalArgumentException("Too many scenarios: " + scenarios.size() + " > " + maxScenarios);
+    }
+  }
+
+  private Mono<SimulationResult> simulate(UUID batchId, UUID templateId, LocalDate pd, List<Scenario> scenarios) {
+    return metrics.service("CostSimulator.simulate", boms.get(templateId).flatMap(bom -> {
+      Set<UUID> swapped = new HashSet<>();
+      for (var s : scenarios) {
+        for (UUID rawId : map(s.offerSwaps()).keySet()) if (bom.neededRaw.contains(rawId)) swapped.add(rawId);
+      }
+      Mono<Map<UUID, UUID>> overridesMono = batchId == null ? Mono.just(Map.of()) : selections.loadOverrides(batchId, bom.neededRaw);
+
+      return Mono.zip(overridesMono, selections.loadOffersByRaw(swapped)).flatMap(t -> {
+        Map<UUID, UUID> overrides = t.getT1();
+        checkScenarios(bom, scenarios, t.getT2());
+
+        Set<PriceKey> keys = new HashSet<>();
+        for (UUID rawId : bom.neededRaw) keys.add(new PriceKey(rawId, overrides.get(rawId), pd));
+        for (var s : scenarios) {
+          map(s.offerSwaps()).forEach((rawId, offerId) -> {
+            if (bom.neededRaw.contains(rawId)) keys.add(new PriceKey(rawId, offerId, pd));
+          });
+        }
+
+        return prices.resolve(keys).flatMap(resolved -> {
+          Base base = base(bom, overrides, pd, resolved, scenarios);
+          return evaluateAll(base, scenarios)
+              .map(results -> new SimulationResult(batchId, templateId, pd, base.cost().materialsTotal(), results));
+        });
+      });
+    }));
+  }
+
+  /** Смена offer'а — только на активный offer этого же сырья; цены и множители — не отрицательные. */
+  private static void checkScenarios(TemplateBomCache.TemplateBom bom, List<Scenario> scenarios,
+                                     Map<UUID, List<BatchSupplierService.OfferOption>> offersByRaw) {
+    for (var s : scenarios) {
+      map(s.offerSwaps()).forEach((rawId, offerId) -> {
+        if (!bom.neededRaw.contains(rawId)) return;
+        boolean known = offersByRaw.getOrDefault(rawId, List.of()).stream().anyMatch(o -> o.offerId().equals(offerId));
+        if (!known) {
+          throw new IllegalArgumentException("Offer " + offerId + " is not an active offer of raw material " + rawId);
+        }
+      });
+      map(s.pricesPerGram()).forEach((rawId, price) -> {
+        if (price == null || price.signum() < 0) throw new IllegalArgumentException("Invalid price for raw material " + rawId);
+      });
+      map(s.priceMultipliers()).forEach((rawId, m) -> {
+        if (m == null || m.signum() < 0) throw new IllegalArgumentException("Invalid multiplier for raw material " + rawId);
+      });
+    }
+  }
+
+  /**
+   * @throws IllegalArgumentException если у offer'а, на который сценарий переключает сырьё, нет цены на дату
+   */
+  static Base base(TemplateBomCache.TemplateBom bom, Map<UUID, UUID> overrides, LocalDate pd,
+                   Map<PriceKey, ResolvedPrice> resolved, List<Scenario> scenarios) {
+    Map<UUID, BigDecimal> pricePerGram = new HashMap<>();
+    for (UUID rawId : bom.neededRaw) {
+      pricePerGram.put(rawId, resolved.get(new PriceKey(rawId, overrides.get(rawId), pd)).pricePerGram());
+    }
+
+    Map<UUID, Map<UUID, BigDecimal>> offerPrices = new HashMap<>();
+    for (var s : scenarios) {
+      map(s.offerSwaps()).forEach((rawId, offerId) -> {
+        if (!bom.neededRaw.contains(rawId)) return;
+        ResolvedPrice p = resolved.get(new PriceKey(rawId, offerId, pd));
+        // без цены на дату resolver вернёт ручную цену — её нельзя выдать за цену offer'а
+        if (p.source() != PriceResolver.Source.OVERRIDE) {
+          throw new IllegalArgumentException("Offer " + offerId + " has no price on " + pd + " for raw material " + rawId);
+        }
+        offerPrices.computeIfAbsent(rawId, k -> new HashMap<>()).put(offerId, p.pricePerGram());
+      });
+    }
+
+    return new Base(bom, pricePerGram, CostingKernel.price(bom.compiled, pricePerGram), offerPrices);
+  }
+
+  static Mono<List<ScenarioResult>> evaluateAll(Base base, List<Scenario> scenarios) {
+    int parts = Math.min(scenarios.size(), Schedulers.DEFAULT_POOL_SIZE);
+    int chunk = (scenarios.size() + parts - 1) / parts;
+
+    List<List<Scenario>> chunks = new ArrayList<>(parts);
+    for (int from = 0; from < scenarios.size(); from += chunk) {
+      chunks.add(scenarios.subList(from, Math.min(from + chunk, scenarios.size())));
+    }
+
+    return Flux.fromIterable(chunks)
+        .flatMapSequential(part -> Mono.fromCallable(() -> {
+          List<ScenarioResult> out = new ArrayList<>(part.size());
+          for (var s : part) out.add(evaluate(base, s));
+          return out;
+        }).subscribeOn(Schedulers.parallel()), parts)
+        .flatMapIterable(results -> results)
+        .collectList();
+  }
+
+  static ScenarioResult evaluate(Base base, Scenario scenario) {
+    Set<UUID> touched = new HashSet<>();
+    touched.addAll(map(scenario.offerSwaps()).keySet());
+    touched.addAll(map(scenario.pricesPerGram()).keySet());
+    touched.addAll(map(scenario.priceMultipliers()).keySet());
+    touched.retainAll(base.bom().neededRaw);
+
+    CostingService.Result before = base.cost();
+    if (touched.isEmpty()) return new ScenarioResult(scenario.name(), before.materialsTotal(), BigDecimal.ZERO, List.of());
+
+    Map<UUID, BigDecimal> pricePerGram = new HashMap<>(base.pricePerGram());
+    for (UUID rawId : touched) {
+      BigDecimal price = pricePerGram.get(rawId);
+      UUID offerId = map(scenario.offerSwaps()).get(rawId);
+      if (offerId != null) price = base.offerPrices().get(rawId).get(offerId);
+      BigDecimal fixed = map(scenario.pricesPerGram()).get(rawId);
+      if (fixed != null) price = fixed;
+      BigDecimal multiplier = map(scenario.priceMultipliers()).get(rawId);
+      if (multiplier != null) price = price.multiply(multiplier);
+      pricePerGram.put(rawId, price);
+    }
+
+    CostingService.Result after = CostingKernel.price(base.bom().compiled, pricePerGram);
+
+    // строки обоих результатов — одно и то же сырьё в одном порядке
+    List<ChangedMaterial> changed = new ArrayList<>();
+    for (int i = 0; i < after.rows().size(); i++) {
+      var b = before.rows().get(i);
+      var a = after.rows().get(i);
+      if (a.cost().compareTo(b.cost()) != 0 || a.unitPrice().compareTo(b.unitPrice()) != 0) {
+        changed.add(new ChangedMaterial(a.rawMaterialId(), a.grams(), b.unitPrice(), a.unitPrice(), b.cost(), a.cost()));
+      }
+    }
+    return new ScenarioResult(scenario.name(), after.materialsTotal(),
+        after.materialsTotal().subtract(before.materialsTotal()), changed);
+  }
+
+  private static <K, V> Map<K, V> map(Map<K, V> m) {
+    return m == null ? Map.of() : m;
+  }
+}
@@ -0,0 +1,165 @@
+package com.yourcompany.cosmo.batches.service;
+
+import com.yourcompany.cosmo.batches.domain.CostingKernel;
+import com.yourcompany.cosmo.batches.domain.CostingService;
+import com.yourcompany.cosmo.config.HotPathMetrics;
+import com.yourcompany.cosmo.pricing.service.PriceResolver;
+import com.yourcompany.cosmo.pricing.service.RawPriceTimeline;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Себестоимость материалов партии или шаблона на каждую дату диапазона.
+ * <p>
+ * Вместо расчёта на каждую дату: шкалы цен всего сырья состава загружаются один раз
+ * ({@link PriceResolver#timelines}), себестоимость на начало диапазона считается через {@link CostingKernel},
+ * а дальше один проход по датам смены цен пересчитывает только то сырьё, цена которого сменилась.
+ * Значения совпадают с {@code GET /cost} (режим LINEAR) на соответствующую дату, вплоть до scale.
+ * </p>
+ */
+@Service
+public class CostTimeSeries {
+
+  public enum Step { CHANGES, DAY }
+
+  /**
+   * Себестоимость на дату.
+   *
+   * @param changed сырьё, цена которого сменилась с этой даты (пусто для дней без изменений)
+   */
+  public record CostPoint(LocalDate date, BigDecimal materialsTotal, List<CostingService.RawCost> changed) {}
+
+  public record Series(UUID batchId, UUID templateId, LocalDate from, LocalDate to, List<CostPoint> points) {}
+
+  private final DatabaseClient db;
+  private final TemplateBomCache boms;
+  private final BatchSupplierService selections;
+  private final PriceResolver prices;
+  private final HotPathMetrics metrics;
+  private final int maxDays;
+
+  public CostTimeSeries(DatabaseClient db, TemplateBomCache boms, BatchSupplierService selections, PriceResolver prices,
+                        HotPathMetrics metrics, @Value("${cosmo.batches.cost-series.max-days:3660}") int maxDays) {
+    this.db = db;
+    this.boms = boms;
+    this.selections = selections;
+    this.prices = prices;
+    this.metrics = metrics;
+    this.maxDays = maxDays;
+  }
+
+  /**
+   * Ряд для партии: состав шаблона партии и выбор offers партии.
+   */
+  public Mono<Series> forBatch(UUID batchId, LocalDate from, LocalDate to, Step step) {
+    validate(from, to);
+    return metrics.sql("batch.find", db.sql("SELECT template_id FROM batch WHERE id = :bid")
+            .bind("bid", batchId)
+            .map((row, meta) -> row.get("template_id", UUID.class))
+            .one())
+        .switchIfEmpty(Mono.error(new IllegalArgumentException("Batch not found")))
+        .flatMap(templateId -> series(batchId, templateId, from, to, step));
+  }
+
+  /**
+   * Ряд для шаблона: цены — по дефолтным offers.
+   */
+  public Mono<Series> forTemplate(UUID templateId, LocalDate from, LocalDate to, Step step) {
+    validate(from, to);
+    return series(null, templateId, from, to, step);
+  }
+
+  private void validate(LocalDate from, LocalDate to) {
+    if (from == null || to == null || to.isBefore(from)) throw new IllegalArgumentException("Invalid date range");
+    if (ChronoUnit.DAYS.between(from, to) >= maxDays) {
+      throw new IllegalArgumentException("Date range is longer than " + maxDays + " days");
+    }
+  }
+
+  private Mono<Series> series(UUID batchId, UUID templateId, LocalDate from, LocalDate to, Step step) {
+    return metrics.service("CostTimeSeries.series", boms.get(templateId).flatMap(bom -> {
+      Mono<Map<UUID, UUID>> overridesMono = batchId == null ? Mono.just(Map.of()) : selections.loadOverrides(batchId, bom.neededRaw);
+      return overridesMono
+          .flatMap(overrides -> prices.timelines(bom.neededRaw, overrides))
+          .map(timelines -> new Series(batchId, templateId, from, to, sweep(bom, timelines, from, to, step)));
+    }));
+  }
+
+  /**
+   * Проход по датам смены цен.
+   * <p>
+   * Стоимость сырья — {@code граммы × цена}, как в {@link CostingKernel}; итог поддерживается как сумма
+   * с поправкой на изменившиеся строки и приводится к наибольшему scale строк — так же, как итог ядра.
+   * </p>
+   */
+  static List<CostPoint> sweep(TemplateBomCache.TemplateBom bom, Map<UUID, RawPriceTimeline> timelines,
+                               LocalDate from, LocalDate to, Step step) {
+    Map<UUID, BigDecimal> pricePerGram = new HashMap<>();
+    timelines.forEach((rawId, t) -> pricePerGram.put(rawId, t.at(from).pricePerGram()));
+    CostingService.Result start = CostingKernel.price(bom.compiled, pricePerGram);
+
+    int n = start.rows().size();
+    RawPriceTimeline[] rawTimelines = new RawPriceTimeline[n];
+    BigDecimal[] unitPrice = new BigDecimal[n];
+    BigDecimal[] cost = new BigDecimal[n];
+    TreeMap<Integer, Integer> scales = new TreeMap<>();
+    // даты смены цен → строки, которых они касаются
+    TreeMap<Long, List<Integer>> changes = new TreeMap<>();
+
+    for (int i = 0; i < n; i++) {
+      var row = start.rows().get(i);
+      rawTimelines[i] = timelines.get(row.rawMaterialId());
+      unitPrice[i] = row.unitPrice();
+      cost[i] = row.cost();
+      scales.merge(cost[i].scale(), 1, Integer::sum);
+      if (rawTimelines[i] == null) continue;
+      for (long day : rawTimelines[i].changes(from, to)) changes.computeIfAbsent(day, d -> new ArrayList<>()).add(i);
+    }
+
+    List<CostPoint> points = new ArrayList<>();
+    BigDecimal total = start.materialsTotal();
+    points.add(new CostPoint(from, total, List.of()));
+
+    for (var e : changes.entrySet()) {
+      LocalDate date = LocalDate.ofEpochDay(e.getKey());
+      List<CostingService.RawCost> changed = new ArrayList<>();
+      BigDecimal sum = total;
+
+      for (int i : e.getValue()) {
+        BigDecimal price = rawTimelines[i].at(date).pricePerGram();
+        if (price.equals(unitPrice[i])) continue;
+
+        var grams = start.rows().get(i).grams();
+        BigDecimal next = grams.multiply(price);
+        sum = sum.subtract(cost[i]).add(next);
+        scales.merge(cost[i].scale(), -1, (a, b) -> a + b == 0 ? null : a + b);
+        scales.merge(next.scale(), 1, Integer::sum);
+        unitPrice[i] = price;
+        cost[i] = next;
+        changed.add(new CostingService.RawCost(start.rows().get(i).rawMaterialId(), grams, price, next));
+      }
+      if (changed.isEmpty()) continue;
+
+      total = sum.setScale(scales.isEmpty() ? 0 : scales.lastKey());
+      if (step == Step.DAY) fill(points, date, to);
+      points.add(new CostPoint(date, total, changed));
+    }
+    if (step == Step.DAY) fill(points, to.plusDays(1), to);
+    return points;
+  }
+
+  /** Дни без изменений до {@code until} (не включая) — со значением последней точки. */
+  private static void fill(List<CostPoint> points, LocalDate until, LocalDate to) {
+    CostPoint last = points.get(points.size() - 1);
+    for (LocalDate d = last.date().plusDays(1); d.isBefore(until) && !d.isAfter(to); d = d.plusDays(1)) {
+      points.add(new CostPoint(d, last.materialsTotal(), List.of()));
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package com.yourcompany.cosmo.batches.service;
+
+import com.yourcompany.cosmo.batches.domain.CostingKernel;
+import com.yourcompany.cosmo.batches.domain.CostingService;
+import com.yourcompany.cosmo.config.HotPathMetrics;
+import com.yourcompany.cosmo.pricing.service.PriceResolver;
+import com.yourcompany.cosmo.pricing.service.PriceResolver.PriceKey;
+import com.yourcompany.cosmo.pricing.service.PriceResolver.ResolvedPrice;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Подбор самых дешёвых offers для сырья партии.
+ * <p>
+ * Для каждого сырья шаблона рассматриваются все активные offers активных поставщиков; цена каждого offer'а
+ * на дату ценообразования партии разрешается одним обращением к {@link PriceResolver} вместе с текущими ценами.
+ * Цена за грамм линейна по количеству, поэтому самый дешёвый набор — самый дешёвый offer по каждому сырью
+ * независимо. Offer предлагается, только если он строго дешевле текущей цены сырья в партии.
+ * </p>
+ */
+@Service
+public class SupplierSelectionOptimizer {
+
+  private final DatabaseClient db;
+  private final TemplateBomCache boms;
+  private final BatchSupplierService selections;
+  private final PriceResolver prices;
+  private final HotPathMetrics metrics;
+
+  public SupplierSelectionOptimizer(DatabaseClient db, TemplateBomCache boms, BatchSupplierService selections,
+                                    PriceResolver prices, HotPathMetrics metrics) {
+    this.db = db;
+    this.boms = boms;
+    this.selections = selections;
+    this.prices = prices;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Предложение по сырью.
+   *
+   * @param currentOfferId offer, по которому сейчас берётся цена ({@code null} для ручной цены и её отсутствия)
+   * @param proposedOfferId самый дешёвый offer ({@code null} — дешевле текущей цены offers нет, выбор не меняется)
+   */
+  public record Proposal(
+      UUID rawMaterialId,
+      BigDecimal grams,
+      UUID currentOfferId,
+      PriceResolver.Source currentSource,
+      BigDecimal currentUnitPrice,
+      BigDecimal currentCost,
+      UUID proposedOfferId,
+      UUID proposedSupplierId,
+      String proposedSupplierName,
+      BigDecimal proposedUnitPrice,
+      BigDecimal proposedCost
+  ) {}
+
+  /**
+   * Результат подбора.
+   *
+   * @param applied выбор сохранён в партию (для открытой партии снимок себестоимости обновляет reprice)
+   */
+  public record OptimizationResult(
+      UUID batchId,
+      LocalDate pricingDate,
+      List<Proposal> proposals,
+      BigDecimal currentTotal,
+      BigDecimal proposedTotal,
+      boolean applied
+  ) {}
+
+  private record BatchRow(LocalDate pricingDate, UUID templateId) {}
+
+  /**
+   * Подобрать самые дешёвые offers для партии.
+   *
+   * @param apply сохранить предложенный выбор (upsert в batch_supplier_selection)
+   */
+  public Mono<OptimizationResult> optimize(UUID batchId, boolean apply) {
+    return metrics.sql("batch.find", db.sql("SELECT pricing_date, template_id FROM batch WHERE id = :bid")
+            .bind("bid", batchId)
+            .map((row, meta) -> new BatchRow(row.get("pricing_date", LocalDate.class), row.get("template_id", UUID.class)))
+            .one())
+        .switchIfEmpty(Mono.error(new IllegalArgumentException("Batch not found")))
+        .flatMap(batch -> {
+          LocalDate pd = batch.pricingDate() != null ? batch.pricingDate() : LocalDate.now();
+          return boms.get(batch.templateId()).flatMap(bom -> {
+            Set<UUID> rawIds = bom.neededRaw;
+            return Mono.zip(selections.loadOverrides(batchId, rawIds), selections.loadOffersByRaw(rawIds))
+                .flatMap(t -> {
+                  Map<UUID, UUID> overrides = t.getT1();
+                  Map<UUID, List<BatchSupplierService.OfferOption>> offersByRaw = t.getT2();
+
+                  Set<PriceKey> keys = new HashSet<>();
+                  for (UUID rawId : rawIds) {
+                    keys.add(new PriceKey(rawId, overrides.get(rawId), pd));
+                    for (var o : offersByRaw.getOrDefault(rawId, List.of())) keys.add(new PriceKey(rawId, o.offerId(), pd));
+                  }
+
+                  return prices.resolve(keys)
+                      .map(resolved -> propose(batchId, pd, bom, overrides, offersByRaw, resolved));
+                });
+          });
+        })
+        .flatMap(result -> apply ? applyProposals(result) : Mono.just(result));
+  }
+
+  static OptimizationResult propose(UUID batchId, LocalDate pd, TemplateBomCache.TemplateBom bom,
+                                    Map<UUID, UUID> overrides,
+                                    Map<UUID, List<BatchSupplierService.OfferOption>> offersByRaw,
+                                    Map<PriceKey, ResolvedPrice> resolved) {
+    Map<UUID, ResolvedPrice> current = new HashMap<>();
+    Map<UUID, BigDecimal> currentPrice = new HashMap<>();
+    Map<UUID, BigDecimal> proposedPrice = new HashMap<>();
+    Map<UUID, BatchSupplierService.OfferOption> proposedOffer = new HashMap<>();
+
+    for (UUID rawId : bom.neededRaw) {
+      ResolvedPrice cur = resolved.get(new PriceKey(rawId, overrides.get(rawId), pd));
+      current.put(rawId, cur);
+      currentPrice.put(rawId, cur.pricePerGram());
+
+      BigDecimal best = cur.source() == PriceResolver.Source.NONE ? null : cur.pricePerGram();
+      BatchSupplierService.OfferOption bestOffer = null;
+      for (var o : offersByRaw.getOrDefault(rawId, List.of())) {
+        ResolvedPrice p = resolved.get(new PriceKey(rawId, o.offerId(), pd));
+        // без цены на дату resolver вернёт ручную цену — такой offer не рассматривается
+        if (p.source() != PriceResolver.Source.OVERRIDE) continue;
+        if (best == null || p.pricePerGram().compareTo(best) < 0) {
+          best = p.pricePerGram();
+          bestOffer = o;
+        }
+      }
+      if (bestOffer != null && !bestOffer.offerId().equals(cur.offerId())) {
+        proposedOffer.put(rawId, bestOffer);
+        proposedPrice.put(rawId, best);
+      } else {
+        proposedPrice.put(rawId, cur.pricePerGram());
+      }
+    }
+
+    CostingService.Result before = CostingKernel.price(bom.compiled, currentPrice);
+    CostingService.Result after = CostingKernel.price(bom.compiled, proposedPrice);
+
+    List<Proposal> proposals = new ArrayList<>(before.rows().size());
+    for (int i = 0; i < before.rows().size(); i++) {
+      var b = before.rows().get(i);
+      var a = after.rows().get(i);
+      var cur = current.get(b.rawMaterialId());
+      var offer = proposedOffer.get(b.rawMaterialId());
+      proposals.add(new Proposal(
+          b.rawMaterialId(), b.grams(),
+          cur.offerId(), cur.source(), b.unitPrice(), b.cost(),
+          offer == null ? null : offer.offerId(),
+          offer == null ? null : offer.supplierId(),
+          offer == null ? null : offer.supplierName(),
+          a.unitPrice(), a.cost()
+      ));
+    }
+
+    return new OptimizationResult(batchId, pd, proposals, before.materialsTotal(), after.materialsTotal(), false);
+  }
+
+  private Mono<OptimizationResult> applyProposals(OptimizationResult result) {
+    List<BatchSupplierService.Selection> changed = result.proposals().stream()
+        .filter(p -> p.proposedOfferId() != null)
+        .map(p -> new BatchSupplierService.Selection(p.rawMaterialId(), p.proposedOfferId()))
+        .toList();
+    return selections.saveSelections(result.batchId(), changed)
+        .thenReturn(new OptimizationResult(result.batchId(), result.pricingDate(), result.proposals(),
+            result.currentTotal(), result.proposedTotal(), !changed.isEmpty()));
+  }
+}
@@ -0,0 +1,182 @@
+package com.yourcompany.cosmo.batches.service;
+
+import com.yourcompany.cosmo.batches.domain.CostingKernel;
+import com.yourcompany.cosmo.batches.domain.CostingService;
+import com.yourcompany.cosmo.config.DbRouting;
+import com.yourcompany.cosmo.config.HotPathMetrics;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.function.BiPredicate;
+
+/**
+ * Кэш развёрнутых составов шаблонов партий (batch_template_item × product × recipe_item).
+ * <p>
+ * Состав шаблона разворачивается при первом обращении и хранится до вытеснения (LRU, ограниченный размер)
+ * или до инвалидации — её вызывают сервисы, которые создают шаблоны, продукты и рецепты.
+ * Загрузка, начавшаяся до инвалидации, в кэш не попадает.
+ * </p>
+ */
+@Component
+public class TemplateBomCache {
+
+  /**
+   * Строка состава: продукт шаблона × строка его рецепта.
+   * Для продукта без рецептуры {@code rawMaterialId} и граммовка — {@code null}.
+   */
+  public record Line(UUID productId, String productName, int quantity, UUID recipeId,
+                     UUID rawMaterialId, String rawMaterialName, BigDecimal gramsPerUnit) {}
+
+  /**
+   * Развёрнутый состав шаблона.
+   */
+  public static final class TemplateBom {
+    static final TemplateBom EMPTY = of(List.of());
+
+    /** Строки в порядке (название продукта, название сырья). */
+    final List<Line> lines;
+    final List<CostingService.ProductInBatch> products = new ArrayList<>();
+    final Map<UUID, List<CostingService.RecipeItem>> recipeByProduct = new HashMap<>();
+    final Set<UUID> neededRaw = new HashSet<>();
+    final Set<UUID> productIds = new HashSet<>();
+    final Set<UUID> recipeIds = new HashSet<>();
+    /** Суммарная потребность: сырьё → граммы на партию. */
+    final CostingKernel.Bom compiled;
+
+    private TemplateBom(List<Line> lines) {
+      this.lines = lines;
+      for (var l : lines) {
+        productIds.add(l.productId());
+        if (l.recipeId() != null) recipeIds.add(l.recipeId());
+
+        var items = recipeByProduct.get(l.productId());
+        if (items == null) {
+          items = new ArrayList<>();
+          recipeByProduct.put(l.productId(), items);
+          products.add(new CostingService.ProductInBatch(l.productId(), l.quantity()));
+        }
+        if (l.rawMaterialId() == null) continue;
+
+        items.add(new CostingService.RecipeItem(l.rawMaterialId(), l.gramsPerUnit()));
+        neededRaw.add(l.rawMaterialId());
+      }
+      this.compiled = CostingKernel.compile(products, recipeByProduct);
+    }
+
+    static TemplateBom of(List<Line> lines) {
+      return new TemplateBom(List.copyOf(lines));
+    }
+  }
+
+  private record Loaded(UUID templateId, Line line) {}
+
+  private final DatabaseClient db;
+  private final HotPathMetrics metrics;
+  private final Map<UUID, TemplateBom> cache;
+  private long generation;
+
+  public TemplateBomCache(DatabaseClient db, HotPathMetrics metrics,
+                          @Value("${cosmo.batches.bom-cache.max-size:1000}") int maxSize) {
+    this.db = db;
+    this.metrics = metrics;
+    this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<UUID, TemplateBom> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  public Mono<TemplateBom> get(UUID templateId) {
+    if (templateId == null) return Mono.just(TemplateBom.EMPTY);
+    return getAll(List.of(templateId)).map(m -> m.getOrDefault(templateId, TemplateBom.EMPTY));
+  }
+
+  /**
+   * Составы шаблонов; отсутствующие в кэше загружаются одним запросом.
+   *
+   * @return шаблон → состав (для каждого запрошенного шаблона; пустой состав, если строк нет)
+   */
+  public Mono<Map<UUID, TemplateBom>> getAll(Collection<UUID> templateIds) {
+    Map<UUID, TemplateBom> found = new HashMap<>();
+    List<UUID> missing = new ArrayList<>();
+    long loadGeneration;
+    synchronized (this) {
+      loadGeneration = generation;
+      for (UUID id : new LinkedHashSet<>(templateIds)) {
+        TemplateBom bom = cache.get(id);
+        if (bom != null) found.put(id, bom);
+        else missing.add(id);
+      }
+    }
+    if (missing.isEmpty()) return Mono.just(found);
+
+    // загрузка в кэш — с primary: состав с отстающей реплики остался бы в кэше до следующей инвалидации
+    return metrics.sql("batch_template.bom", DbRouting.onPrimary(db.sql("""
+            SELECT bti.template_id, bti.product_id, p.name AS product_name, bti.quantity, p.recipe_id,
+                   rm.id AS raw_id, rm.name AS raw_name, ri.amount_gram
+            FROM batch_template_item bti
+            JOIN product p ON p.id = bti.product_id
+            LEFT JOIN recipe_item ri ON ri.recipe_id = p.recipe_id
+            LEFT JOIN raw_material rm ON rm.id = ri.raw_material_id
+            WHERE bti.template_id = ANY(:tids)
+            ORDER BY p.name, rm.name
+            """)
+        .bind("tids", missing.toArray(new UUID[0]))
+        .map((row, meta) -> new Loaded(row.get("template_id", UUID.class), readLine(row)))
+        .all()))
+        .collectList()
+        .map(rows -> {
+          Map<UUID, List<Line>> linesByTemplate = new HashMap<>();
+          for (UUID id : missing) linesByTemplate.put(id, new ArrayList<>());
+          for (var r : rows) linesByTemplate.get(r.templateId()).add(r.line());
+
+          synchronized (this) {
+            linesByTemplate.forEach((id, lines) -> {
+              TemplateBom bom = TemplateBom.of(lines);
+              if (generation == loadGeneration) cache.put(id, bom);
+              found.put(id, bom);
+            });
+          }
+          return found;
+        });
+  }
+
+  static Line readLine(Readable row) {
+    Object amount = row.get("amount_gram");
+    return new Line(
+        row.get("product_id", UUID.class),
+        row.get("product_name", String.class),
+        Objects.requireNonNull(row.get("quantity", Integer.class)),
+        row.get("recipe_id", UUID.class),
+        row.get("raw_id", UUID.class),
+        row.get("raw_name", String.class),
+        amount == null ? null : new BigDecimal(amount.toString())
+    );
+  }
+
+  /** Изменился состав шаблона. */
+  public void invalidateTemplate(UUID templateId) {
+    invalidate((id, bom) -> id.equals(templateId));
+  }
+
+  /** Изменился продукт (его рецептура или название). */
+  public void invalidateProduct(UUID productId) {
+    invalidate((id, bom) -> bom.productIds.contains(productId));
+  }
+
+  /** Изменился рецепт. */
+  public void invalidateRecipe(UUID recipeId) {
+    invalidate((id, bom) -> bom.recipeIds.contains(recipeId));
+  }
+
+  private synchronized void invalidate(BiPredicate<UUID, TemplateBom> affected) {
+    generation++;
+    cache.entrySet().removeIf(e -> affected.test(e.getKey(), e.getValue()));
+  }
+}
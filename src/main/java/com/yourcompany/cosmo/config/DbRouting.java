@@ -0,0 +1,48 @@
+package com.yourcompany.cosmo.config;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * Метки маршрутизации запросов между primary и репликой Postgres (в Reactor context).
+ * <p>
+ * Без метки и внутри {@code TransactionalOperator} соединение берётся с primary. Метка {@link Target#REPLICA}
+ * ставится на заведомо читающую работу ({@link ReadYourWritesFilter} — на GET-запросы), метка
+ * {@link Target#PRIMARY} — на чтения, которые не должны отставать от записи (например, загрузка в кэш).
+ * Ближайшая к запросу метка главнее. Если реплика не настроена, метки ни на что не влияют.
+ * </p>
+ */
+public final class DbRouting {
+
+  public enum Target { PRIMARY, REPLICA }
+
+  static final String KEY = DbRouting.class.getName();
+
+  private DbRouting() {}
+
+  public static <T> Mono<T> onReplica(Mono<T> work) {
+    return work.contextWrite(ctx -> mark(ctx, Target.REPLICA));
+  }
+
+  public static <T> Flux<T> onReplica(Flux<T> work) {
+    return work.contextWrite(ctx -> mark(ctx, Target.REPLICA));
+  }
+
+  public static <T> Mono<T> onPrimary(Mono<T> work) {
+    return work.contextWrite(ctx -> mark(ctx, Target.PRIMARY));
+  }
+
+  public static <T> Flux<T> onPrimary(Flux<T> work) {
+    return work.contextWrite(ctx -> mark(ctx, Target.PRIMARY));
+  }
+
+  static Context mark(Context ctx, Target target) {
+    return ctx.put(KEY, target);
+  }
+
+  static Target target(ContextView ctx) {
+    return ctx.getOrDefault(KEY, Target.PRIMARY);
+  }
+}
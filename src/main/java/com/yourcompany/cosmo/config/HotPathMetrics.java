@@ -0,0 +1,72 @@
+package com.yourcompany.cosmo.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Таймеры горячих путей: сценарии сервисов ({@value #SERVICE_TIMER}, тег {@code operation})
+ * и именованные SQL-запросы через {@code DatabaseClient} ({@value #SQL_TIMER}, тег {@code statement}).
+ * <p>
+ * Время считается от подписки до завершения потока, т.е. вместе с чтением всех строк результата;
+ * тег {@code outcome} — success, error или cancelled. Гистограммы включаются в application.yml
+ * ({@code management.metrics.distribution}).
+ * </p>
+ */
+@Component
+public class HotPathMetrics {
+
+  public static final String SERVICE_TIMER = "cosmo.service";
+  public static final String SQL_TIMER = "cosmo.sql";
+
+  private final MeterRegistry registry;
+
+  public HotPathMetrics(MeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  public <T> Mono<T> service(String operation, Mono<T> call) {
+    return timed(SERVICE_TIMER, "operation", operation, call);
+  }
+
+  public <T> Flux<T> service(String operation, Flux<T> call) {
+    return timed(SERVICE_TIMER, "operation", operation, call);
+  }
+
+  public <T> Mono<T> sql(String statement, Mono<T> query) {
+    return timed(SQL_TIMER, "statement", statement, query);
+  }
+
+  public <T> Flux<T> sql(String statement, Flux<T> query) {
+    return timed(SQL_TIMER, "statement", statement, query);
+  }
+
+  private <T> Mono<T> timed(String name, String tag, String value, Mono<T> source) {
+    return Mono.defer(() -> {
+      Timer.Sample sample = Timer.start(registry);
+      return source.doFinally(signal -> sample.stop(timer(name, tag, value, signal)));
+    });
+  }
+
+  private <T> Flux<T> timed(String name, String tag, String value, Flux<T> source) {
+    return Flux.defer(() -> {
+      Timer.Sample sample = Timer.start(registry);
+      return source.doFinally(signal -> sample.stop(timer(name, tag, value, signal)));
+    });
+  }
+
+  private Timer timer(String name, String tag, String value, SignalType signal) {
+    String outcome = switch (signal) {
+      case ON_ERROR -> "error";
+      case CANCEL -> "cancelled";
+      default -> "success";
+    };
+    return Timer.builder(name)
+        .tag(tag, value)
+        .tag("outcome", outcome)
+        .register(registry);
+  }
+}
@@ -0,0 +1,69 @@
+package com.yourcompany.cosmo.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.PropertyMapper;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.time.Duration;
+
+/**
+ * Реплика Postgres для чтений ({@code cosmo.r2dbc.replica.url}). Без неё все запросы идут в {@code spring.r2dbc.url}.
+ * <p>
+ * Оба пула строятся с настройками {@code spring.r2dbc.pool}; основной {@link ConnectionFactory} —
+ * {@link ReadWriteRoutingConnectionFactory}, правила выбора — в {@link DbRouting}.
+ * </p>
+ */
+@Configuration
+@ConditionalOnProperty(name = "cosmo.r2dbc.replica.url")
+public class ReadReplicaConfig {
+
+  @Bean(destroyMethod = "dispose")
+  ConnectionPool primaryConnectionFactory(R2dbcProperties props) {
+    return pool("primary", props.getUrl(), props.getUsername(), props.getPassword(), props.getPool());
+  }
+
+  @Bean(destroyMethod = "dispose")
+  ConnectionPool replicaConnectionFactory(R2dbcProperties props,
+                                          @Value("${cosmo.r2dbc.replica.url}") String url,
+                                          @Value("${cosmo.r2dbc.replica.username:${spring.r2dbc.username}}") String username,
+                                          @Value("${cosmo.r2dbc.replica.password:${spring.r2dbc.password}}") String password) {
+    return pool("replica", url, username, password, props.getPool());
+  }
+
+  @Bean
+  @Primary
+  ConnectionFactory connectionFactory(ConnectionPool primaryConnectionFactory, ConnectionPool replicaConnectionFactory) {
+    return new ReadWriteRoutingConnectionFactory(primaryConnectionFactory, replicaConnectionFactory);
+  }
+
+  @Bean
+  ReadYourWritesFilter readYourWritesFilter(@Value("${cosmo.r2dbc.replica.read-your-writes-window:PT5S}") Duration window) {
+    return new ReadYourWritesFilter(window);
+  }
+
+  private static ConnectionPool pool(String name, String url, String username, String password, R2dbcProperties.Pool pool) {
+    ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(url).mutate()
+        .option(ConnectionFactoryOptions.USER, username)
+        .option(ConnectionFactoryOptions.PASSWORD, password)
+        .build();
+    var builder = ConnectionPoolConfiguration.builder(ConnectionFactories.get(options)).name(name);
+    var map = PropertyMapper.get().alwaysApplyingWhenNonNull();
+    map.from(pool.getInitialSize()).to(builder::initialSize);
+    map.from(pool.getMaxSize()).to(builder::maxSize);
+    map.from(pool.getMaxIdleTime()).to(builder::maxIdleTime);
+    map.from(pool.getMaxLifeTime()).to(builder::maxLifeTime);
+    map.from(pool.getMaxAcquireTime()).to(builder::maxAcquireTime);
+    map.from(pool.getMaxCreateConnectionTime()).to(builder::maxCreateConnectionTime);
+    map.from(pool.getValidationQuery()).whenHasText().to(builder::validationQuery);
+    return new ConnectionPool(builder.build());
+  }
+}
@@ -0,0 +1,34 @@
+package com.yourcompany.cosmo.config;
+
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
+import org.springframework.transaction.NoTransactionException;
+import org.springframework.transaction.reactive.TransactionContextManager;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Выбор пула соединений: внутри транзакции — всегда primary, иначе по метке {@link DbRouting}.
+ * <p>
+ * Транзакция определяется по наличию контекста транзакции в Reactor context: при {@code doBegin}
+ * соединение запрашивается до того, как транзакция помечена активной, а контекст уже есть.
+ * </p>
+ */
+public class ReadWriteRoutingConnectionFactory extends AbstractRoutingConnectionFactory {
+
+  public ReadWriteRoutingConnectionFactory(ConnectionFactory primary, ConnectionFactory replica) {
+    setTargetConnectionFactories(Map.of(DbRouting.Target.PRIMARY, primary, DbRouting.Target.REPLICA, replica));
+    setDefaultTargetConnectionFactory(primary);
+    setLenientFallback(false);
+    afterPropertiesSet();
+  }
+
+  @Override
+  protected Mono<Object> determineCurrentLookupKey() {
+    return TransactionContextManager.currentContext()
+        .<Object>map(txContext -> DbRouting.Target.PRIMARY)
+        .onErrorResume(NoTransactionException.class,
+            e -> Mono.deferContextual(ctx -> Mono.just(DbRouting.target(ctx))));
+  }
+}
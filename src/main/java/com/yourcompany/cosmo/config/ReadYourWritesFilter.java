@@ -0,0 +1,69 @@
+package com.yourcompany.cosmo.config;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Направляет GET-запросы на реплику, кроме запросов пользователя, который сам писал в течение окна
+ * read-your-writes: его чтения идут на primary, пока реплика может не успеть догнать запись.
+ * <p>
+ * Время записи отмечается в начале и в конце каждого не-GET запроса пользователя (учёт — в памяти инстанса).
+ * </p>
+ */
+public class ReadYourWritesFilter implements WebFilter {
+
+  /** Сколько записей держать до очистки устаревших. */
+  private static final int PRUNE_THRESHOLD = 10_000;
+
+  private final long windowNanos;
+  private final LongSupplier clock;
+  private final Map<String, Long> lastWrite = new ConcurrentHashMap<>();
+
+  public ReadYourWritesFilter(Duration window) {
+    this(window, System::nanoTime);
+  }
+
+  ReadYourWritesFilter(Duration window, LongSupplier clock) {
+    this.windowNanos = window.toNanos();
+    this.clock = clock;
+  }
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    boolean read = HttpMethod.GET.equals(exchange.getRequest().getMethod())
+        || HttpMethod.HEAD.equals(exchange.getRequest().getMethod());
+
+    return exchange.getPrincipal()
+        .map(Principal::getName)
+        .defaultIfEmpty("")
+        .flatMap(user -> {
+          if (read) {
+            return wroteRecently(user) ? chain.filter(exchange) : DbRouting.onReplica(chain.filter(exchange));
+          }
+          recordWrite(user);
+          return chain.filter(exchange).doFinally(s -> recordWrite(user));
+        });
+  }
+
+  boolean wroteRecently(String user) {
+    Long at = lastWrite.get(user);
+    return at != null && clock.getAsLong() - at < windowNanos;
+  }
+
+  private void recordWrite(String user) {
+    long now = clock.getAsLong();
+    lastWrite.put(user, now);
+    if (lastWrite.size() > PRUNE_THRESHOLD) {
+      lastWrite.values().removeIf(at -> now - at >= windowNanos);
+    }
+  }
+}
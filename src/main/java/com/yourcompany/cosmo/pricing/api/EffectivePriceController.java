@@ -0,0 +1,34 @@
+package com.yourcompany.cosmo.pricing.api;
+
+import com.yourcompany.cosmo.pricing.service.EffectivePriceChecker;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+/**
+ * Служебный API таблицы действующих цен сырья.
+ */
+@Tag(name = "Цены — действующие", description = "Проверка таблицы действующих цен сырья")
+@RestController
+@RequestMapping("/api/pricing/effective-prices")
+public class EffectivePriceController {
+
+  private final EffectivePriceChecker checker;
+
+  public EffectivePriceController(EffectivePriceChecker checker) {
+    this.checker = checker;
+  }
+
+  @Operation(
+      summary = "Проверить таблицу действующих цен",
+      description = """
+          Сравнивает effective_raw_price с выводом из цен offers, дефолтных offers и ручных цен.
+          С repair=true сырьё с расхождениями пересчитывается.
+          """
+  )
+  @PostMapping(":check")
+  public Mono<EffectivePriceChecker.Report> check(@RequestParam(defaultValue = "false") boolean repair) {
+    return checker.check(repair);
+  }
+}
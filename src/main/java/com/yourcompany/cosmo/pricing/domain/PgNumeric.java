@@ -0,0 +1,53 @@
+package com.yourcompany.cosmo.pricing.domain;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Арифметика, повторяющая правила типа {@code numeric} в Postgres.
+ * <p>
+ * Нужна, чтобы цены, посчитанные в памяти, совпадали с ценами из SQL вплоть до scale
+ * (например, {@code price_per_package / package_size}).
+ * </p>
+ */
+public final class PgNumeric {
+
+  private static final int NUMERIC_MIN_SIG_DIGITS = 16;
+  private static final int NUMERIC_MAX_DISPLAY_SCALE = 1000;
+  private static final int DEC_DIGITS = 4;
+
+  /**
+   * Деление {@code numeric / numeric}: scale результата выбирается как в {@code select_div_scale()},
+   * округление — половина от нуля.
+   */
+  public static BigDecimal divide(BigDecimal dividend, BigDecimal divisor) {
+    int weight1 = weight(dividend);
+    int weight2 = weight(divisor);
+    int first1 = firstDigit(dividend, weight1);
+    int first2 = firstDigit(divisor, weight2);
+
+    int qweight = weight1 - weight2;
+    if (first1 <= first2) qweight--;
+
+    int rscale = NUMERIC_MIN_SIG_DIGITS - qweight * DEC_DIGITS;
+    rscale = Math.max(rscale, Math.max(dividend.scale(), 0));
+    rscale = Math.max(rscale, Math.max(divisor.scale(), 0));
+    rscale = Math.min(rscale, NUMERIC_MAX_DISPLAY_SCALE);
+
+    return dividend.divide(divisor, rscale, RoundingMode.HALF_UP);
+  }
+
+  /** Вес старшей цифры в системе по основанию 10000 (как {@code NumericVar.weight}). */
+  private static int weight(BigDecimal v) {
+    if (v.signum() == 0) return 0;
+    return Math.floorDiv(v.precision() - v.scale() - 1, DEC_DIGITS);
+  }
+
+  /** Старшая цифра по основанию 10000. */
+  private static int firstDigit(BigDecimal v, int weight) {
+    if (v.signum() == 0) return 0;
+    return v.abs().movePointLeft(weight * DEC_DIGITS).setScale(0, RoundingMode.DOWN).intValueExact();
+  }
+
+  private PgNumeric() {}
+}
@@ -0,0 +1,101 @@
+package com.yourcompany.cosmo.pricing.domain;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Неизменяемая шкала цен одного ключа (offer или сырья) во времени.
+ * <p>
+ * Интервалы действия цен ({@code valid_from..valid_to} включительно, {@code valid_to = null} — бессрочно)
+ * разворачиваются в последовательность непересекающихся отрезков. Для каждого отрезка заранее выбран
+ * интервал с наибольшим {@code valid_from} (при равенстве — добавленный позже), т.е. ровно та цена,
+ * которую выбирает {@code ORDER BY valid_from DESC LIMIT 1}. Поиск цены на дату — бинарный поиск, O(log n).
+ * </p>
+ */
+public final class PriceTimeline {
+
+  /**
+   * Интервал действия цены. Порядок интервалов в списке — порядок их добавления.
+   */
+  public record Interval(LocalDate validFrom, LocalDate validTo, BigDecimal value) {}
+
+  public static final PriceTimeline EMPTY = new PriceTimeline(new long[0], new BigDecimal[0]);
+
+  /** Начала отрезков (epoch day), по возрастанию. */
+  private final long[] starts;
+  /** Цена на отрезке; {@code null} — цены нет. */
+  private final BigDecimal[] values;
+
+  private PriceTimeline(long[] starts, BigDecimal[] values) {
+    this.starts = starts;
+    this.values = values;
+  }
+
+  public static PriceTimeline of(List<Interval> intervals) {
+    if (intervals.isEmpty()) return EMPTY;
+
+    int n = intervals.size();
+    long[] from = new long[n];
+    long[] toExclusive = new long[n];
+    long[] bounds = new long[n * 2];
+    int b = 0;
+    for (int i = 0; i < n; i++) {
+      var it = intervals.get(i);
+      from[i] = it.validFrom().toEpochDay();
+      toExclusive[i] = it.validTo() == null ? Long.MAX_VALUE : it.validTo().toEpochDay() + 1;
+      bounds[b++] = from[i];
+      if (it.validTo() != null) bounds[b++] = toExclusive[i];
+    }
+    bounds = Arrays.stream(bounds, 0, b).sorted().distinct().toArray();
+
+    Integer[] byStart = new Integer[n];
+    for (int i = 0; i < n; i++) byStart[i] = i;
+    Arrays.sort(byStart, Comparator.comparingLong(i -> from[i]));
+
+    // наверху — интервал с наибольшим valid_from, при равенстве — добавленный позже
+    PriorityQueue<Integer> active = new PriorityQueue<>(
+        Comparator.<Integer>comparingLong(i -> from[i]).reversed().thenComparing(Comparator.reverseOrder())
+    );
+
+    long[] segStarts = new long[bounds.length];
+    BigDecimal[] segValues = new BigDecimal[bounds.length];
+    int segs = 0;
+    int next = 0;
+    int prevWinner = Integer.MIN_VALUE;
+
+    for (long point : bounds) {
+      while (next < n && from[byStart[next]] <= point) active.add(byStart[next++]);
+      while (!active.isEmpty() && toExclusive[active.peek()] <= point) active.poll();
+
+      int winner = active.isEmpty() ? -1 : active.peek();
+      if (winner == prevWinner) continue;
+      segStarts[segs] = point;
+      segValues[segs] = winner < 0 ? null : intervals.get(winner).value();
+      segs++;
+      prevWinner = winner;
+    }
+
+    return new PriceTimeline(Arrays.copyOf(segStarts, segs), Arrays.copyOf(segValues, segs));
+  }
+
+  /**
+   * Цена, действующая на дату, или {@code null}, если ни один интервал её не покрывает.
+   */
+  public BigDecimal at(LocalDate date) {
+    int i = Arrays.binarySearch(starts, date.toEpochDay());
+    if (i < 0) i = -i - 2;
+    return i < 0 ? null : values[i];
+  }
+
+  /**
+   * Даты, с которых цена может смениться: начала отрезков в {@code (from, to]}, по возрастанию (epoch day).
+   */
+  public long[] changes(LocalDate from, LocalDate to) {
+    int lo = Arrays.binarySearch(starts, from.toEpochDay() + 1);
+    if (lo < 0) lo = -lo - 1;
+    int hi = Arrays.binarySearch(starts, to.toEpochDay() + 1);
+    if (hi < 0) hi = -hi - 1;
+    return lo >= hi ? new long[0] : Arrays.copyOfRange(starts, lo, hi);
+  }
+}
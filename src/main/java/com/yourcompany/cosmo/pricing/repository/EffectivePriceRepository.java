@@ -0,0 +1,161 @@
+package com.yourcompany.cosmo.pricing.repository;
+
+import com.yourcompany.cosmo.config.HotPathMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Таблица действующих цен сырья effective_raw_price — материализация представления effective_raw_price_live
+ * (цена дефолтного offer'а, а где её нет — ручная цена, по непересекающимся интервалам дат).
+ * <p>
+ * Таблица обновляется точечно: по сырью, которого касается изменение, в той же транзакции,
+ * что и само изменение цены, offer'а или дефолтного offer'а. Читает её только {@code SqlPriceResolver}, поэтому
+ * при включённом in-memory индексе цен ({@code cosmo.pricing.index.enabled}, по умолчанию) точечные обновления
+ * не выполняются; при переключении на {@code SqlPriceResolver} таблица сверяется с представлением при старте.
+ * </p>
+ */
+@Repository
+public class EffectivePriceRepository {
+
+  /**
+   * Расхождение таблицы с представлением по интервалу сырья; {@code null} с одной из сторон — интервала нет.
+   */
+  public record Mismatch(
+      UUID rawMaterialId,
+      String validity,
+      UUID expectedOfferId,
+      BigDecimal expectedPricePerGram,
+      UUID actualOfferId,
+      BigDecimal actualPricePerGram
+  ) {}
+
+  /**
+   * Вывод представления effective_raw_price_live для заданного сырья. Представление не годится: offer_seg в нём
+   * используется дважды, Postgres материализует его целиком и range_agg считается по всему сырью, а не по :ids.
+   * Здесь фильтр стоит в обеих ветках; расхождение с представлением найдёт {@link #findMismatches}.
+   */
+  private static final String REFRESH = """
+      INSERT INTO effective_raw_price
+      WITH offer_seg AS (
+        SELECT d.raw_material_id, p.validity, d.supplier_material_id,
+               p.price_per_package / sm.package_size AS price_per_gram,
+               p.price_per_package, sm.package_size
+        FROM raw_material_default_offer d
+        JOIN supplier_material sm ON sm.id = d.supplier_material_id AND sm.package_size <> 0
+        JOIN supplier_material_price p ON p.supplier_material_id = d.supplier_material_id
+        WHERE d.raw_material_id = ANY(:ids)
+      ),
+      covered AS (
+        SELECT raw_material_id, range_agg(validity) AS ranges
+        FROM offer_seg
+        GROUP BY raw_material_id
+      )
+      SELECT raw_material_id, validity, supplier_material_id, price_per_gram,
+             'DEFAULT_OFFER', price_per_package, package_size
+      FROM offer_seg
+      UNION ALL
+      SELECT m.raw_material_id, r.validity, NULL::uuid, m.price_per_gram,
+             'MANUAL', NULL::numeric, NULL::numeric
+      FROM raw_material_manual_price m
+      LEFT JOIN covered c ON c.raw_material_id = m.raw_material_id
+      CROSS JOIN LATERAL unnest(datemultirange(m.validity) - COALESCE(c.ranges, '{}'::datemultirange)) AS r(validity)
+      WHERE m.raw_material_id = ANY(:ids)
+      """;
+
+  private final DatabaseClient db;
+  private final HotPathMetrics metrics;
+  private final boolean maintained;
+
+  public EffectivePriceRepository(DatabaseClient db, HotPathMetrics metrics,
+                                  @Value("${cosmo.pricing.index.enabled:true}") boolean priceIndexEnabled) {
+    this.db = db;
+    this.metrics = metrics;
+    this.maintained = !priceIndexEnabled;
+  }
+
+  /**
+   * Пересчитать действующие цены сырья после изменения. Должно выполняться в транзакции изменения;
+   * при включённом in-memory индексе цен ничего не делает.
+   */
+  public Mono<Void> refreshRawMaterials(Collection<UUID> rawMaterialIds) {
+    return maintained ? repairRawMaterials(rawMaterialIds) : Mono.empty();
+  }
+
+  /**
+   * Пересчитать действующие цены сырья независимо от режима разрешения цен (исправление расхождений).
+   */
+  public Mono<Void> repairRawMaterials(Collection<UUID> rawMaterialIds) {
+    if (rawMaterialIds.isEmpty()) return Mono.empty();
+    UUID[] ids = rawMaterialIds.toArray(new UUID[0]);
+
+    // блокировка строк сырья упорядочивает параллельные пересчёты одного сырья
+    Mono<Void> lock = metrics.sql("effective_price.lock", db.sql("SELECT id FROM raw_material WHERE id = ANY(:ids) ORDER BY id FOR UPDATE")
+        .bind("ids", ids)
+        .then());
+    Mono<Void> delete = metrics.sql("effective_price.delete",
+        db.sql("DELETE FROM effective_raw_price WHERE raw_material_id = ANY(:ids)")
+            .bind("ids", ids)
+            .then());
+    Mono<Void> insert = metrics.sql("effective_price.insert", db.sql(REFRESH)
+        .bind("ids", ids)
+        .then());
+
+    return lock.then(delete).then(insert);
+  }
+
+  /**
+   * Пересчитать действующие цены сырья, для которого offers дефолтные (изменились их цены или фасовка).
+   */
+  public Mono<Void> refreshOffers(Collection<UUID> offerIds) {
+    if (!maintained || offerIds.isEmpty()) return Mono.empty();
+
+    return metrics.sql("effective_price.find_raw_by_offer",
+            db.sql("SELECT raw_material_id FROM raw_material_default_offer WHERE supplier_material_id = ANY(:ids)")
+                .bind("ids", offerIds.toArray(new UUID[0]))
+                .map((row, meta) -> row.get("raw_material_id", UUID.class))
+                .all())
+        .collectList()
+        .flatMap(this::refreshRawMaterials);
+  }
+
+  /**
+   * Сравнить таблицу с представлением.
+   */
+  public Flux<Mismatch> findMismatches() {
+    return db.sql("""
+            SELECT COALESCE(l.raw_material_id, e.raw_material_id) AS raw_material_id,
+                   COALESCE(l.validity, e.validity)::text AS validity,
+                   l.supplier_material_id AS expected_offer_id, l.price_per_gram AS expected_price_per_gram,
+                   e.supplier_material_id AS actual_offer_id, e.price_per_gram AS actual_price_per_gram
+            FROM effective_raw_price_live l
+            FULL JOIN effective_raw_price e ON e.raw_material_id = l.raw_material_id AND e.validity = l.validity
+            WHERE l.raw_material_id IS NULL OR e.raw_material_id IS NULL
+               OR l.supplier_material_id IS DISTINCT FROM e.supplier_material_id
+               OR l.price_per_gram IS DISTINCT FROM e.price_per_gram
+               OR l.price_source IS DISTINCT FROM e.price_source
+               OR l.price_per_package IS DISTINCT FROM e.price_per_package
+               OR l.package_size IS DISTINCT FROM e.package_size
+            ORDER BY 1, 2
+            """)
+        .map((row, meta) -> new Mismatch(
+            row.get("raw_material_id", UUID.class),
+            row.get("validity", String.class),
+            row.get("expected_offer_id", UUID.class),
+            decimal(row.get("expected_price_per_gram")),
+            row.get("actual_offer_id", UUID.class),
+            decimal(row.get("actual_price_per_gram"))
+        ))
+        .all();
+  }
+
+  private static BigDecimal decimal(Object value) {
+    return value == null ? null : new BigDecimal(value.toString());
+  }
+}
@@ -0,0 +1,155 @@
+package com.yourcompany.cosmo.pricing.repository;
+
+import com.yourcompany.cosmo.config.HotPathMetrics;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Добавление цен в истории с непересекающимися интервалами действия
+ * (supplier_material_price и raw_material_manual_price, exclusion-констрейнт по {@code validity}).
+ * <p>
+ * Новая цена ложится поверх той, что действовала на её {@code valid_from}: от прежней остаются
+ * «голова» до дня перед новой ценой и «хвост» после её {@code valid_to} (отдельной строкой с той же ценой);
+ * цена, начинавшаяся в тот же день, заменяется. Бессрочная новая цена заканчивается днём перед следующей
+ * уже известной ценой. Цена, которая пересеклась бы с ценами, начинающимися позже неё, не добавляется.
+ * </p>
+ * Оба запроса {@link #add} должны выполняться в одной транзакции.
+ */
+@Repository
+public class PriceHistoryRepository {
+
+  /**
+   * Таблица истории цен: ключ (offer или сырьё) и колонка цены.
+   */
+  public enum History {
+    OFFER("supplier_material_price", "supplier_material_id", "price_per_package"),
+    MANUAL("raw_material_manual_price", "raw_material_id", "price_per_gram");
+
+    final String table;
+    final String keyColumn;
+    final String valueColumn;
+
+    History(String table, String keyColumn, String valueColumn) {
+      this.table = table;
+      this.keyColumn = keyColumn;
+      this.valueColumn = valueColumn;
+    }
+  }
+
+  /**
+   * Новая цена. Цены одного ключа в одном вызове не должны пересекаться между собой.
+   *
+   * @param validTo {@code null} — до следующей известной цены (или бессрочно)
+   */
+  public record NewPrice(UUID id, UUID key, BigDecimal value, String currency, LocalDate validFrom, LocalDate validTo) {}
+
+  /**
+   * Цены, которые можно добавить: бессрочные обрезаны до следующей цены, пересекающиеся с более поздними отброшены.
+   * Цены, начинающиеся не позже новой, не проверяются — ту из них, что действует на valid_from, делит {@link #SPLIT}.
+   */
+  private static final String ACCEPTED = """
+      WITH n AS (
+        SELECT * FROM unnest(:ids, :keys, :values, :currencies, :validFrom, :validTo)
+          AS n(id, key, value, currency, valid_from, valid_to)
+      ),
+      c AS (
+        SELECT n.id, n.key, n.value, n.currency, n.valid_from,
+               COALESCE(n.valid_to, (SELECT min(q.valid_from) - 1 FROM %1$s q
+                                     WHERE q.%2$s = n.key AND q.valid_from > n.valid_from)) AS valid_to
+        FROM n
+      ),
+      accepted AS (
+        SELECT c.* FROM c
+        WHERE NOT EXISTS (
+          SELECT 1 FROM %1$s q
+          WHERE q.%2$s = c.key
+            AND q.valid_from > c.valid_from
+            AND q.validity && daterange(c.valid_from, c.valid_to, '[]'))
+      )
+      """;
+
+  /**
+   * Делит цены, на которые ложатся новые: оставшиеся куски ({@code pieces}) — промежутки между новыми ценами
+   * внутри прежнего интервала. Первый кусок остаётся за исходной строкой, остальные вставляются копиями;
+   * строка без кусков (новая цена с того же дня закрывает её целиком) удаляется.
+   * Копии вставляются после сужения исходной строки (join с {@code kept}), иначе их отверг бы exclusion-констрейнт.
+   */
+  private static final String SPLIT = """
+      , hit AS (
+        SELECT p.id, p.valid_from, p.valid_to, a.valid_from AS a_from, a.valid_to AS a_to
+        FROM %1$s p JOIN accepted a ON p.%2$s = a.key AND p.validity && daterange(a.valid_from, a.valid_to, '[]')
+      ),
+      starts AS (
+        SELECT id, valid_from, valid_to FROM hit
+        UNION
+        SELECT id, a_to + 1, valid_to FROM hit WHERE a_to IS NOT NULL AND (valid_to IS NULL OR a_to < valid_to)
+      ),
+      pieces AS (
+        SELECT s.id, s.valid_from, COALESCE(min(h.a_from) - 1, s.valid_to) AS valid_to,
+               row_number() OVER (PARTITION BY s.id ORDER BY s.valid_from) AS n
+        FROM starts s LEFT JOIN hit h ON h.id = s.id AND h.a_from >= s.valid_from
+        GROUP BY s.id, s.valid_from, s.valid_to
+        HAVING min(h.a_from) IS NULL OR min(h.a_from) > s.valid_from
+      ),
+      gone AS (
+        DELETE FROM %1$s p WHERE p.id IN (SELECT id FROM hit) AND p.id NOT IN (SELECT id FROM pieces)
+      ),
+      kept AS (
+        UPDATE %1$s p SET valid_from = s.valid_from, valid_to = s.valid_to
+        FROM pieces s WHERE s.id = p.id AND s.n = 1
+        RETURNING p.id
+      )
+      INSERT INTO %1$s(id, %2$s, %3$s, currency, valid_from, valid_to, created_at)
+      SELECT gen_random_uuid(), p.%2$s, p.%3$s, p.currency, s.valid_from, s.valid_to, p.created_at
+      FROM pieces s JOIN kept k ON k.id = s.id JOIN %1$s p ON p.id = s.id
+      WHERE s.n > 1
+      """;
+
+  private final DatabaseClient db;
+  private final HotPathMetrics metrics;
+
+  public PriceHistoryRepository(DatabaseClient db, HotPathMetrics metrics) {
+    this.db = db;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Добавляет цены, деля или заменяя те, на которые они ложатся.
+   *
+   * @return id добавленных цен; отсутствующие в результате не добавлены из-за пересечения
+   */
+  public Flux<UUID> add(History history, List<NewPrice> prices) {
+    if (prices.isEmpty()) return Flux.empty();
+
+    String accepted = ACCEPTED.formatted(history.table, history.keyColumn);
+
+    // куски поделённых цен не пересекаются с новыми, поэтому набор accepted для вставки тот же
+    var split = bind(db.sql(accepted + SPLIT.formatted(history.table, history.keyColumn, history.valueColumn)), prices);
+
+    var insert = bind(db.sql(accepted + """
+        INSERT INTO %1$s(id, %2$s, %3$s, currency, valid_from, valid_to, created_at)
+        SELECT id, key, value, currency, valid_from, valid_to, now() FROM accepted
+        RETURNING id
+        """.formatted(history.table, history.keyColumn, history.valueColumn)), prices);
+
+    String statement = "price_history." + history.name().toLowerCase();
+    return metrics.sql(statement + ".split", split.then())
+        .thenMany(metrics.sql(statement + ".insert", insert.map((row, meta) -> row.get("id", UUID.class)).all()));
+  }
+
+  private static DatabaseClient.GenericExecuteSpec bind(DatabaseClient.GenericExecuteSpec spec, List<NewPrice> prices) {
+    return spec
+        .bind("ids", prices.stream().map(NewPrice::id).toArray(UUID[]::new))
+        .bind("keys", prices.stream().map(NewPrice::key).toArray(UUID[]::new))
+        .bind("values", prices.stream().map(NewPrice::value).toArray(BigDecimal[]::new))
+        .bind("currencies", prices.stream().map(NewPrice::currency).toArray(String[]::new))
+        .bind("validFrom", prices.stream().map(NewPrice::validFrom).toArray(LocalDate[]::new))
+        .bind("validTo", prices.stream().map(NewPrice::validTo).toArray(LocalDate[]::new));
+  }
+}
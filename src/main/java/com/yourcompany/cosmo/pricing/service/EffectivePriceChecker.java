@@ -0,0 +1,53 @@
+package com.yourcompany.cosmo.pricing.service;
+
+import com.yourcompany.cosmo.pricing.repository.EffectivePriceRepository;
+import com.yourcompany.cosmo.pricing.repository.EffectivePriceRepository.Mismatch;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Проверка таблицы действующих цен effective_raw_price против вывода из исходных таблиц.
+ * Расхождения означают пропущенное точечное обновление; исправляются пересчётом затронутого сырья.
+ */
+@Service
+public class EffectivePriceChecker {
+
+  /**
+   * Результат проверки.
+   *
+   * @param repairedRawMaterials сырьё, цены которого пересчитаны (пусто, если исправление не запрашивалось)
+   */
+  public record Report(List<Mismatch> mismatches, Set<UUID> repairedRawMaterials) {}
+
+  private final EffectivePriceRepository repo;
+  private final TransactionalOperator tx;
+
+  public EffectivePriceChecker(EffectivePriceRepository repo, TransactionalOperator tx) {
+    this.repo = repo;
+    this.tx = tx;
+  }
+
+  /**
+   * Найти расхождения.
+   *
+   * @param repair пересчитать сырьё с расхождениями
+   */
+  public Mono<Report> check(boolean repair) {
+    return repo.findMismatches()
+        .collectList()
+        .flatMap(mismatches -> {
+          if (!repair || mismatches.isEmpty()) return Mono.just(new Report(mismatches, Set.of()));
+
+          Set<UUID> rawIds = new LinkedHashSet<>();
+          for (var m : mismatches) rawIds.add(m.rawMaterialId());
+          return tx.transactional(repo.repairRawMaterials(rawIds))
+              .thenReturn(new Report(mismatches, rawIds));
+        });
+  }
+}
@@ -0,0 +1,326 @@
+package com.yourcompany.cosmo.pricing.service;
+
+import com.yourcompany.cosmo.pricing.domain.PriceTimeline;
+import io.r2dbc.spi.Row;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * In-memory индекс действующих цен.
+ * <p>
+ * Держит в памяти фасовки offers, интервалы цен offers и ручных цен сырья (в виде {@link PriceTimeline})
+ * и дефолтные offers, поэтому разрешение цены на дату не обращается к Postgres и стоит O(log n).
+ * </p>
+ * <p>
+ * Индекс загружается целиком при старте (до приёма запросов), точечно обновляется сервисами,
+ * которые пишут цены/offers, и периодически перечитывается целиком — чтобы подхватить изменения,
+ * сделанные другими экземплярами приложения.
+ * </p>
+ */
+@Service
+@ConditionalOnProperty(name = "cosmo.pricing.index.enabled", havingValue = "true", matchIfMissing = true)
+@DependsOnDatabaseInitialization
+public class InMemoryPriceResolver implements PriceResolver, InitializingBean, DisposableBean {
+
+  private static final Logger log = LoggerFactory.getLogger(InMemoryPriceResolver.class);
+
+  private record Offer(UUID rawMaterialId, BigDecimal packageSize, PriceTimeline prices) {}
+
+  private record State(
+      Map<UUID, Offer> offers,
+      Map<UUID, PriceTimeline> manualPrices,
+      Map<UUID, UUID> defaultOffers
+  ) {
+    static State empty() {
+      return new State(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+    }
+  }
+
+  private record OfferRow(UUID offerId, UUID rawId, BigDecimal packageSize) {}
+
+  private record IntervalRow(UUID key, PriceTimeline.Interval interval) {}
+
+  private final DatabaseClient db;
+  private final Duration refreshInterval;
+  private final Duration loadTimeout;
+
+  private volatile State state = State.empty();
+  private final AtomicBoolean reloading = new AtomicBoolean();
+  private final Queue<Supplier<Mono<Void>>> replayAfterReload = new ConcurrentLinkedQueue<>();
+  private Disposable refreshTask;
+
+  public InMemoryPriceResolver(
+      DatabaseClient db,
+      @Value("${cosmo.pricing.index.refresh-interval:PT5M}") Duration refreshInterval,
+      @Value("${cosmo.pricing.index.load-timeout:PT2M}") Duration loadTimeout
+  ) {
+    this.db = db;
+    this.refreshInterval = refreshInterval;
+    this.loadTimeout = loadTimeout;
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    reloadAll().block(loadTimeout);
+    refreshTask = Flux.interval(refreshInterval, refreshInterval)
+        .onBackpressureDrop()
+        .concatMap(tick -> reloadAll()
+            .onErrorResume(e -> {
+              log.warn("Price index refresh failed", e);
+              return Mono.empty();
+            }))
+        .subscribe();
+  }
+
+  @Override
+  public void destroy() {
+    if (refreshTask != null) refreshTask.dispose();
+  }
+
+  @Override
+  public Mono<Map<PriceKey, ResolvedPrice>> resolve(Collection<PriceKey> keys) {
+    return Mono.fromSupplier(() -> {
+      State s = state;
+      Map<PriceKey, ResolvedPrice> out = new HashMap<>();
+      for (PriceKey key : keys) {
+        out.computeIfAbsent(key, k -> resolve(s, k.rawMaterialId(), k.overrideOfferId(), k.date()));
+      }
+      return out;
+    });
+  }
+
+  private static ResolvedPrice resolve(State s, UUID rawId, UUID overrideOfferId, LocalDate date) {
+    return timeline(s, rawId, overrideOfferId).at(date);
+  }
+
+  @Override
+  public Mono<Map<UUID, RawPriceTimeline>> timelines(Collection<UUID> rawMaterialIds, Map<UUID, UUID> overrideOfferByRaw) {
+    return Mono.fromSupplier(() -> {
+      State s = state;
+      Map<UUID, RawPriceTimeline> out = new HashMap<>();
+      for (UUID rawId : rawMaterialIds) out.put(rawId, timeline(s, rawId, overrideOfferByRaw.get(rawId)));
+      return out;
+    });
+  }
+
+  private static RawPriceTimeline timeline(State s, UUID rawId, UUID overrideOfferId) {
+    UUID offerId = overrideOfferId != null ? overrideOfferId : s.defaultOffers().get(rawId);
+    Offer offer = offerId == null ? null : s.offers().get(offerId);
+    return new RawPriceTimeline(
+        rawId,
+        offerId,
+        overrideOfferId != null,
+        offer == null ? null : offer.packageSize(),
+        offer == null ? PriceTimeline.EMPTY : offer.prices(),
+        s.manualPrices().getOrDefault(rawId, PriceTimeline.EMPTY)
+    );
+  }
+
+  // ---------------------------------------------------------------------------------------------
+  // Точечные обновления
+
+  @Override
+  public Mono<Void> offerChanged(UUID offerId) {
+    return track(() -> reloadOffers(List.of(offerId)));
+  }
+
+  @Override
+  public Mono<Void> offersChanged(Collection<UUID> offerIds) {
+    if (offerIds.isEmpty()) return Mono.empty();
+    List<UUID> ids = List.copyOf(offerIds);
+    return track(() -> reloadOffers(ids));
+  }
+
+  @Override
+  public Mono<Void> manualPricesChanged(UUID rawMaterialId) {
+    return track(() -> reloadManualPrices(rawMaterialId));
+  }
+
+  @Override
+  public Mono<Void> defaultOfferChanged(UUID rawMaterialId) {
+    return track(() -> reloadDefaultOffer(rawMaterialId));
+  }
+
+  /**
+   * Выполняет точечное обновление; если в этот момент идёт полная перезагрузка,
+   * повторяет его после подмены состояния, чтобы изменение не потерялось.
+   */
+  private Mono<Void> track(Supplier<Mono<Void>> update) {
+    return Mono.defer(() -> {
+      if (reloading.get()) replayAfterReload.add(update);
+      return update.get();
+    });
+  }
+
+  private Mono<Void> reloadOffers(Collection<UUID> offerIds) {
+    UUID[] ids = offerIds.toArray(new UUID[0]);
+
+    Mono<List<OfferRow>> offersMono = db.sql("SELECT id, raw_material_id, package_size FROM supplier_material WHERE id = ANY(:ids)")
+        .bind("ids", ids)
+        .map((row, meta) -> toOfferRow(row))
+        .all()
+        .collectList();
+
+    Mono<Map<UUID, List<PriceTimeline.Interval>>> pricesMono = db.sql("""
+            SELECT supplier_material_id AS key, price_per_package AS value, valid_from, valid_to
+            FROM supplier_material_price
+            WHERE supplier_material_id = ANY(:ids)
+            ORDER BY supplier_material_id, valid_from, created_at
+            """)
+        .bind("ids", ids)
+        .map((row, meta) -> toIntervalRow(row))
+        .all()
+        .collect(HashMap::new, (m, r) -> m.computeIfAbsent(r.key(), k -> new ArrayList<>()).add(r.interval()));
+
+    return Mono.zip(offersMono, pricesMono)
+        .doOnNext(t -> {
+          Map<UUID, Offer> offers = state.offers();
+          Set<UUID> found = new HashSet<>();
+          for (var o : t.getT1()) {
+            found.add(o.offerId());
+            var intervals = t.getT2().getOrDefault(o.offerId(), List.of());
+            offers.put(o.offerId(), new Offer(o.rawId(), o.packageSize(), PriceTimeline.of(intervals)));
+          }
+          for (UUID id : ids) {
+            if (!found.contains(id)) offers.remove(id);
+          }
+        })
+        .then();
+  }
+
+  private Mono<Void> reloadManualPrices(UUID rawMaterialId) {
+    return db.sql("""
+            SELECT raw_material_id AS key, price_per_gram AS value, valid_from, valid_to
+            FROM raw_material_manual_price
+            WHERE raw_material_id = :id
+            ORDER BY valid_from, created_at
+            """)
+        .bind("id", rawMaterialId)
+        .map((row, meta) -> toIntervalRow(row).interval())
+        .all()
+        .collectList()
+        .doOnNext(intervals -> state.manualPrices().put(rawMaterialId, PriceTimeline.of(intervals)))
+        .then();
+  }
+
+  private Mono<Void> reloadDefaultOffer(UUID rawMaterialId) {
+    return db.sql("SELECT supplier_material_id FROM raw_material_default_offer WHERE raw_material_id = :id")
+        .bind("id", rawMaterialId)
+        .map((row, meta) -> Optional.ofNullable(row.get("supplier_material_id", UUID.class)))
+        .one()
+        .defaultIfEmpty(Optional.empty())
+        .doOnNext(offerId -> offerId.ifPresentOrElse(
+            id -> state.defaultOffers().put(rawMaterialId, id),
+            () -> state.defaultOffers().remove(rawMaterialId)
+        ))
+        .then();
+  }
+
+  // ---------------------------------------------------------------------------------------------
+  // Полная загрузка
+
+  private Mono<Void> reloadAll() {
+    return Mono.defer(() -> {
+      if (!reloading.compareAndSet(false, true)) return Mono.empty();
+
+      long started = System.nanoTime();
+
+      Mono<List<OfferRow>> offersMono = db.sql("SELECT id, raw_material_id, package_size FROM supplier_material")
+          .map((row, meta) -> toOfferRow(row))
+          .all()
+          .collectList();
+
+      Mono<Map<UUID, List<PriceTimeline.Interval>>> offerPricesMono = loadIntervals("""
+          SELECT supplier_material_id AS key, price_per_package AS value, valid_from, valid_to
+          FROM supplier_material_price
+          ORDER BY supplier_material_id, valid_from, created_at
+          """);
+
+      Mono<Map<UUID, List<PriceTimeline.Interval>>> manualPricesMono = loadIntervals("""
+          SELECT raw_material_id AS key, price_per_gram AS value, valid_from, valid_to
+          FROM raw_material_manual_price
+          ORDER BY raw_material_id, valid_from, created_at
+          """);
+
+      Mono<Map<UUID, UUID>> defaultsMono = db.sql("SELECT raw_material_id, supplier_material_id FROM raw_material_default_offer")
+          .map((row, meta) -> Map.entry(
+              row.get("raw_material_id", UUID.class),
+              row.get("supplier_material_id", UUID.class)
+          ))
+          .all()
+          .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+
+      return Mono.zip(offersMono, offerPricesMono, manualPricesMono, defaultsMono)
+          .map(t -> {
+            State s = State.empty();
+            for (var o : t.getT1()) {
+              var intervals = t.getT2().getOrDefault(o.offerId(), List.of());
+              s.offers().put(o.offerId(), new Offer(o.rawId(), o.packageSize(), PriceTimeline.of(intervals)));
+            }
+            t.getT3().forEach((rawId, intervals) -> s.manualPrices().put(rawId, PriceTimeline.of(intervals)));
+            s.defaultOffers().putAll(t.getT4());
+            return s;
+          })
+          .doOnNext(s -> {
+            state = s;
+            reloading.set(false);
+            log.info("Price index loaded: {} offers, {} raw materials with manual prices, {} default offers in {} ms",
+                s.offers().size(), s.manualPrices().size(), s.defaultOffers().size(),
+                Duration.ofNanos(System.nanoTime() - started).toMillis());
+          })
+          .doOnError(e -> reloading.set(false))
+          .then(Flux.defer(() -> {
+                List<Supplier<Mono<Void>>> replay = new ArrayList<>();
+                for (Supplier<Mono<Void>> u; (u = replayAfterReload.poll()) != null; ) replay.add(u);
+                return Flux.fromIterable(replay);
+              })
+              .concatMap(Supplier::get)
+              .then());
+    });
+  }
+
+  private Mono<Map<UUID, List<PriceTimeline.Interval>>> loadIntervals(String sql) {
+    return db.sql(sql)
+        .map((row, meta) -> toIntervalRow(row))
+        .all()
+        .collect(HashMap::new, (m, r) -> m.computeIfAbsent(r.key(), k -> new ArrayList<>()).add(r.interval()));
+  }
+
+  private static OfferRow toOfferRow(Row row) {
+    return new OfferRow(
+        row.get("id", UUID.class),
+        row.get("raw_material_id", UUID.class),
+        new BigDecimal(Objects.requireNonNull(row.get("package_size")).toString())
+    );
+  }
+
+  private static IntervalRow toIntervalRow(Row row) {
+    return new IntervalRow(
+        row.get("key", UUID.class),
+        new PriceTimeline.Interval(
+            row.get("valid_from", LocalDate.class),
+            row.get("valid_to", LocalDate.class),
+            new BigDecimal(Objects.requireNonNull(row.get("value")).toString())
+        )
+    );
+  }
+}
@@ -0,0 +1,102 @@
+package com.yourcompany.cosmo.pricing.service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Разрешение цены сырья за грамм на дату.
+ * <p>
+ * Приоритет источников цены:
+ * <ol>
+ *   <li>offer, выбранный для партии (override),</li>
+ *   <li>дефолтный offer сырья,</li>
+ *   <li>ручная (fallback) цена сырья,</li>
+ *   <li>0.</li>
+ * </ol>
+ * Если у выбранного offer нет цены на дату, используется ручная цена (дефолтный offer при этом не рассматривается).
+ * </p>
+ */
+public interface PriceResolver {
+
+  enum Source { OVERRIDE, DEFAULT_OFFER, MANUAL, NONE }
+
+  /**
+   * Разрешённая цена сырья.
+   *
+   * @param offerId offer, по которому взята цена ({@code null} для MANUAL и NONE)
+   * @param pricePerPackage цена упаковки offer'а на дату ({@code null} для MANUAL и NONE)
+   * @param packageSize фасовка offer'а в граммах ({@code null} для MANUAL и NONE)
+   */
+  record ResolvedPrice(UUID rawMaterialId, BigDecimal pricePerGram, Source source, UUID offerId,
+                       BigDecimal pricePerPackage, BigDecimal packageSize) {
+
+    /** Цена без фасовки (ручная цена или её отсутствие). */
+    public ResolvedPrice(UUID rawMaterialId, BigDecimal pricePerGram, Source source, UUID offerId) {
+      this(rawMaterialId, pricePerGram, source, offerId, null, null);
+    }
+  }
+
+  /**
+   * Ключ разрешения цены: сырьё, offer, выбранный для партии ({@code null} — без override), и дата.
+   */
+  record PriceKey(UUID rawMaterialId, UUID overrideOfferId, LocalDate date) {}
+
+  /**
+   * Разрешить цены для набора ключей (одинаковые ключи разных партий разрешаются один раз).
+   *
+   * @return ключ → цена (для каждого запрошенного ключа)
+   */
+  Mono<Map<PriceKey, ResolvedPrice>> resolve(Collection<PriceKey> keys);
+
+  /**
+   * Разрешить цены набора сырья на дату.
+   *
+   * @param rawMaterialIds сырьё, для которого нужна цена
+   * @param overrideOfferByRaw выбор offer для партии: сырьё → offer
+   * @param date дата ценообразования
+   * @return сырьё → цена (для каждого запрошенного сырья)
+   */
+  default Mono<Map<UUID, ResolvedPrice>> resolve(Collection<UUID> rawMaterialIds, Map<UUID, UUID> overrideOfferByRaw,
+                                                 LocalDate date) {
+    Set<PriceKey> keys = new HashSet<>();
+    for (UUID rawId : rawMaterialIds) keys.add(new PriceKey(rawId, overrideOfferByRaw.get(rawId), date));
+    return resolve(keys).map(resolved -> {
+      Map<UUID, ResolvedPrice> byRaw = new HashMap<>();
+      resolved.forEach((key, price) -> byRaw.put(key.rawMaterialId(), price));
+      return byRaw;
+    });
+  }
+
+  /**
+   * Шкалы цен набора сырья во времени — для расчёта по диапазону дат без разрешения цены на каждую дату.
+   *
+   * @param rawMaterialIds сырьё, для которого нужна шкала
+   * @param overrideOfferByRaw выбор offer для партии: сырьё → offer
+   * @return сырьё → шкала (для каждого запрошенного сырья)
+   */
+  Mono<Map<UUID, RawPriceTimeline>> timelines(Collection<UUID> rawMaterialIds, Map<UUID, UUID> overrideOfferByRaw);
+
+  /** Изменился offer (фасовка) или его цены. */
+  default Mono<Void> offerChanged(UUID offerId) {
+    return Mono.empty();
+  }
+
+  /** Изменились offers или их цены (например, после импорта прайс-листа). */
+  default Mono<Void> offersChanged(Collection<UUID> offerIds) {
+    return Flux.fromIterable(offerIds).concatMap(this::offerChanged).then();
+  }
+
+  /** Изменились ручные цены сырья. */
+  default Mono<Void> manualPricesChanged(UUID rawMaterialId) {
+    return Mono.empty();
+  }
+
+  /** Изменился дефолтный offer сырья. */
+  default Mono<Void> defaultOfferChanged(UUID rawMaterialId) {
+    return Mono.empty();
+  }
+}
@@ -0,0 +1,67 @@
+package com.yourcompany.cosmo.pricing.service;
+
+import com.yourcompany.cosmo.pricing.domain.PgNumeric;
+import com.yourcompany.cosmo.pricing.domain.PriceTimeline;
+import com.yourcompany.cosmo.pricing.service.PriceResolver.ResolvedPrice;
+import com.yourcompany.cosmo.pricing.service.PriceResolver.Source;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Цена сырья за грамм во времени — по тем же правилам приоритета, что и {@link PriceResolver}:
+ * цена offer'а (override или дефолтного), а где её нет — ручная цена.
+ *
+ * @param offerId override партии или дефолтный offer сырья ({@code null} — только ручная цена)
+ * @param override {@code offerId} выбран для партии
+ * @param packageSize фасовка offer'а ({@code null}, если offer'а нет)
+ * @param offerPrices цены упаковки offer'а
+ * @param manualPrices ручные цены сырья за грамм
+ */
+public record RawPriceTimeline(UUID rawMaterialId, UUID offerId, boolean override, BigDecimal packageSize,
+                               PriceTimeline offerPrices, PriceTimeline manualPrices) {
+
+  /**
+   * Цена на дату (то же, что {@link PriceResolver#resolve} для ключа этого сырья).
+   */
+  public ResolvedPrice at(LocalDate date) {
+    if (offerId != null && packageSize != null && packageSize.signum() != 0) {
+      BigDecimal pricePerPackage = offerPrices.at(date);
+      if (pricePerPackage != null) {
+        return new ResolvedPrice(
+            rawMaterialId,
+            PgNumeric.divide(pricePerPackage, packageSize),
+            override ? Source.OVERRIDE : Source.DEFAULT_OFFER,
+            offerId,
+            pricePerPackage,
+            packageSize
+        );
+      }
+    }
+
+    BigDecimal manualPrice = manualPrices.at(date);
+    if (manualPrice != null) return new ResolvedPrice(rawMaterialId, manualPrice, Source.MANUAL, null);
+
+    return new ResolvedPrice(rawMaterialId, BigDecimal.ZERO, Source.NONE, null);
+  }
+
+  /**
+   * Даты в {@code (from, to]}, с которых цена может смениться, по возрастанию (epoch day).
+   */
+  public long[] changes(LocalDate from, LocalDate to) {
+    long[] a = offerPrices.changes(from, to);
+    long[] b = manualPrices.changes(from, to);
+    if (b.length == 0) return a;
+    if (a.length == 0) return b;
+
+    long[] out = new long[a.length + b.length];
+    int i = 0, j = 0, n = 0;
+    while (i < a.length || j < b.length) {
+      long next = j == b.length || (i < a.length && a[i] <= b[j]) ? a[i++] : b[j++];
+      if (n == 0 || out[n - 1] != next) out[n++] = next;
+    }
+    return Arrays.copyOf(out, n);
+  }
+}
@@ -0,0 +1,214 @@
+package com.yourcompany.cosmo.pricing.service;
+
+import com.yourcompany.cosmo.config.HotPathMetrics;
+import com.yourcompany.cosmo.pricing.domain.PriceTimeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Разрешение цен запросом в Postgres (по одному запросу на вызов).
+ * Без override партии цена берётся из таблицы действующих цен effective_raw_price, с override — из цен offer'а
+ * (и ручной цены, если у offer'а нет цены на дату). Интервалы цен не пересекаются, поэтому цена на дату —
+ * одна проверка {@code validity @> date} по GiST-индексу.
+ * Используется, если in-memory индекс цен выключен ({@code cosmo.pricing.index.enabled=false}).
+ * При включённом индексе effective_raw_price не обновляется, поэтому при старте таблица сверяется
+ * с представлением и расхождения исправляются.
+ */
+@Service
+@ConditionalOnProperty(name = "cosmo.pricing.index.enabled", havingValue = "false")
+@DependsOnDatabaseInitialization
+public class SqlPriceResolver implements PriceResolver, InitializingBean {
+
+  private static final Logger log = LoggerFactory.getLogger(SqlPriceResolver.class);
+
+  private final DatabaseClient db;
+  private final HotPathMetrics metrics;
+  private final EffectivePriceChecker checker;
+  private final Duration loadTimeout;
+
+  public SqlPriceResolver(
+      DatabaseClient db,
+      HotPathMetrics metrics,
+      EffectivePriceChecker checker,
+      @Value("${cosmo.pricing.index.load-timeout:PT2M}") Duration loadTimeout
+  ) {
+    this.db = db;
+    this.metrics = metrics;
+    this.checker = checker;
+    this.loadTimeout = loadTimeout;
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    var report = checker.check(true).block(loadTimeout);
+    if (report != null && !report.repairedRawMaterials().isEmpty()) {
+      log.info("Effective prices repaired for {} raw materials", report.repairedRawMaterials().size());
+    }
+  }
+
+  @Override
+  public Mono<Map<PriceKey, ResolvedPrice>> resolve(Collection<PriceKey> keys) {
+    if (keys.isEmpty()) return Mono.just(Map.of());
+
+    List<PriceKey> distinct = List.copyOf(new HashSet<>(keys));
+
+    return metrics.sql("prices.resolve", db.sql("""
+            WITH keys AS (
+              SELECT raw_id, override_id, pd
+              FROM unnest(:rawIds, :overrideIds, :dates) AS k(raw_id, override_id, pd)
+            ),
+            override_price AS (
+              SELECT k.raw_id, k.override_id, k.pd,
+                     smp.price_per_package, sm.package_size,
+                     (smp.price_per_package / NULLIF(sm.package_size, 0)) AS price_per_gram
+              FROM keys k
+              JOIN supplier_material sm ON sm.id = k.override_id
+              JOIN supplier_material_price smp
+                ON smp.supplier_material_id = k.override_id AND smp.validity @> k.pd
+            )
+            SELECT k.raw_id AS raw_id,
+                   k.override_id AS override_id,
+                   k.pd AS pd,
+                   op.price_per_gram AS override_price_per_gram,
+                   op.price_per_package AS override_price_per_package,
+                   op.package_size AS override_package_size,
+                   e.supplier_material_id AS effective_offer_id,
+                   e.price_per_gram AS effective_price_per_gram,
+                   e.price_source AS effective_source,
+                   e.price_per_package AS effective_price_per_package,
+                   e.package_size AS effective_package_size,
+                   mp.price_per_gram AS manual_price_per_gram
+            FROM keys k
+            LEFT JOIN override_price op
+              ON op.raw_id = k.raw_id AND op.override_id = k.override_id AND op.pd = k.pd
+            LEFT JOIN effective_raw_price e
+              ON k.override_id IS NULL AND e.raw_material_id = k.raw_id AND e.validity @> k.pd
+            LEFT JOIN raw_material_manual_price mp
+              ON k.override_id IS NOT NULL AND op.price_per_gram IS NULL
+             AND mp.raw_material_id = k.raw_id AND mp.validity @> k.pd
+            """)
+        .bind("rawIds", distinct.stream().map(PriceKey::rawMaterialId).toArray(UUID[]::new))
+        .bind("overrideIds", distinct.stream().map(PriceKey::overrideOfferId).toArray(UUID[]::new))
+        .bind("dates", distinct.stream().map(PriceKey::date).toArray(LocalDate[]::new))
+        .map((row, meta) -> {
+          UUID rawId = row.get("raw_id", UUID.class);
+          UUID overrideId = row.get("override_id", UUID.class);
+          var key = new PriceKey(rawId, overrideId, row.get("pd", LocalDate.class));
+          BigDecimal overridePrice = decimal(row.get("override_price_per_gram"));
+          BigDecimal effectivePrice = decimal(row.get("effective_price_per_gram"));
+          BigDecimal manualPrice = decimal(row.get("manual_price_per_gram"));
+
+          ResolvedPrice price;
+          if (overridePrice != null) {
+            price = new ResolvedPrice(rawId, overridePrice, Source.OVERRIDE, overrideId,
+                decimal(row.get("override_price_per_package")), decimal(row.get("override_package_size")));
+          } else if (effectivePrice != null) {
+            price = new ResolvedPrice(rawId, effectivePrice, Source.valueOf(row.get("effective_source", String.class)),
+                row.get("effective_offer_id", UUID.class),
+                decimal(row.get("effective_price_per_package")), decimal(row.get("effective_package_size")));
+          } else if (manualPrice != null) {
+            price = new ResolvedPrice(rawId, manualPrice, Source.MANUAL, null);
+          } else {
+            price = new ResolvedPrice(rawId, BigDecimal.ZERO, Source.NONE, null);
+          }
+          return Map.entry(key, price);
+        })
+        .all())
+        .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+  }
+
+  @Override
+  public Mono<Map<UUID, RawPriceTimeline>> timelines(Collection<UUID> rawMaterialIds, Map<UUID, UUID> overrideOfferByRaw) {
+    if (rawMaterialIds.isEmpty()) return Mono.just(Map.of());
+    UUID[] rawIds = rawMaterialIds.toArray(new UUID[0]);
+
+    Mono<Map<UUID, UUID>> defaultsMono = metrics.sql("prices.default_offers", db.sql("""
+            SELECT raw_material_id, supplier_material_id
+            FROM raw_material_default_offer
+            WHERE raw_material_id = ANY(:ids)
+            """)
+        .bind("ids", rawIds)
+        .map((row, meta) -> Map.entry(row.get("raw_material_id", UUID.class), row.get("supplier_material_id", UUID.class)))
+        .all())
+        .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+
+    Mono<Map<UUID, List<PriceTimeline.Interval>>> manualMono = intervals("prices.manual_intervals", """
+        SELECT raw_material_id AS key, price_per_gram AS value, valid_from, valid_to
+        FROM raw_material_manual_price
+        WHERE raw_material_id = ANY(:ids)
+        ORDER BY raw_material_id, valid_from, created_at
+        """, rawIds);
+
+    return Mono.zip(defaultsMono, manualMono).flatMap(t -> {
+      Map<UUID, UUID> offerByRaw = new HashMap<>();
+      for (UUID rawId : rawMaterialIds) {
+        UUID offerId = overrideOfferByRaw.get(rawId) != null ? overrideOfferByRaw.get(rawId) : t.getT1().get(rawId);
+        if (offerId != null) offerByRaw.put(rawId, offerId);
+      }
+      UUID[] offerIds = offerByRaw.values().stream().distinct().toArray(UUID[]::new);
+
+      Mono<Map<UUID, BigDecimal>> packagesMono = offerIds.length == 0 ? Mono.just(Map.of())
+          : metrics.sql("prices.offer_packages", db.sql("SELECT id, package_size FROM supplier_material WHERE id = ANY(:ids)")
+              .bind("ids", offerIds)
+              .map((row, meta) -> Map.entry(row.get("id", UUID.class), decimal(row.get("package_size"))))
+              .all())
+          .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+
+      Mono<Map<UUID, List<PriceTimeline.Interval>>> offerPricesMono = offerIds.length == 0 ? Mono.just(Map.of())
+          : intervals("prices.offer_intervals", """
+              SELECT supplier_material_id AS key, price_per_package AS value, valid_from, valid_to
+              FROM supplier_material_price
+              WHERE supplier_material_id = ANY(:ids)
+              ORDER BY supplier_material_id, valid_from, created_at
+              """, offerIds);
+
+      return Mono.zip(packagesMono, offerPricesMono).map(o -> {
+        Map<UUID, PriceTimeline> offerPrices = new HashMap<>();
+        o.getT2().forEach((offerId, list) -> offerPrices.put(offerId, PriceTimeline.of(list)));
+
+        Map<UUID, RawPriceTimeline> out = new HashMap<>();
+        for (UUID rawId : rawMaterialIds) {
+          UUID offerId = offerByRaw.get(rawId);
+          var manual = t.getT2().get(rawId);
+          out.put(rawId, new RawPriceTimeline(
+              rawId,
+              offerId,
+              overrideOfferByRaw.get(rawId) != null,
+              offerId == null ? null : o.getT1().get(offerId),
+              offerId == null ? PriceTimeline.EMPTY : offerPrices.getOrDefault(offerId, PriceTimeline.EMPTY),
+              manual == null ? PriceTimeline.EMPTY : PriceTimeline.of(manual)
+          ));
+        }
+        return out;
+      });
+    });
+  }
+
+  private Mono<Map<UUID, List<PriceTimeline.Interval>>> intervals(String statement, String sql, UUID[] ids) {
+    return metrics.sql(statement, db.sql(sql)
+        .bind("ids", ids)
+        .map((row, meta) -> Map.entry(row.get("key", UUID.class), new PriceTimeline.Interval(
+            row.get("valid_from", LocalDate.class),
+            row.get("valid_to", LocalDate.class),
+            decimal(row.get("value"))
+        )))
+        .all())
+        .collect(HashMap::new, (m, e) -> m.computeIfAbsent(e.getKey(), k -> new ArrayList<>()).add(e.getValue()));
+  }
+
+  private static BigDecimal decimal(Object value) {
+    return value == null ? null : new BigDecimal(value.toString());
+  }
+}
@@ -1,22 +1,29 @@
 package com.yourcompany.cosmo.products.api;
 
 import com.yourcompany.cosmo.products.service.ProductService;
+import com.yourcompany.cosmo.products.service.ProductUnitCostService;
 import com.yourcompany.cosmo.products.repository.ProductEntity;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.LocalDate;
 import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/products")
 public class ProductController {
   private final ProductService service;
+  private final ProductUnitCostService unitCosts;
 
-  public ProductController(ProductService service) {
+  public ProductController(ProductService service, ProductUnitCostService unitCosts) {
     this.service = service;
+    this.unitCosts = unitCosts;
   }
 
   public record CreateProductRequest(
@@ -29,4 +36,14 @@ public class ProductController {
   public Mono<ProductEntity> create(@RequestBody @Valid CreateProductRequest req) {
     return service.create(req.name(), req.sku(), req.recipeId());
   }
+
+  /**
+   * Себестоимость материалов на единицу каждого активного продукта на дату (NDJSON, строка на продукт).
+   */
+  @GetMapping(value = "/unit-costs", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public Flux<ProductUnitCostService.UnitCost> unitCosts(
+      @RequestParam(name = "date", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date
+  ) {
+    return unitCosts.unitCosts(date);
+  }
 }
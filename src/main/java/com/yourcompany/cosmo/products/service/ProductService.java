@@ -1,5 +1,6 @@
 package com.yourcompany.cosmo.products.service;
 
+import com.yourcompany.cosmo.batches.service.TemplateBomCache;
 import com.yourcompany.cosmo.products.repository.ProductEntity;
 import com.yourcompany.cosmo.products.repository.ProductRepository;
 import org.springframework.stereotype.Service;
@@ -11,13 +12,15 @@ import java.util.UUID;
 @Service
 public class ProductService {
   private final ProductRepository repo;
+  private final TemplateBomCache boms;
 
-  public ProductService(ProductRepository repo) {
+  public ProductService(ProductRepository repo, TemplateBomCache boms) {
     this.repo = repo;
+    this.boms = boms;
   }
 
   public Mono<ProductEntity> create(String name, String sku, UUID recipeId) {
     var entity = new ProductEntity(UUID.randomUUID(), name, sku, recipeId, true, OffsetDateTime.now());
-    return repo.save(entity);
+    return repo.save(entity).doOnSuccess(saved -> boms.invalidateProduct(entity.id()));
   }
 }
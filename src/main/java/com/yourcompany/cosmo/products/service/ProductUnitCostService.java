@@ -0,0 +1,133 @@
+package com.yourcompany.cosmo.products.service;
+
+import com.yourcompany.cosmo.batches.domain.CostingKernel;
+import com.yourcompany.cosmo.batches.domain.CostingService;
+import com.yourcompany.cosmo.config.HotPathMetrics;
+import com.yourcompany.cosmo.pricing.service.PriceResolver;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Себестоимость материалов на единицу каждого активного продукта на дату.
+ * <p>
+ * Продукты, строки рецептов и цены загружаются целиком тремя обращениями (цены — одним вызовом
+ * {@link PriceResolver} по дефолтным offers и ручным ценам, как у партии без выбора поставщиков).
+ * Расчёт делится на части по {@value #CHUNK} продуктов, которые считаются параллельно на
+ * {@link Schedulers#parallel()}; результаты выдаются потоком в порядке названий продуктов по мере готовности частей.
+ * </p>
+ */
+@Service
+public class ProductUnitCostService {
+
+  static final int CHUNK = 1000;
+
+  /**
+   * Себестоимость единицы продукта.
+   *
+   * @param materialsCost сумма {@code граммы на единицу × цена за грамм} по рецепту (как {@code GET /cost} в режиме LINEAR)
+   * @param unpriced сырьё рецепта без цены на дату (считается по нулевой цене)
+   */
+  public record UnitCost(UUID productId, String name, String sku, UUID recipeId, BigDecimal materialsCost,
+                         List<UUID> unpriced) {}
+
+  record ProductRow(UUID id, String name, String sku, UUID recipeId) {}
+
+  private record ItemRow(UUID recipeId, CostingService.RecipeItem item) {}
+
+  private final DatabaseClient db;
+  private final PriceResolver prices;
+  private final HotPathMetrics metrics;
+
+  public ProductUnitCostService(DatabaseClient db, PriceResolver prices, HotPathMetrics metrics) {
+    this.db = db;
+    this.prices = prices;
+    this.metrics = metrics;
+  }
+
+  public Flux<UnitCost> unitCosts(LocalDate date) {
+    LocalDate pd = date != null ? date : LocalDate.now();
+
+    Mono<List<ProductRow>> productsMono = metrics.sql("products.find_active", db.sql("""
+            SELECT id, name, sku, recipe_id
+            FROM product
+            WHERE is_active
+            ORDER BY name
+            """)
+        .map((row, meta) -> new ProductRow(
+            row.get("id", UUID.class),
+            row.get("name", String.class),
+            row.get("sku", String.class),
+            row.get("recipe_id", UUID.class)
+        ))
+        .all())
+        .collectList();
+
+    Mono<Map<UUID, List<CostingService.RecipeItem>>> recipesMono = metrics.sql("recipe_items.find_active", db.sql("""
+            SELECT ri.recipe_id, ri.raw_material_id, ri.amount_gram
+            FROM recipe_item ri
+            WHERE ri.recipe_id IN (SELECT recipe_id FROM product WHERE is_active)
+            """)
+        .map((row, meta) -> new ItemRow(row.get("recipe_id", UUID.class), new CostingService.RecipeItem(
+            row.get("raw_material_id", UUID.class),
+            row.get("amount_gram", BigDecimal.class)
+        )))
+        .all())
+        .collect(HashMap::new, (m, r) -> m.computeIfAbsent(r.recipeId(), k -> new ArrayList<>()).add(r.item()));
+
+    return metrics.service("ProductUnitCostService.unitCosts", Mono.zip(productsMono, recipesMono)
+        .flatMapMany(t -> {
+          Set<UUID> rawIds = new HashSet<>();
+          t.getT2().values().forEach(items -> items.forEach(it -> rawIds.add(it.rawMaterialId())));
+          return prices.resolve(rawIds, Map.of(), pd)
+              .flatMapMany(resolved -> priceAll(t.getT1(), t.getT2(), resolved));
+        }));
+  }
+
+  static Flux<UnitCost> priceAll(List<ProductRow> products, Map<UUID, List<CostingService.RecipeItem>> recipes,
+                                 Map<UUID, PriceResolver.ResolvedPrice> resolved) {
+    Map<UUID, BigDecimal> pricePerGram = new HashMap<>();
+    Set<UUID> unpriced = new HashSet<>();
+    resolved.forEach((rawId, p) -> {
+      pricePerGram.put(rawId, p.pricePerGram());
+      if (p.source() == PriceResolver.Source.NONE) unpriced.add(rawId);
+    });
+
+    List<List<ProductRow>> chunks = new ArrayList<>();
+    for (int from = 0; from < products.size(); from += CHUNK) {
+      chunks.add(products.subList(from, Math.min(from + CHUNK, products.size())));
+    }
+
+    return Flux.fromIterable(chunks)
+        .flatMapSequential(chunk -> Mono.fromCallable(() -> price(chunk, recipes, pricePerGram, unpriced))
+            .subscribeOn(Schedulers.parallel()), Schedulers.DEFAULT_POOL_SIZE)
+        .flatMapIterable(costs -> costs);
+  }
+
+  static List<UnitCost> price(List<ProductRow> products, Map<UUID, List<CostingService.RecipeItem>> recipes,
+                              Map<UUID, BigDecimal> pricePerGram, Set<UUID> unpriced) {
+    List<UnitCost> out = new ArrayList<>(products.size());
+    // продукты с общим рецептом считаются один раз
+    Map<UUID, BigDecimal> byRecipe = new HashMap<>();
+    for (var p : products) {
+      var items = recipes.getOrDefault(p.recipeId(), List.of());
+      BigDecimal cost = byRecipe.computeIfAbsent(p.recipeId(), id -> CostingKernel.calculate(
+          List.of(new CostingService.ProductInBatch(id, 1)), Map.of(id, items), pricePerGram).materialsTotal());
+
+      List<UUID> missing = List.of();
+      for (var it : items) {
+        if (!unpriced.contains(it.rawMaterialId())) continue;
+        if (missing.isEmpty()) missing = new ArrayList<>();
+        missing.add(it.rawMaterialId());
+      }
+      out.add(new UnitCost(p.id(), p.name(), p.sku(), p.recipeId(), cost, missing));
+    }
+    return out;
+  }
+}
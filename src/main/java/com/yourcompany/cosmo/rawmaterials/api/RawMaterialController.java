@@ -1,8 +1,10 @@
 package com.yourcompany.cosmo.rawmaterials.api;
 
 import com.yourcompany.cosmo.rawmaterials.service.RawMaterialService;
+import com.yourcompany.cosmo.rawmaterials.repository.RawMaterialCatalogRepository;
 import com.yourcompany.cosmo.rawmaterials.repository.RawMaterialEntity;
 import jakarta.validation.constraints.NotBlank;
+import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
@@ -31,9 +33,30 @@ public class RawMaterialController {
     return service.create(req.name(), req.unit(), req.notes());
   }
 
-  @GetMapping
-  public Flux<RawMaterialEntity> list() {
-    return service.list();
+  /**
+   * Страница справочника в порядке (name, id). Следующая страница — с {@code after=nextCursor}.
+   */
+  @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+  public Mono<RawMaterialService.Page> list(
+      @RequestParam(name = "after", required = false) String after,
+      @RequestParam(name = "limit", defaultValue = "100") int limit,
+      @RequestParam(name = "active", required = false) Boolean active,
+      @RequestParam(name = "unit", required = false) String unit
+  ) {
+    int lim = Math.max(1, Math.min(limit, 1000));
+    return service.list(new RawMaterialCatalogRepository.Filter(active, unit), after, lim);
+  }
+
+  /**
+   * Весь справочник потоком (NDJSON, строка на сырьё) — для выгрузок и синхронизации.
+   */
+  @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public Flux<RawMaterialEntity> stream(
+      @RequestParam(name = "after", required = false) String after,
+      @RequestParam(name = "active", required = false) Boolean active,
+      @RequestParam(name = "unit", required = false) String unit
+  ) {
+    return service.stream(new RawMaterialCatalogRepository.Filter(active, unit), after);
   }
 
   @GetMapping("/{id}")
@@ -0,0 +1,103 @@
+package com.yourcompany.cosmo.rawmaterials.repository;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.*;
+
+/**
+ * Чтение справочника сырья с keyset-пагинацией по (name, id) и фильтрами.
+ */
+@Repository
+public class RawMaterialCatalogRepository {
+
+  /** Сколько строк r2dbc-драйвер запрашивает у Postgres за раз при потоковом чтении. */
+  private static final int FETCH_SIZE = 500;
+
+  /**
+   * Фильтры справочника; {@code null} — без фильтра.
+   */
+  public record Filter(Boolean active, String unit) {}
+
+  /**
+   * Позиция в справочнике: последняя выданная строка.
+   * Передаётся клиенту в виде непрозрачной строки ({@link #encode()}).
+   */
+  public record Cursor(String name, UUID id) {
+
+    public static Cursor of(RawMaterialEntity e) {
+      return new Cursor(e.name(), e.id());
+    }
+
+    public String encode() {
+      byte[] raw = (id + name).getBytes(StandardCharsets.UTF_8);
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+    }
+
+    public static Cursor decode(String value) {
+      try {
+        String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+        return new Cursor(raw.substring(36), UUID.fromString(raw.substring(0, 36)));
+      } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+        throw new IllegalArgumentException("Invalid cursor");
+      }
+    }
+  }
+
+  private final DatabaseClient db;
+
+  public RawMaterialCatalogRepository(DatabaseClient db) {
+    this.db = db;
+  }
+
+  /**
+   * Сырьё в порядке (name, id) после {@code after}.
+   *
+   * @param after позиция, после которой читать ({@code null} — с начала)
+   * @param limit максимум строк ({@code null} — до конца справочника, строки читаются порциями по мере спроса)
+   */
+  public Flux<RawMaterialEntity> find(Filter filter, Cursor after, Integer limit) {
+    List<String> where = new ArrayList<>();
+    Map<String, Object> params = new LinkedHashMap<>();
+
+    if (filter.active() != null) {
+      where.add("is_active = :active");
+      params.put("active", filter.active());
+    }
+    if (filter.unit() != null) {
+      where.add("unit = :unit");
+      params.put("unit", filter.unit());
+    }
+    if (after != null) {
+      where.add("(name, id) > (:afterName, :afterId)");
+      params.put("afterName", after.name());
+      params.put("afterId", after.id());
+    }
+
+    StringBuilder sql = new StringBuilder("SELECT id, name, unit, is_active, notes, created_at FROM raw_material");
+    if (!where.isEmpty()) sql.append(" WHERE ").append(String.join(" AND ", where));
+    sql.append(" ORDER BY name, id");
+    if (limit != null) {
+      sql.append(" LIMIT :limit");
+      params.put("limit", limit);
+    }
+
+    DatabaseClient.GenericExecuteSpec spec = db.sql(sql.toString());
+    for (var e : params.entrySet()) spec = spec.bind(e.getKey(), e.getValue());
+    if (limit == null) spec = spec.filter((statement, next) -> next.execute(statement.fetchSize(FETCH_SIZE)));
+
+    return spec
+        .map((row, meta) -> new RawMaterialEntity(
+            row.get("id", UUID.class),
+            row.get("name", String.class),
+            row.get("unit", String.class),
+            Boolean.TRUE.equals(row.get("is_active", Boolean.class)),
+            row.get("notes", String.class),
+            row.get("created_at", OffsetDateTime.class)
+        ))
+        .all();
+  }
+}
@@ -1,13 +1,21 @@
 package com.yourcompany.cosmo.rawmaterials.service;
 
+import com.yourcompany.cosmo.batches.service.BatchCostTracker;
+import com.yourcompany.cosmo.pricing.repository.EffectivePriceRepository;
+import com.yourcompany.cosmo.pricing.repository.PriceHistoryRepository;
+import com.yourcompany.cosmo.pricing.repository.PriceHistoryRepository.History;
+import com.yourcompany.cosmo.pricing.repository.PriceHistoryRepository.NewPrice;
+import com.yourcompany.cosmo.pricing.service.PriceResolver;
 import com.yourcompany.cosmo.rawmaterials.repository.RawMaterialManualPriceEntity;
 import com.yourcompany.cosmo.rawmaterials.repository.RawMaterialManualPriceRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.time.OffsetDateTime;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -17,23 +25,43 @@ import java.util.UUID;
 public class RawMaterialManualPriceService {
 
   private final RawMaterialManualPriceRepository repo;
+  private final PriceHistoryRepository history;
+  private final EffectivePriceRepository effectivePrices;
+  private final TransactionalOperator tx;
+  private final PriceResolver priceResolver;
+  private final BatchCostTracker costTracker;
 
-  public RawMaterialManualPriceService(RawMaterialManualPriceRepository repo) {
+  public RawMaterialManualPriceService(RawMaterialManualPriceRepository repo, PriceHistoryRepository history,
+                                       EffectivePriceRepository effectivePrices, TransactionalOperator tx,
+                                       PriceResolver priceResolver, BatchCostTracker costTracker) {
     this.repo = repo;
+    this.history = history;
+    this.effectivePrices = effectivePrices;
+    this.tx = tx;
+    this.priceResolver = priceResolver;
+    this.costTracker = costTracker;
   }
 
+  /**
+   * Добавить ручную цену. Цена, действовавшая на {@code validFrom}, закрывается днём раньше;
+   * бессрочная новая цена действует до следующей уже известной цены.
+   */
   public Mono<RawMaterialManualPriceEntity> add(UUID rawMaterialId, double pricePerGram, String currency,
                                                 LocalDate validFrom, LocalDate validTo) {
-    var e = new RawMaterialManualPriceEntity(
-        UUID.randomUUID(),
-        rawMaterialId,
-        pricePerGram,
-        currency,
-        validFrom,
-        validTo,
-        OffsetDateTime.now()
-    );
-    return repo.save(e);
+    if (validTo != null && validTo.isBefore(validFrom)) {
+      return Mono.error(new IllegalArgumentException("validTo is before validFrom"));
+    }
+    var price = new NewPrice(UUID.randomUUID(), rawMaterialId, BigDecimal.valueOf(pricePerGram), currency, validFrom, validTo);
+    Mono<List<UUID>> add = history.add(History.MANUAL, List.of(price)).collectList()
+        .flatMap(added -> added.isEmpty()
+            ? Mono.just(added)
+            : effectivePrices.refreshRawMaterials(List.of(rawMaterialId)).thenReturn(added));
+    return tx.transactional(add)
+        .flatMap(added -> added.isEmpty()
+            ? Mono.<RawMaterialManualPriceEntity>error(new IllegalArgumentException("Price interval overlaps a later manual price"))
+            : repo.findById(price.id()))
+        .flatMap(saved -> priceResolver.manualPricesChanged(rawMaterialId).thenReturn(saved))
+        .doOnNext(saved -> costTracker.manualPricesChanged(rawMaterialId, validFrom, validTo));
   }
 
   public Flux<RawMaterialManualPriceEntity> list(UUID rawMaterialId) {
@@ -1,28 +1,59 @@
 package com.yourcompany.cosmo.rawmaterials.service;
 
+import com.yourcompany.cosmo.rawmaterials.repository.RawMaterialCatalogRepository;
 import com.yourcompany.cosmo.rawmaterials.repository.RawMaterialEntity;
 import com.yourcompany.cosmo.rawmaterials.repository.RawMaterialRepository;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.UUID;
 
 @Service
 public class RawMaterialService {
   private final RawMaterialRepository repo;
+  private final RawMaterialCatalogRepository catalog;
 
-  public RawMaterialService(RawMaterialRepository repo) {
+  public RawMaterialService(RawMaterialRepository repo, RawMaterialCatalogRepository catalog) {
     this.repo = repo;
+    this.catalog = catalog;
   }
 
+  /**
+   * Страница справочника сырья.
+   *
+   * @param nextCursor позиция для следующей страницы ({@code null}, если страница последняя)
+   */
+  public record Page(List<RawMaterialEntity> items, String nextCursor) {}
+
   public Mono<RawMaterialEntity> create(String name, String unit, String notes) {
     var entity = RawMaterialEntity.create(name, unit, notes);
     return repo.save(entity);
   }
 
-  public Flux<RawMaterialEntity> list() {
-    return repo.findAll();
+  /**
+   * Страница справочника в порядке (name, id).
+   */
+  public Mono<Page> list(RawMaterialCatalogRepository.Filter filter, String after, int limit) {
+    return catalog.find(filter, cursor(after), limit + 1)
+        .collectList()
+        .map(rows -> {
+          if (rows.size() <= limit) return new Page(rows, null);
+          List<RawMaterialEntity> items = rows.subList(0, limit);
+          return new Page(items, RawMaterialCatalogRepository.Cursor.of(items.get(limit - 1)).encode());
+        });
+  }
+
+  /**
+   * Весь справочник (начиная с позиции {@code after}) потоком — строки читаются из БД по мере спроса.
+   */
+  public Flux<RawMaterialEntity> stream(RawMaterialCatalogRepository.Filter filter, String after) {
+    return catalog.find(filter, cursor(after), null);
+  }
+
+  private static RawMaterialCatalogRepository.Cursor cursor(String after) {
+    return after == null || after.isBlank() ? null : RawMaterialCatalogRepository.Cursor.decode(after);
   }
 
   public Mono<RawMaterialEntity> get(UUID id) {
@@ -17,18 +17,20 @@ public class RecipeItemRepository {
         this.db = db;
     }
 
+    /**
+     * Вставляет строки рецепта одним многострочным запросом.
+     */
     public Mono<Void> saveAll(UUID recipeId, List<Item> items) {
-        return Mono.when(
-                items.stream()
-                        .map(item -> db.sql("""
-                                INSERT INTO recipe_item(recipe_id, raw_material_id, amount_gram)
-                                VALUES (:recipeId, :rawMaterialId, :amountGram)
-                                """)
-                                .bind("recipeId", recipeId)
-                                .bind("rawMaterialId", item.rawMaterialId())
-                                .bind("amountGram", item.amountGram())
-                                .then())
-                        .toList()
-        ).then();
+        if (items.isEmpty()) return Mono.empty();
+
+        return db.sql("""
+                        INSERT INTO recipe_item(recipe_id, raw_material_id, amount_gram)
+                        SELECT :recipeId, i.raw_material_id, i.amount_gram
+                        FROM unnest(:rawMaterialIds, :amountGrams) AS i(raw_material_id, amount_gram)
+                        """)
+                .bind("recipeId", recipeId)
+                .bind("rawMaterialIds", items.stream().map(Item::rawMaterialId).toArray(UUID[]::new))
+                .bind("amountGrams", items.stream().map(Item::amountGram).toArray(Double[]::new))
+                .then();
     }
 }
\ No newline at end of file
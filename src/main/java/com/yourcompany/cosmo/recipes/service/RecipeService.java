@@ -1,5 +1,6 @@
 package com.yourcompany.cosmo.recipes.service;
 
+import com.yourcompany.cosmo.batches.service.TemplateBomCache;
 import com.yourcompany.cosmo.recipes.repository.RecipeEntity;
 import com.yourcompany.cosmo.recipes.repository.RecipeItemRepository;
 import com.yourcompany.cosmo.recipes.repository.RecipeRepository;
@@ -18,6 +19,7 @@ public class RecipeService {
   private final RecipeRepository recipeRepo;
   private final RecipeItemRepository recipeItemRepo;
   private final TransactionalOperator tx;
+  private final TemplateBomCache boms;
 
   public record Item(UUID rawMaterialId, double amountGram) {}
 
@@ -28,6 +30,6 @@ public class RecipeService {
     return tx.transactional(
             recipeRepo.save(recipe)
                     .flatMap(saved -> recipeItemRepo.saveAll(recipeId, items).thenReturn(saved))
-    );
+    ).doOnSuccess(saved -> boms.invalidateRecipe(recipeId));
   }
 }
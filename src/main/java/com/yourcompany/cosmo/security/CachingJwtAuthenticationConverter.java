@@ -0,0 +1,136 @@
+package com.yourcompany.cosmo.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * JWT → аутентификация с ролями Keycloak ({@link KeycloakRolesExtractor}), с кэшем по токену.
+ * <p>
+ * Один токен приходит в сотнях запросов, поэтому готовая {@link JwtAuthenticationToken} хранится до {@code exp}
+ * токена: истёкшая запись удаляется при обращении, а при заполнении кэша — до вытеснения по LRU. Истёкшие записи
+ * берутся из индекса по {@code exp}, без обхода всего кэша. Ключ — {@code jti} (подпись токена уже проверена),
+ * для токенов без него — SHA-256 значения токена. Токены без {@code exp} не кэшируются.
+ * Метрики: {@code cosmo.security.jwt.cache.requests} (тег {@code result} — hit/miss)
+ * и {@code cosmo.security.jwt.cache.size}.
+ * </p>
+ */
+@Component
+public class CachingJwtAuthenticationConverter implements Converter<Jwt, Mono<AbstractAuthenticationToken>> {
+
+  private record Entry(String key, JwtAuthenticationToken authentication, Instant expiresAt) {}
+
+  private static final Comparator<Entry> BY_EXPIRY = Comparator.comparing(Entry::expiresAt).thenComparing(Entry::key);
+
+  /** Ключ → запись в порядке обращений (LRU); тот же набор записей — в {@link #byExpiry}. */
+  private final Map<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+  private final TreeSet<Entry> byExpiry = new TreeSet<>(BY_EXPIRY);
+  private final int maxSize;
+  private final Clock clock;
+  private final Counter hits;
+  private final Counter misses;
+
+  @Autowired
+  public CachingJwtAuthenticationConverter(MeterRegistry registry,
+                                           @Value("${cosmo.security.jwt-cache.max-size:10000}") int maxSize) {
+    this(registry, maxSize, Clock.systemUTC());
+  }
+
+  CachingJwtAuthenticationConverter(MeterRegistry registry, int maxSize, Clock clock) {
+    this.maxSize = maxSize;
+    this.clock = clock;
+    this.hits = Counter.builder("cosmo.security.jwt.cache.requests").tag("result", "hit").register(registry);
+    this.misses = Counter.builder("cosmo.security.jwt.cache.requests").tag("result", "miss").register(registry);
+    Gauge.builder("cosmo.security.jwt.cache.size", this, c -> c.size()).register(registry);
+  }
+
+  @Override
+  public Mono<AbstractAuthenticationToken> convert(Jwt jwt) {
+    return Mono.just(authenticate(jwt));
+  }
+
+  JwtAuthenticationToken authenticate(Jwt jwt) {
+    String key = key(jwt);
+    Instant now = clock.instant();
+
+    synchronized (this) {
+      Entry e = cache.get(key);
+      if (e != null) {
+        if (now.isBefore(e.expiresAt())) {
+          hits.increment();
+          return e.authentication();
+        }
+        remove(e);
+      }
+    }
+
+    misses.increment();
+    var authentication = new JwtAuthenticationToken(jwt, KeycloakRolesExtractor.extract(jwt));
+    Instant expiresAt = jwt.getExpiresAt();
+    if (expiresAt != null && now.isBefore(expiresAt)) {
+      synchronized (this) {
+        Entry previous = cache.get(key);
+        if (previous != null) remove(previous);
+        if (cache.size() >= maxSize) evict(now);
+        var entry = new Entry(key, authentication, expiresAt);
+        cache.put(key, entry);
+        byExpiry.add(entry);
+      }
+    }
+    return authentication;
+  }
+
+  /**
+   * Освобождает место: сначала истёкшие токены (от раньше истекающих), затем — давно не использованные.
+   */
+  private void evict(Instant now) {
+    while (!byExpiry.isEmpty() && !now.isBefore(byExpiry.first().expiresAt())) {
+      cache.remove(byExpiry.pollFirst().key());
+    }
+    Iterator<Entry> lru = cache.values().iterator();
+    while (cache.size() >= maxSize && lru.hasNext()) {
+      byExpiry.remove(lru.next());
+      lru.remove();
+    }
+  }
+
+  private void remove(Entry e) {
+    cache.remove(e.key());
+    byExpiry.remove(e);
+  }
+
+  private static String key(Jwt jwt) {
+    String jti = jwt.getId();
+    if (jti != null) return jti;
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(jwt.getTokenValue().getBytes(StandardCharsets.US_ASCII));
+      return "sha256:" + Base64.getEncoder().encodeToString(digest);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  synchronized int size() {
+    return cache.size();
+  }
+}
@@ -0,0 +1,84 @@
+package com.yourcompany.cosmo.security;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.text.ParseException;
+import java.time.Duration;
+
+/**
+ * Набор ключей для проверки JWT, загруженный из {@code cosmo.security.jwks.location} (file:, classpath: или http(s):).
+ * <p>
+ * Загружается при старте (ошибка загрузки останавливает старт) и перечитывается в фоне раз в
+ * {@code refresh-interval}; при ошибке обновления остаётся прежний набор. Проверка токена обращается
+ * только к набору в памяти — сетевых вызовов на пути запроса нет.
+ * </p>
+ */
+public class LocalJwkSet implements InitializingBean, DisposableBean {
+
+  private static final Logger log = LoggerFactory.getLogger(LocalJwkSet.class);
+
+  private final Resource location;
+  private final Duration refreshInterval;
+
+  private volatile JWKSet keys = new JWKSet();
+  private Disposable refreshTask;
+
+  public LocalJwkSet(Resource location, Duration refreshInterval) {
+    this.location = location;
+    this.refreshInterval = refreshInterval;
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    keys = load();
+    log.info("JWK set loaded from {}: {} keys", location, keys.size());
+    refreshTask = Flux.interval(refreshInterval, refreshInterval)
+        .onBackpressureDrop()
+        .concatMap(tick -> Mono.fromCallable(this::load)
+            .subscribeOn(Schedulers.boundedElastic())
+            .doOnNext(loaded -> keys = loaded)
+            .onErrorResume(e -> {
+              log.warn("JWK set refresh from {} failed, keeping {} keys", location, keys.size(), e);
+              return Mono.empty();
+            }))
+        .subscribe();
+  }
+
+  @Override
+  public void destroy() {
+    if (refreshTask != null) refreshTask.dispose();
+  }
+
+  /**
+   * Ключи, подходящие к заголовку токена (kid, alg, назначение ключа).
+   */
+  public Flux<JWK> select(SignedJWT jwt) {
+    return Flux.fromIterable(new JWKSelector(JWKMatcher.forJWSHeader(jwt.getHeader())).select(keys));
+  }
+
+  private JWKSet load() {
+    try (InputStream in = location.getInputStream()) {
+      return JWKSet.load(in);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot read JWK set from " + location, e);
+    } catch (ParseException e) {
+      throw new IllegalArgumentException("Invalid JWK set in " + location, e);
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package com.yourcompany.cosmo.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+
+/**
+ * Проверка JWT по локальному набору ключей ({@code cosmo.security.jwks.location}) вместо OIDC discovery
+ * и загрузки JWKS у Keycloak. Свой {@link ReactiveJwtDecoder} отключает автоконфигурацию Spring по issuer-uri;
+ * issuer-uri, если задан, используется только для проверки claim {@code iss}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "cosmo.security.jwks.location")
+public class LocalJwksConfig {
+
+  @Bean
+  LocalJwkSet localJwkSet(@Value("${cosmo.security.jwks.location}") Resource location,
+                          @Value("${cosmo.security.jwks.refresh-interval:PT10M}") Duration refreshInterval) {
+    return new LocalJwkSet(location, refreshInterval);
+  }
+
+  @Bean
+  ReactiveJwtDecoder jwtDecoder(LocalJwkSet keys,
+                                @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri:}") String issuer) {
+    NimbusReactiveJwtDecoder decoder = NimbusReactiveJwtDecoder.withJwkSource(keys::select).build();
+    decoder.setJwtValidator(StringUtils.hasText(issuer)
+        ? JwtValidators.createDefaultWithIssuer(issuer)
+        : JwtValidators.createDefault());
+    return decoder;
+  }
+}
@@ -6,7 +6,6 @@ import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.UUID;
@@ -56,14 +55,16 @@ public class SupplierController {
     return service.get(id);
   }
 
+  /**
+   * Листинг/поиск поставщиков. Следующая страница — с {@code after=nextCursor}.
+   */
   @GetMapping
-  public Flux<SupplierEntity> list(
+  public Mono<SupplierService.Page> list(
       @RequestParam(name = "q", required = false) String q,
       @RequestParam(name = "limit", defaultValue = "50") int limit,
-      @RequestParam(name = "offset", defaultValue = "0") int offset
+      @RequestParam(name = "after", required = false) String after
   ) {
     int lim = Math.max(1, Math.min(limit, 200));
-    int off = Math.max(0, offset);
-    return service.list(q, lim, off);
+    return service.list(q, after, lim);
   }
 }
@@ -1,11 +1,15 @@
 package com.yourcompany.cosmo.suppliers.api;
 
+import com.yourcompany.cosmo.suppliers.service.PriceListImportService;
 import com.yourcompany.cosmo.suppliers.service.SupplierOfferPriceService;
 import com.yourcompany.cosmo.suppliers.repository.SupplierMaterialPriceEntity;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -20,9 +24,11 @@ import java.util.UUID;
 public class SupplierOfferPriceController {
 
   private final SupplierOfferPriceService service;
+  private final PriceListImportService importService;
 
-  public SupplierOfferPriceController(SupplierOfferPriceService service) {
+  public SupplierOfferPriceController(SupplierOfferPriceService service, PriceListImportService importService) {
     this.service = service;
+    this.importService = importService;
   }
 
   public record CreateOfferPriceRequest(
@@ -41,4 +47,17 @@ public class SupplierOfferPriceController {
   public Flux<SupplierMaterialPriceEntity> list(@PathVariable UUID offerId) {
     return service.list(offerId);
   }
+
+  /**
+   * Импорт прайс-листа поставщика потоком (CSV или NDJSON); offers определяются по SKU.
+   * Возвращает отчёт: число импортированных строк, ошибки по строкам и скорость импорта.
+   */
+  @PostMapping(value = "/api/suppliers/{supplierId}/price-list", consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE})
+  public Mono<PriceListImportService.ImportReport> importPriceList(
+      @PathVariable UUID supplierId,
+      @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+      @RequestBody Flux<DataBuffer> body
+  ) {
+    return importService.importPriceList(supplierId, body, contentType);
+  }
 }
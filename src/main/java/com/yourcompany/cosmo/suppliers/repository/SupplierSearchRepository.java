@@ -0,0 +1,156 @@
+package com.yourcompany.cosmo.suppliers.repository;
+
+import io.r2dbc.spi.Readable;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Листинг и поиск поставщиков с keyset-пагинацией.
+ * <p>
+ * Поиск — по подстроке в lower(name) (GIN-индекс pg_trgm), результаты ранжируются по similarity;
+ * без поиска — новые поставщики первыми. Для каждого режима свой запрос, чтобы планировщик
+ * видел условие и мог использовать индекс.
+ * </p>
+ */
+@Repository
+public class SupplierSearchRepository {
+
+    /**
+     * Поставщик и его позиция в выдаче (для курсора следующей страницы).
+     */
+    public record Hit(SupplierEntity supplier, Cursor cursor) {}
+
+    /**
+     * Позиция в выдаче: ключ сортировки последней строки (similarity или created_at) и её id.
+     * Передаётся клиенту в виде непрозрачной строки ({@link #encode()}).
+     */
+    public record Cursor(String position, UUID id) {
+
+        public String encode() {
+            byte[] raw = (id + position).getBytes(StandardCharsets.UTF_8);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+        }
+
+        public static Cursor decode(String value) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+                return new Cursor(raw.substring(36), UUID.fromString(raw.substring(0, 36)));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+
+        float score() {
+            try {
+                return Float.parseFloat(position);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+
+        OffsetDateTime createdAt() {
+            try {
+                return OffsetDateTime.parse(position);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+    }
+
+    private final DatabaseClient db;
+
+    public SupplierSearchRepository(DatabaseClient db) {
+        this.db = db;
+    }
+
+    /**
+     * Все поставщики, новые первыми: ORDER BY created_at DESC, id DESC.
+     */
+    public Flux<Hit> list(Cursor after, int limit) {
+        DatabaseClient.GenericExecuteSpec spec;
+        if (after == null) {
+            spec = db.sql("""
+                    SELECT id, name, phone, email, notes, is_active, created_at
+                    FROM supplier
+                    ORDER BY created_at DESC, id DESC
+                    LIMIT :limit
+                    """);
+        } else {
+            spec = db.sql("""
+                    SELECT id, name, phone, email, notes, is_active, created_at
+                    FROM supplier
+                    WHERE (created_at, id) < (:afterCreatedAt, :afterId)
+                    ORDER BY created_at DESC, id DESC
+                    LIMIT :limit
+                    """)
+                    .bind("afterCreatedAt", after.createdAt())
+                    .bind("afterId", after.id());
+        }
+        return spec.bind("limit", limit)
+                .map((row, meta) -> {
+                    SupplierEntity s = read(row);
+                    return new Hit(s, new Cursor(s.getCreatedAt().toString(), s.getId()));
+                })
+                .all();
+    }
+
+    /**
+     * Поставщики, в имени которых есть {@code query} (без учёта регистра), по убыванию similarity.
+     */
+    public Flux<Hit> search(String query, Cursor after, int limit) {
+        String q = query.toLowerCase(Locale.ROOT);
+        String pattern = "%" + q.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+
+        DatabaseClient.GenericExecuteSpec spec;
+        if (after == null) {
+            spec = db.sql("""
+                    SELECT id, name, phone, email, notes, is_active, created_at, similarity(lower(name), :q) AS score
+                    FROM supplier
+                    WHERE lower(name) LIKE :pattern
+                    ORDER BY score DESC, id
+                    LIMIT :limit
+                    """);
+        } else {
+            spec = db.sql("""
+                    SELECT id, name, phone, email, notes, is_active, created_at, similarity(lower(name), :q) AS score
+                    FROM supplier
+                    WHERE lower(name) LIKE :pattern
+                      AND (similarity(lower(name), :q) < :afterScore
+                           OR (similarity(lower(name), :q) = :afterScore AND id > :afterId))
+                    ORDER BY score DESC, id
+                    LIMIT :limit
+                    """)
+                    .bind("afterScore", after.score())
+                    .bind("afterId", after.id());
+        }
+        return spec.bind("q", q)
+                .bind("pattern", pattern)
+                .bind("limit", limit)
+                .map((row, meta) -> {
+                    SupplierEntity s = read(row);
+                    Float score = row.get("score", Float.class);
+                    return new Hit(s, new Cursor(String.valueOf(score), s.getId()));
+                })
+                .all();
+    }
+
+    private static SupplierEntity read(Readable row) {
+        return SupplierEntity.builder()
+                .id(row.get("id", UUID.class))
+                .name(row.get("name", String.class))
+                .phone(row.get("phone", String.class))
+                .email(row.get("email", String.class))
+                .notes(row.get("notes", String.class))
+                .isActive(Boolean.TRUE.equals(row.get("is_active", Boolean.class)))
+                .createdAt(row.get("created_at", OffsetDateTime.class))
+                .build();
+    }
+}
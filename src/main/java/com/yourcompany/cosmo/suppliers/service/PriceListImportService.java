@@ -0,0 +1,340 @@
+package com.yourcompany.cosmo.suppliers.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yourcompany.cosmo.batches.service.BatchCostTracker;
+import com.yourcompany.cosmo.pricing.repository.EffectivePriceRepository;
+import com.yourcompany.cosmo.pricing.repository.PriceHistoryRepository;
+import com.yourcompany.cosmo.pricing.repository.PriceHistoryRepository.History;
+import com.yourcompany.cosmo.pricing.repository.PriceHistoryRepository.NewPrice;
+import com.yourcompany.cosmo.pricing.service.PriceResolver;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Импорт прайс-листа поставщика (CSV или NDJSON) в цены его offers.
+ * <p>
+ * Файл читается потоком и разбирается построчно, не загружаясь в память целиком. Offer определяется
+ * по SKU среди offers поставщика. Корректные строки пишутся в supplier_material_price пачками
+ * (каждая пачка — одна транзакция); некорректные попадают в отчёт об ошибках.
+ * </p>
+ * <p>
+ * Как и при ручном добавлении, новая цена закрывает предыдущую цену offer'а. Строки одного offer'а
+ * применяются в порядке valid_from; при совпадении valid_from действует строка, стоящая в файле ниже.
+ * </p>
+ * <p>
+ * CSV: {@code sku,price_per_package,currency,valid_from[,valid_to]} (первая строка может быть заголовком).
+ * NDJSON: {@code {"sku": ..., "pricePerPackage": ..., "currency": ..., "validFrom": ..., "validTo": ...}}.
+ * </p>
+ */
+@Service
+public class PriceListImportService {
+
+  /** Целая часть цены, которая помещается в numeric(14,6). */
+  private static final int MAX_INTEGER_DIGITS = 8;
+
+  /**
+   * Ошибка в строке прайс-листа.
+   *
+   * @param line номер строки файла (с 1)
+   */
+  public record LineError(long line, String sku, String message) {}
+
+  /**
+   * Результат импорта.
+   *
+   * @param errors ошибки по строкам (не больше заданного лимита, остальные только считаются в {@code failed})
+   */
+  public record ImportReport(
+      long linesRead,
+      long imported,
+      long failed,
+      List<LineError> errors,
+      long durationMs,
+      double rowsPerSecond
+  ) {}
+
+  /** Строка прайс-листа в формате NDJSON. */
+  public record JsonLine(String sku, BigDecimal pricePerPackage, String currency, LocalDate validFrom, LocalDate validTo) {}
+
+  private record PriceRow(UUID id, long line, String sku, UUID offerId, BigDecimal pricePerPackage, String currency,
+                          LocalDate validFrom, LocalDate validTo) {
+
+    PriceRow closedBefore(LocalDate date) {
+      return new PriceRow(id, line, sku, offerId, pricePerPackage, currency, validFrom, date.minusDays(1));
+    }
+
+    NewPrice toNewPrice() {
+      return new NewPrice(id, offerId, pricePerPackage, currency, validFrom, validTo);
+    }
+  }
+
+  private static final class LineException extends RuntimeException {
+    LineException(String message) {
+      super(message, null, false, false);
+    }
+  }
+
+  /** Счётчики импорта; обновляются последовательно в одном потоке обработки. */
+  private final class Progress {
+    final long started = System.nanoTime();
+    long linesRead;
+    long imported;
+    long failed;
+    final List<LineError> errors = new ArrayList<>();
+    final Set<UUID> touchedOffers = new HashSet<>();
+
+    void fail(long line, String sku, String message) {
+      failed++;
+      if (errors.size() < maxReportedErrors) errors.add(new LineError(line, sku, message));
+    }
+
+    ImportReport report() {
+      long nanos = System.nanoTime() - started;
+      double seconds = nanos / 1e9;
+      return new ImportReport(linesRead, imported, failed, List.copyOf(errors),
+          Duration.ofNanos(nanos).toMillis(), seconds > 0 ? imported / seconds : 0);
+    }
+  }
+
+  private final DatabaseClient db;
+  private final PriceHistoryRepository history;
+  private final EffectivePriceRepository effectivePrices;
+  private final TransactionalOperator tx;
+  private final PriceResolver priceResolver;
+  private final BatchCostTracker costTracker;
+  private final ObjectMapper objectMapper;
+  private final int chunkSize;
+  private final int maxReportedErrors;
+  private final StringDecoder lines = StringDecoder.allMimeTypes();
+
+  public PriceListImportService(
+      DatabaseClient db,
+      PriceHistoryRepository history,
+      EffectivePriceRepository effectivePrices,
+      TransactionalOperator tx,
+      PriceResolver priceResolver,
+      BatchCostTracker costTracker,
+      ObjectMapper objectMapper,
+      @Value("${cosmo.suppliers.price-import.chunk-size:1000}") int chunkSize,
+      @Value("${cosmo.suppliers.price-import.max-reported-errors:1000}") int maxReportedErrors
+  ) {
+    this.db = db;
+    this.history = history;
+    this.effectivePrices = effectivePrices;
+    this.tx = tx;
+    this.priceResolver = priceResolver;
+    this.costTracker = costTracker;
+    this.objectMapper = objectMapper;
+    this.chunkSize = chunkSize;
+    this.maxReportedErrors = maxReportedErrors;
+  }
+
+  /**
+   * Импортировать прайс-лист поставщика.
+   *
+   * @param contentType {@code text/csv} или {@code application/x-ndjson}
+   */
+  public Mono<ImportReport> importPriceList(UUID supplierId, Flux<DataBuffer> body, MediaType contentType) {
+    boolean ndjson = MediaType.APPLICATION_NDJSON.isCompatibleWith(contentType);
+
+    return loadOffersBySku(supplierId).flatMap(offersBySku -> {
+      Progress progress = new Progress();
+
+      return lines.decode(body, ResolvableType.forClass(String.class), null, Map.of())
+          .index()
+          .<PriceRow>handle((t, sink) -> {
+            long line = t.getT1() + 1;
+            String text = t.getT2();
+            if (text.isBlank() || (!ndjson && line == 1 && isCsvHeader(text))) return;
+
+            progress.linesRead++;
+            String sku = null;
+            try {
+              JsonLine parsed = ndjson ? parseJson(text) : parseCsv(text);
+              sku = parsed.sku();
+              sink.next(validate(line, parsed, offersBySku));
+            } catch (LineException e) {
+              progress.fail(line, sku, e.getMessage());
+            }
+          })
+          .buffer(chunkSize)
+          .concatMap(chunk -> {
+            List<PriceRow> rows = orderAndClose(chunk, progress);
+            Mono<List<UUID>> add = history.add(History.OFFER, rows.stream().map(PriceRow::toNewPrice).toList())
+                .collectList()
+                .flatMap(added -> effectivePrices.refreshOffers(offersOf(rows, added)).thenReturn(added));
+            return tx.transactional(add)
+                .doOnSuccess(added -> {
+                  Set<UUID> ids = new HashSet<>(added);
+                  Set<UUID> chunkOffers = new HashSet<>();
+                  // самая ранняя valid_from записанных цен: раньше неё цены не менялись
+                  LocalDate earliest = null;
+                  for (PriceRow r : rows) {
+                    if (ids.contains(r.id())) {
+                      progress.imported++;
+                      chunkOffers.add(r.offerId());
+                      if (earliest == null || r.validFrom().isBefore(earliest)) earliest = r.validFrom();
+                    } else {
+                      progress.fail(r.line(), r.sku(), "Price interval overlaps a later price of the offer");
+                    }
+                  }
+                  progress.touchedOffers.addAll(chunkOffers);
+                  // пачка уже зафиксирована: сообщаем сразу, ошибка следующих пачек не должна это потерять
+                  costTracker.offerPricesChanged(chunkOffers, earliest, null);
+                })
+                .then()
+                .onErrorResume(e -> {
+                  // пачка пишется в одной транзакции: при ошибке БД отклоняются все её строки
+                  rows.forEach(r -> progress.fail(r.line(), r.sku(), e.getMessage()));
+                  return Mono.empty();
+                });
+          })
+          .then(Mono.defer(() -> priceResolver.offersChanged(progress.touchedOffers)))
+          .then(Mono.fromSupplier(progress::report));
+    });
+  }
+
+  /** SKU → offer поставщика; {@code null} — SKU встречается у нескольких offers. */
+  private Mono<Map<String, UUID>> loadOffersBySku(UUID supplierId) {
+    return db.sql("SELECT id, sku FROM supplier_material WHERE supplier_id = :sid AND sku IS NOT NULL")
+        .bind("sid", supplierId)
+        .map((row, meta) -> Map.entry(Objects.requireNonNull(row.get("sku", String.class)), Objects.requireNonNull(row.get("id", UUID.class))))
+        .all()
+        .collect(HashMap::new, (Map<String, UUID> m, Map.Entry<String, UUID> e) -> {
+          if (m.containsKey(e.getKey())) m.put(e.getKey(), null);
+          else m.put(e.getKey(), e.getValue());
+        });
+  }
+
+  private static Set<UUID> offersOf(List<PriceRow> rows, List<UUID> addedIds) {
+    Set<UUID> added = new HashSet<>(addedIds);
+    Set<UUID> offers = new HashSet<>();
+    for (PriceRow r : rows) {
+      if (added.contains(r.id())) offers.add(r.offerId());
+    }
+    return offers;
+  }
+
+  /**
+   * Строки пачки по offer и valid_from; каждая строка закрывает предыдущую строку того же offer'а.
+   * Из строк с одинаковыми offer и valid_from остаётся стоящая в файле ниже, остальные — ошибки.
+   */
+  private static List<PriceRow> orderAndClose(List<PriceRow> chunk, Progress progress) {
+    List<PriceRow> sorted = new ArrayList<>(chunk);
+    sorted.sort(Comparator.comparing((PriceRow r) -> r.offerId())
+        .thenComparing(PriceRow::validFrom)
+        .thenComparingLong(PriceRow::line));
+
+    List<PriceRow> rows = new ArrayList<>(sorted.size());
+    for (int i = 0; i < sorted.size(); i++) {
+      PriceRow r = sorted.get(i);
+      PriceRow next = i + 1 < sorted.size() && sorted.get(i + 1).offerId().equals(r.offerId()) ? sorted.get(i + 1) : null;
+      if (next == null) {
+        rows.add(r);
+      } else if (next.validFrom().equals(r.validFrom())) {
+        progress.fail(r.line(), r.sku(), "Superseded by line " + next.line());
+      } else if (r.validTo() == null || !r.validTo().isBefore(next.validFrom())) {
+        rows.add(r.closedBefore(next.validFrom()));
+      } else {
+        rows.add(r);
+      }
+    }
+    return rows;
+  }
+
+  private static PriceRow validate(long line, JsonLine l, Map<String, UUID> offersBySku) {
+    if (l.sku() == null || l.sku().isBlank()) throw new LineException("sku is required");
+    if (!offersBySku.containsKey(l.sku())) throw new LineException("Unknown SKU for supplier");
+    UUID offerId = offersBySku.get(l.sku());
+    if (offerId == null) throw new LineException("SKU matches several offers of supplier");
+
+    BigDecimal price = l.pricePerPackage();
+    if (price == null || price.signum() <= 0) throw new LineException("price_per_package must be positive");
+    if (price.precision() - price.scale() > MAX_INTEGER_DIGITS) throw new LineException("price_per_package is too large");
+    if (l.currency() == null || l.currency().isBlank() || l.currency().length() > 8) {
+      throw new LineException("currency is required (up to 8 characters)");
+    }
+    if (l.validFrom() == null) throw new LineException("valid_from is required");
+    if (l.validTo() != null && l.validTo().isBefore(l.validFrom())) throw new LineException("valid_to is before valid_from");
+
+    return new PriceRow(UUID.randomUUID(), line, l.sku(), offerId, price, l.currency(), l.validFrom(), l.validTo());
+  }
+
+  private JsonLine parseJson(String text) {
+    try {
+      return objectMapper.readValue(text, JsonLine.class);
+    } catch (Exception e) {
+      throw new LineException("Invalid JSON line: " + e.getMessage());
+    }
+  }
+
+  private static JsonLine parseCsv(String text) {
+    List<String> f = splitCsv(text);
+    if (f.size() < 4 || f.size() > 5) throw new LineException("Expected 4 or 5 fields, got " + f.size());
+    try {
+      return new JsonLine(
+          f.get(0),
+          f.get(1).isEmpty() ? null : new BigDecimal(f.get(1)),
+          f.get(2),
+          f.get(3).isEmpty() ? null : LocalDate.parse(f.get(3)),
+          f.size() < 5 || f.get(4).isEmpty() ? null : LocalDate.parse(f.get(4))
+      );
+    } catch (NumberFormatException e) {
+      throw new LineException("Invalid price_per_package");
+    } catch (DateTimeParseException e) {
+      throw new LineException("Invalid date: " + e.getParsedString());
+    }
+  }
+
+  private static boolean isCsvHeader(String text) {
+    try {
+      return splitCsv(text).get(0).equalsIgnoreCase("sku");
+    } catch (LineException e) {
+      return false;
+    }
+  }
+
+  /** Поля CSV-строки: разделитель — запятая, поле может быть в кавычках ({@code ""} — кавычка внутри поля). */
+  static List<String> splitCsv(String text) {
+    List<String> fields = new ArrayList<>();
+    StringBuilder cur = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+          cur.append('"');
+          i++;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          cur.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(cur.toString().trim());
+        cur.setLength(0);
+      } else {
+        cur.append(c);
+      }
+    }
+    if (quoted) throw new LineException("Unterminated quoted field");
+    fields.add(cur.toString().trim());
+    return fields;
+  }
+}
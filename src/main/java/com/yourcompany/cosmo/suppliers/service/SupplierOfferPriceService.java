@@ -1,13 +1,22 @@
 package com.yourcompany.cosmo.suppliers.service;
 
+import com.yourcompany.cosmo.batches.service.BatchCostTracker;
+import com.yourcompany.cosmo.pricing.repository.EffectivePriceRepository;
+import com.yourcompany.cosmo.pricing.repository.PriceHistoryRepository;
+import com.yourcompany.cosmo.pricing.repository.PriceHistoryRepository.History;
+import com.yourcompany.cosmo.pricing.repository.PriceHistoryRepository.NewPrice;
+import com.yourcompany.cosmo.pricing.service.PriceResolver;
 import com.yourcompany.cosmo.suppliers.repository.SupplierMaterialPriceEntity;
 import com.yourcompany.cosmo.suppliers.repository.SupplierMaterialPriceRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -18,15 +27,33 @@ import java.util.UUID;
 public class SupplierOfferPriceService {
 
   private final SupplierMaterialPriceRepository repo;
+  private final PriceHistoryRepository history;
+  private final EffectivePriceRepository effectivePrices;
+  private final TransactionalOperator tx;
+  private final PriceResolver priceResolver;
+  private final BatchCostTracker costTracker;
 
 
   /**
-   * Добавить цену на offer. (Не закрывает предыдущую автоматически — это можно добавить позже.)
+   * Добавить цену на offer. Цена, действовавшая на {@code validFrom}, закрывается днём раньше;
+   * бессрочная новая цена действует до следующей уже известной цены.
    */
   public Mono<SupplierMaterialPriceEntity> addPrice(UUID offerId, double pricePerPackage, String currency,
                                                     LocalDate validFrom, LocalDate validTo) {
-    var offer = SupplierMaterialPriceEntity.create(offerId, pricePerPackage, currency, validFrom, validTo);
-    return repo.save(offer);
+    if (validTo != null && validTo.isBefore(validFrom)) {
+      return Mono.error(new IllegalArgumentException("validTo is before validFrom"));
+    }
+    var price = new NewPrice(UUID.randomUUID(), offerId, BigDecimal.valueOf(pricePerPackage), currency, validFrom, validTo);
+    Mono<List<UUID>> add = history.add(History.OFFER, List.of(price)).collectList()
+        .flatMap(added -> added.isEmpty()
+            ? Mono.just(added)
+            : effectivePrices.refreshOffers(List.of(offerId)).thenReturn(added));
+    return tx.transactional(add)
+        .flatMap(added -> added.isEmpty()
+            ? Mono.<SupplierMaterialPriceEntity>error(new IllegalArgumentException("Price interval overlaps a later price of the offer"))
+            : repo.findById(price.id()))
+        .flatMap(saved -> priceResolver.offerChanged(offerId).thenReturn(saved))
+        .doOnNext(saved -> costTracker.offerPricesChanged(List.of(offerId), validFrom, validTo));
   }
 
   /**
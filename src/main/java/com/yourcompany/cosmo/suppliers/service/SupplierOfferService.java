@@ -1,13 +1,18 @@
 package com.yourcompany.cosmo.suppliers.service;
 
+import com.yourcompany.cosmo.batches.service.BatchCostTracker;
+import com.yourcompany.cosmo.pricing.repository.EffectivePriceRepository;
+import com.yourcompany.cosmo.pricing.service.PriceResolver;
 import com.yourcompany.cosmo.suppliers.repository.RawMaterialDefaultOfferRepository;
 import com.yourcompany.cosmo.suppliers.repository.SupplierMaterialEntity;
 import com.yourcompany.cosmo.suppliers.repository.SupplierMaterialRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -19,6 +24,10 @@ public class SupplierOfferService {
 
   private final SupplierMaterialRepository repo;
   private final RawMaterialDefaultOfferRepository defaultOfferRepo;
+  private final EffectivePriceRepository effectivePrices;
+  private final TransactionalOperator tx;
+  private final PriceResolver priceResolver;
+  private final BatchCostTracker costTracker;
 
   /**
    * Создать offer для поставщика на конкретное сырьё.
@@ -26,7 +35,8 @@ public class SupplierOfferService {
   public Mono<SupplierMaterialEntity> createOffer(UUID supplierId, UUID rawMaterialId, double packageSize,
                                                   String packageUnit, String sku, String link) {
     var offer = SupplierMaterialEntity.create(supplierId, rawMaterialId, packageSize, packageUnit, sku, link);
-    return repo.save(offer);
+    return repo.save(offer)
+        .flatMap(saved -> priceResolver.offerChanged(saved.id()).thenReturn(saved));
   }
 
   /**
@@ -34,9 +44,12 @@ public class SupplierOfferService {
    */
   public Mono<SupplierMaterialEntity> updateOffer(UUID offerId, double packageSize, String packageUnit,
                                                   String sku, String link, boolean isActive) {
-    return repo.findById(offerId)
+    return tx.transactional(repo.findById(offerId)
             .switchIfEmpty(Mono.error(new IllegalArgumentException("Offer not found")))
-            .flatMap(existing -> repo.save(existing.update(packageSize, packageUnit, sku, link, isActive)));
+            .flatMap(existing -> repo.save(existing.update(packageSize, packageUnit, sku, link, isActive)))
+            .flatMap(saved -> effectivePrices.refreshOffers(List.of(offerId)).thenReturn(saved)))
+            .flatMap(saved -> priceResolver.offerChanged(offerId).thenReturn(saved))
+            .doOnNext(saved -> costTracker.offerPricesChanged(List.of(offerId), null, null));
   }
 
   /**
@@ -64,14 +77,20 @@ public class SupplierOfferService {
    * Установить дефолтный offer для сырья.
    */
   public Mono<Void> setDefaultOffer(UUID rawMaterialId, UUID offerId) {
-    return defaultOfferRepo.setDefaultOffer(rawMaterialId, offerId);
+    return tx.transactional(defaultOfferRepo.setDefaultOffer(rawMaterialId, offerId)
+            .then(effectivePrices.refreshRawMaterials(List.of(rawMaterialId))))
+        .then(priceResolver.defaultOfferChanged(rawMaterialId))
+        .doOnSuccess(v -> costTracker.defaultOfferChanged(rawMaterialId, offerId));
   }
 
   /**
    * Снять дефолтный offer.
    */
   public Mono<Void> clearDefaultOffer(UUID rawMaterialId) {
-    return defaultOfferRepo.clearDefaultOffer(rawMaterialId);
+    return tx.transactional(defaultOfferRepo.clearDefaultOffer(rawMaterialId)
+            .then(effectivePrices.refreshRawMaterials(List.of(rawMaterialId))))
+        .then(priceResolver.defaultOfferChanged(rawMaterialId))
+        .doOnSuccess(v -> costTracker.defaultOfferChanged(rawMaterialId, null));
   }
 
 }
@@ -2,12 +2,14 @@ package com.yourcompany.cosmo.suppliers.service;
 
 import com.yourcompany.cosmo.suppliers.repository.SupplierEntity;
 import com.yourcompany.cosmo.suppliers.repository.SupplierRepository;
+import com.yourcompany.cosmo.suppliers.repository.SupplierSearchRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -18,8 +20,16 @@ import java.util.UUID;
 public class SupplierService {
 
   private final SupplierRepository repo;
+  private final SupplierSearchRepository search;
   private final DatabaseClient db;
 
+  /**
+   * Страница поставщиков.
+   *
+   * @param nextCursor позиция для следующей страницы ({@code null}, если страница последняя)
+   */
+  public record Page(List<SupplierEntity> items, String nextCursor) {}
+
   /**
    * Создать поставщика.
    */
@@ -46,9 +56,20 @@ public class SupplierService {
 
   /**
    * Листинг поставщиков с поиском по имени.
+   * С поиском — по убыванию похожести имени на запрос, без поиска — новые первыми.
+   *
+   * @param after курсор из предыдущей страницы ({@code null} — первая страница)
    */
-  public Flux<SupplierEntity> list(String q, int limit, int offset) {
-    String searchQuery = (q == null || q.isBlank()) ? null : "%" + q.trim().toLowerCase() + "%";
-    return repo.findByQuery(searchQuery, limit, offset);
+  public Mono<Page> list(String q, String after, int limit) {
+    var cursor = (after == null || after.isBlank()) ? null : SupplierSearchRepository.Cursor.decode(after);
+    Flux<SupplierSearchRepository.Hit> hits = (q == null || q.isBlank())
+        ? search.list(cursor, limit + 1)
+        : search.search(q.trim(), cursor, limit + 1);
+
+    return hits.collectList().map(rows -> {
+      List<SupplierEntity> items = rows.stream().limit(limit).map(SupplierSearchRepository.Hit::supplier).toList();
+      String next = rows.size() > limit ? rows.get(limit - 1).cursor().encode() : null;
+      return new Page(items, next);
+    });
   }
 }
@@ -0,0 +1,92 @@
+package com.yourcompany.cosmo;
+
+import com.yourcompany.cosmo.batches.repository.BatchTemplateEntity;
+import com.yourcompany.cosmo.batches.repository.BatchTemplateRepository;
+import com.yourcompany.cosmo.batches.service.BatchCostTracker;
+import com.yourcompany.cosmo.batches.service.BatchSupplierService;
+import com.yourcompany.cosmo.batches.service.BatchTemplateService;
+import com.yourcompany.cosmo.batches.service.TemplateBomCache;
+import com.yourcompany.cosmo.config.HotPathMetrics;
+import com.yourcompany.cosmo.pricing.service.PriceResolver;
+import com.yourcompany.cosmo.recipes.repository.RecipeItemRepository;
+import com.yourcompany.cosmo.recipes.service.RecipeService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Записи строк рецепта, шаблона и выбора offers выполняются одним запросом независимо от числа строк.
+ */
+class BatchedInsertsTest {
+
+  private static final int ROWS = 300;
+
+  private DatabaseClient db;
+  private DatabaseClient.GenericExecuteSpec spec;
+  private final List<String> executed = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    db = mock(DatabaseClient.class);
+    spec = mock(DatabaseClient.GenericExecuteSpec.class, RETURNS_SELF);
+    when(spec.then()).thenReturn(Mono.empty());
+    when(db.sql(anyString())).thenAnswer(inv -> {
+      executed.add(inv.getArgument(0));
+      return spec;
+    });
+  }
+
+  @Test
+  void recipeItemsAreInsertedWithOneStatement() {
+    var items = IntStream.range(0, ROWS).mapToObj(i -> new RecipeService.Item(UUID.randomUUID(), i + 0.5)).toList();
+
+    new RecipeItemRepository(db).saveAll(UUID.randomUUID(), items).block();
+
+    assertThat(executed).hasSize(1);
+    assertThat(executed.get(0)).contains("unnest");
+    verify(spec).bind(eq("rawMaterialIds"), argThat(a -> ((Object[]) a).length == ROWS));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void templateItemsAreInsertedWithOneStatement() {
+    BatchTemplateRepository repo = mock(BatchTemplateRepository.class);
+    when(repo.save(any(BatchTemplateEntity.class))).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
+    TransactionalOperator tx = mock(TransactionalOperator.class);
+    when(tx.transactional(any(Mono.class))).thenAnswer(inv -> inv.getArgument(0));
+
+    var items = IntStream.range(0, ROWS).mapToObj(i -> new BatchTemplateService.Item(UUID.randomUUID(), i + 1)).toList();
+
+    new BatchTemplateService(repo, db, tx, mock(TemplateBomCache.class)).create("t", null, items).block();
+
+    assertThat(executed).hasSize(1);
+    assertThat(executed.get(0)).contains("unnest");
+    verify(spec).bind(eq("pids"), argThat(a -> ((Object[]) a).length == ROWS));
+  }
+
+  @Test
+  void selectionsAreUpsertedWithOneStatement() {
+    var selections = IntStream.range(0, ROWS)
+        .mapToObj(i -> new BatchSupplierService.Selection(UUID.randomUUID(), UUID.randomUUID()))
+        .toList();
+
+    new BatchSupplierService(db, mock(TemplateBomCache.class), mock(PriceResolver.class),
+        new HotPathMetrics(new SimpleMeterRegistry()), mock(BatchCostTracker.class)).saveSelections(UUID.randomUUID(), selections).block();
+
+    assertThat(executed).hasSize(1);
+    assertThat(executed.get(0)).contains("unnest");
+    verify(spec).bind(eq("rids"), argThat(a -> ((Object[]) a).length == ROWS));
+  }
+}
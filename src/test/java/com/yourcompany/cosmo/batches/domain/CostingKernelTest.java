@@ -0,0 +1,69 @@
+package com.yourcompany.cosmo.batches.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CostingKernelTest {
+
+  @Test
+  void matchesBigDecimalCalculationExactly() {
+    Random rnd = new Random(42);
+    for (int round = 0; round < 500; round++) {
+      List<UUID> raws = new ArrayList<>();
+      for (int i = 0, n = 1 + rnd.nextInt(40); i < n; i++) raws.add(new UUID(rnd.nextLong(), rnd.nextLong()));
+
+      List<CostingService.ProductInBatch> products = new ArrayList<>();
+      Map<UUID, List<CostingService.RecipeItem>> recipes = new HashMap<>();
+      for (int p = 0, n = 1 + rnd.nextInt(10); p < n; p++) {
+        UUID productId = UUID.randomUUID();
+        products.add(new CostingService.ProductInBatch(productId, rnd.nextInt(10_000)));
+        List<CostingService.RecipeItem> items = new ArrayList<>();
+        for (int i = 0, m = rnd.nextInt(15); i < m; i++) {
+          items.add(new CostingService.RecipeItem(raws.get(rnd.nextInt(raws.size())), randomDecimal(rnd, 8, 8)));
+        }
+        recipes.put(productId, items);
+      }
+
+      Map<UUID, BigDecimal> prices = new HashMap<>();
+      for (UUID raw : raws) {
+        if (rnd.nextInt(5) > 0) prices.put(raw, randomDecimal(rnd, 6, 22));
+      }
+
+      var expected = CostingService.calculate(products, recipes, prices);
+      var actual = CostingKernel.calculate(products, recipes, prices);
+
+      // сравнение по toString: совпадают и значения, и scale
+      assertThat(actual.rows().toString()).isEqualTo(expected.rows().toString());
+      assertThat(actual.materialsTotal().toString()).isEqualTo(expected.materialsTotal().toString());
+    }
+  }
+
+  @Test
+  void sortsByUuidStringOrder() {
+    UUID a = UUID.fromString("7fffffff-0000-0000-0000-000000000000");
+    UUID b = UUID.fromString("80000000-0000-0000-0000-000000000000");
+    UUID c = UUID.fromString("80000000-0000-0000-8000-000000000000");
+    UUID product = UUID.randomUUID();
+    var one = new BigDecimal("1.5");
+
+    var res = CostingKernel.calculate(
+        List.of(new CostingService.ProductInBatch(product, 2)),
+        Map.of(product, List.of(
+            new CostingService.RecipeItem(c, one),
+            new CostingService.RecipeItem(a, one),
+            new CostingService.RecipeItem(b, one))),
+        Map.of());
+
+    assertThat(res.rows()).extracting(CostingService.RawCost::rawMaterialId).containsExactly(a, b, c);
+    assertThat(res.materialsTotal()).isEqualByComparingTo(BigDecimal.ZERO);
+  }
+
+  private static BigDecimal randomDecimal(Random rnd, int maxIntDigits, int maxScale) {
+    long unscaled = rnd.nextLong(1, (long) Math.pow(10, Math.min(18, maxIntDigits + rnd.nextInt(4))));
+    return BigDecimal.valueOf(unscaled, rnd.nextInt(maxScale + 1));
+  }
+}
@@ -0,0 +1,117 @@
+package com.yourcompany.cosmo.batches.service;
+
+import com.yourcompany.cosmo.config.HotPathMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.spi.Row;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.RowsFetchSpec;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.BiFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class BatchCostTrackerTest {
+
+  private static final LocalDate TODAY = LocalDate.of(2026, 3, 1);
+
+  @Test
+  void findsOnlyBatchesPricedFromChangedOffer() {
+    UUID flour = UUID.randomUUID();
+    UUID sugar = UUID.randomUUID();
+    UUID defaultFlour = UUID.randomUUID();
+    UUID otherFlour = UUID.randomUUID();
+
+    UUID january = UUID.randomUUID();
+    UUID june = UUID.randomUUID();
+    UUID selected = UUID.randomUUID();
+    UUID planned = UUID.randomUUID();
+    UUID sugarOnly = UUID.randomUUID();
+
+    var index = new BatchCostTracker.Index();
+    index.addBatch(january, LocalDate.of(2026, 1, 10), Set.of(flour, sugar));
+    index.addBatch(june, LocalDate.of(2026, 6, 10), Set.of(flour));
+    index.addBatch(selected, LocalDate.of(2026, 1, 10), Set.of(flour));
+    index.addBatch(planned, null, Set.of(flour));
+    index.addBatch(sugarOnly, LocalDate.of(2026, 1, 10), Set.of(sugar));
+    index.setDefaultOffer(flour, defaultFlour);
+    index.setOverride(selected, flour, otherFlour);
+
+    // цена дефолтного offer'а с 1 февраля: партия без даты считается на сегодня
+    assertThat(index.affectedByOffers(List.of(defaultFlour), LocalDate.of(2026, 2, 1), null, TODAY))
+        .containsExactlyInAnyOrder(june, planned);
+    assertThat(index.affectedByOffers(List.of(otherFlour), null, null, TODAY)).containsExactly(selected);
+    assertThat(index.affectedByRaw(flour, true, null, null, TODAY)).containsExactlyInAnyOrder(january, june, planned);
+
+    index.setOverride(selected, flour, null);
+    assertThat(index.affectedByOffers(List.of(otherFlour), null, null, TODAY)).isEmpty();
+    assertThat(index.affectedByOffers(List.of(defaultFlour), null, LocalDate.of(2026, 1, 31), TODAY))
+        .containsExactlyInAnyOrder(january, selected);
+
+    index.setDefaultOffer(flour, otherFlour);
+    assertThat(index.affectedByOffers(List.of(defaultFlour), null, null, TODAY)).isEmpty();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void firstCostMoveAfterRebuildIsReported() {
+    UUID batchId = UUID.randomUUID();
+    UUID templateId = UUID.randomUUID();
+    UUID flour = UUID.randomUUID();
+    UUID defaultFlour = UUID.randomUUID();
+    LocalDate pricingDate = LocalDate.of(2026, 1, 10);
+
+    List<Map<String, Object>> batchRows = List.of(Map.of("id", batchId, "template_id", templateId, "pricing_date", pricingDate));
+    Map<String, List<Map<String, Object>>> rowsBySql = Map.of(
+        "FROM batch_supplier_selection", List.of(),
+        "FROM raw_material_default_offer", List.of(Map.of("raw_material_id", flour, "supplier_material_id", defaultFlour)),
+        "FROM batch_cost_snapshot", List.of());
+    DatabaseClient db = mock(DatabaseClient.class);
+    when(db.sql(anyString())).thenAnswer(inv -> {
+      String sql = inv.getArgument(0);
+      var rows = rowsBySql.entrySet().stream().filter(e -> sql.contains(e.getKey()))
+          .map(Map.Entry::getValue).findFirst().orElse(batchRows);
+      var spec = mock(DatabaseClient.GenericExecuteSpec.class, RETURNS_SELF);
+      when(spec.map(any(BiFunction.class))).thenAnswer(map -> {
+        BiFunction<Row, Object, Object> mapper = map.getArgument(0);
+        RowsFetchSpec<Object> fetch = mock(RowsFetchSpec.class);
+        when(fetch.all()).thenAnswer(all -> Flux.fromIterable(rows)
+            .map(values -> mapper.apply(mock(Row.class, get -> values.get(get.getArgument(0))), null)));
+        return fetch;
+      });
+      return spec;
+    });
+
+    TemplateBomCache boms = mock(TemplateBomCache.class);
+    when(boms.getAll(any())).thenReturn(Mono.just(Map.of(templateId, TemplateBomCache.TemplateBom.of(List.of(
+        new TemplateBomCache.Line(UUID.randomUUID(), "Bread", 1, UUID.randomUUID(), flour, "Flour", BigDecimal.TEN))))));
+
+    BatchService batches = mock(BatchService.class);
+    when(batches.calculateLiveCosts(any())).thenReturn(cost(batchId, pricingDate, "100.00"), cost(batchId, pricingDate, "120.00"));
+
+    var tracker = new BatchCostTracker(db, boms, batches, new HotPathMetrics(new SimpleMeterRegistry()),
+        true, Duration.ofSeconds(1), Duration.ofMinutes(5), 10);
+    tracker.rebuild().block();
+
+    tracker.offerPricesChanged(List.of(defaultFlour), LocalDate.of(2026, 1, 1), null);
+    tracker.recompute().block();
+
+    assertThat(tracker.recentChanges()).singleElement().satisfies(change -> {
+      assertThat(change.batchId()).isEqualTo(batchId);
+      assertThat(change.previousTotal()).isEqualByComparingTo("100.00");
+      assertThat(change.delta()).isEqualByComparingTo("20.00");
+    });
+  }
+
+  private static Mono<Map<UUID, BatchService.CostResponse>> cost(UUID batchId, LocalDate pricingDate, String total) {
+    return Mono.just(Map.of(batchId, new BatchService.CostResponse(pricingDate, List.of(), new BigDecimal(total), null)));
+  }
+}
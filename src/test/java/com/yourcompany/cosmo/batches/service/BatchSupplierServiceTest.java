@@ -0,0 +1,148 @@
+package com.yourcompany.cosmo.batches.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.yourcompany.cosmo.config.HotPathMetrics;
+import com.yourcompany.cosmo.pricing.service.InMemoryPriceResolver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.spi.ConnectionFactories;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import liquibase.Contexts;
+import liquibase.Liquibase;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.mockito.Mockito.mock;
+
+/**
+ * JSON конфигурации поставщиков, собранный в Postgres ({@link BatchSupplierService#getConfigJson}), совпадает
+ * с сериализованным ответом {@link BatchSupplierService#getConfig} поле в поле, включая цены offers.
+ */
+class BatchSupplierServiceTest {
+
+  private static final UUID BATCH = UUID.randomUUID();
+  private static final UUID UNDATED_BATCH = UUID.randomUUID();
+
+  /**
+   * Мука: дефолтный offer с ценой, offer с ценой на февраль, неактивный offer и offer без цены на дату.
+   * Сахар: выбор партии на offer с ценой, которая не делится нацело. Соль: без offers, только ручная цена.
+   * Дрожжи: дефолтный offer неактивного поставщика. Продукты называются так, чтобы порядок "C" отличался
+   * от порядка по умолчанию.
+   */
+  private static final String FIXTURE = """
+      INSERT INTO raw_material VALUES
+        ('00000000-0000-0000-0000-00000000000a', 'Flour', 'g', true, NULL, now()),
+        ('00000000-0000-0000-0000-00000000000b', 'sugar', 'g', true, NULL, now()),
+        ('00000000-0000-0000-0000-00000000000c', 'Salt', 'g', true, NULL, now()),
+        ('00000000-0000-0000-0000-00000000000d', 'Yeast', 'g', true, NULL, now());
+      INSERT INTO supplier VALUES
+        ('00000000-0000-0000-0000-0000000000a1', 'Mill', NULL, NULL, NULL, true, now()),
+        ('00000000-0000-0000-0000-0000000000a2', 'Farm', NULL, NULL, NULL, true, now()),
+        ('00000000-0000-0000-0000-0000000000a3', 'Closed', NULL, NULL, NULL, false, now());
+      INSERT INTO supplier_material VALUES
+        ('00000000-0000-0000-0000-0000000000f1', '00000000-0000-0000-0000-0000000000a1', '00000000-0000-0000-0000-00000000000a', 1000, 'g', NULL, NULL, true, now()),
+        ('00000000-0000-0000-0000-0000000000f2', '00000000-0000-0000-0000-0000000000a2', '00000000-0000-0000-0000-00000000000a', 750, 'g', NULL, NULL, true, now()),
+        ('00000000-0000-0000-0000-0000000000f3', '00000000-0000-0000-0000-0000000000a2', '00000000-0000-0000-0000-00000000000a', 500, 'g', NULL, NULL, false, now()),
+        ('00000000-0000-0000-0000-0000000000f4', '00000000-0000-0000-0000-0000000000a1', '00000000-0000-0000-0000-00000000000a', 25000, 'g', NULL, NULL, true, now()),
+        ('00000000-0000-0000-0000-0000000000e1', '00000000-0000-0000-0000-0000000000a2', '00000000-0000-0000-0000-00000000000b', 7, 'g', NULL, NULL, true, now()),
+        ('00000000-0000-0000-0000-0000000000e2', '00000000-0000-0000-0000-0000000000a1', '00000000-0000-0000-0000-00000000000b', 3, 'g', NULL, NULL, true, now()),
+        ('00000000-0000-0000-0000-0000000000d1', '00000000-0000-0000-0000-0000000000a3', '00000000-0000-0000-0000-00000000000d', 100, 'g', NULL, NULL, true, now());
+      INSERT INTO supplier_material_price(id, supplier_material_id, price_per_package, currency, valid_from, valid_to, created_at) VALUES
+        (gen_random_uuid(), '00000000-0000-0000-0000-0000000000f1', 100, 'RUB', '2024-01-01', NULL, now()),
+        (gen_random_uuid(), '00000000-0000-0000-0000-0000000000f2', 90.5, 'RUB', '2024-02-01', '2024-02-29', now()),
+        (gen_random_uuid(), '00000000-0000-0000-0000-0000000000f4', 2000, 'RUB', '2023-01-01', '2023-12-31', now()),
+        (gen_random_uuid(), '00000000-0000-0000-0000-0000000000e1', 33, 'RUB', '2024-01-01', NULL, now()),
+        (gen_random_uuid(), '00000000-0000-0000-0000-0000000000e2', 10, 'RUB', '2024-01-01', NULL, now()),
+        (gen_random_uuid(), '00000000-0000-0000-0000-0000000000d1', 15, 'RUB', '2024-01-01', NULL, now());
+      INSERT INTO raw_material_manual_price(id, raw_material_id, price_per_gram, currency, valid_from, valid_to, created_at) VALUES
+        (gen_random_uuid(), '00000000-0000-0000-0000-00000000000c', 0.002, 'RUB', '2024-01-01', NULL, now());
+      INSERT INTO raw_material_default_offer VALUES
+        ('00000000-0000-0000-0000-00000000000a', '00000000-0000-0000-0000-0000000000f1', now()),
+        ('00000000-0000-0000-0000-00000000000d', '00000000-0000-0000-0000-0000000000d1', now());
+      INSERT INTO recipe VALUES
+        ('00000000-0000-0000-0000-0000000000b1', 'Bread', 'ACTIVE', NULL, NULL, now()),
+        ('00000000-0000-0000-0000-0000000000b2', 'bagel', 'ACTIVE', NULL, NULL, now());
+      INSERT INTO recipe_item VALUES
+        ('00000000-0000-0000-0000-0000000000b1', '00000000-0000-0000-0000-00000000000a', 500),
+        ('00000000-0000-0000-0000-0000000000b1', '00000000-0000-0000-0000-00000000000b', 12.5),
+        ('00000000-0000-0000-0000-0000000000b1', '00000000-0000-0000-0000-00000000000c', 8.25),
+        ('00000000-0000-0000-0000-0000000000b2', '00000000-0000-0000-0000-00000000000a', 90),
+        ('00000000-0000-0000-0000-0000000000b2', '00000000-0000-0000-0000-00000000000d', 2);
+      INSERT INTO product VALUES
+        ('00000000-0000-0000-0000-0000000000c1', 'Bread', NULL, '00000000-0000-0000-0000-0000000000b1', true, now()),
+        ('00000000-0000-0000-0000-0000000000c2', 'bagel', NULL, '00000000-0000-0000-0000-0000000000b2', true, now());
+      INSERT INTO batch_template VALUES ('00000000-0000-0000-0000-000000000071', 'Morning', NULL, now());
+      INSERT INTO batch_template_item VALUES
+        ('00000000-0000-0000-0000-000000000071', '00000000-0000-0000-0000-0000000000c1', 40),
+        ('00000000-0000-0000-0000-000000000071', '00000000-0000-0000-0000-0000000000c2', 120);
+      INSERT INTO batch VALUES
+        ('%1$s', '00000000-0000-0000-0000-000000000071', 'OPEN', '2024-02-15', now()),
+        ('%2$s', '00000000-0000-0000-0000-000000000071', 'DRAFT', NULL, now());
+      INSERT INTO batch_supplier_selection VALUES
+        ('%1$s', '00000000-0000-0000-0000-00000000000b', '00000000-0000-0000-0000-0000000000e1', now());
+      """;
+
+  private static EmbeddedPostgres pg;
+  private static BatchSupplierService service;
+  /** Настройки как у ObjectMapper приложения: даты строками. */
+  private static final ObjectMapper json = Jackson2ObjectMapperBuilder.json()
+      .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+      .featuresToEnable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)
+      .build();
+
+  @BeforeAll
+  static void start() throws Exception {
+    assumeFalse("root".equals(System.getProperty("user.name")), "initdb не запускается от root");
+    pg = EmbeddedPostgres.start();
+
+    try (var c = pg.getPostgresDatabase().getConnection()) {
+      new Liquibase("db/changelog/db.changelog-master.yml", new ClassLoaderResourceAccessor(), new JdbcConnection(c))
+          .update(new Contexts());
+    }
+    try (var c = pg.getPostgresDatabase().getConnection(); var st = c.createStatement()) {
+      st.execute(FIXTURE.formatted(BATCH, UNDATED_BATCH));
+    }
+
+    var db = DatabaseClient.create(ConnectionFactories.get("r2dbc:postgresql://postgres@localhost:" + pg.getPort() + "/postgres"));
+    var metrics = new HotPathMetrics(new SimpleMeterRegistry());
+    var prices = new InMemoryPriceResolver(db, Duration.ofHours(1), Duration.ofMinutes(1));
+    prices.afterPropertiesSet();
+    service = new BatchSupplierService(db, new TemplateBomCache(db, metrics, 10), prices, metrics, mock(BatchCostTracker.class));
+  }
+
+  @AfterAll
+  static void stop() throws Exception {
+    if (pg != null) pg.close();
+  }
+
+  @Test
+  void sqlJsonMatchesConfig() throws Exception {
+    for (UUID batchId : new UUID[] {BATCH, UNDATED_BATCH, UUID.randomUUID()}) {
+      JsonNode expected = json.readTree(json.writeValueAsString(service.getConfig(batchId).block()));
+      JsonNode actual = json.readTree(String.join("", service.getConfigJson(batchId).collectList().block()));
+
+      assertThat(actual).as("batch %s", batchId).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  void fixtureCoversPricedAndUnpricedOffers() throws Exception {
+    JsonNode config = json.readTree(String.join("", service.getConfigJson(BATCH).collectList().block()));
+
+    assertThat(config.path("products").findValuesAsText("productName")).containsExactly("Bread", "bagel");
+    assertThat(config.findValues("pricePerGram").stream().map(JsonNode::isNull))
+        .contains(true, false);
+  }
+}
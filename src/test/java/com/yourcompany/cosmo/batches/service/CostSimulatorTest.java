@@ -0,0 +1,63 @@
+package com.yourcompany.cosmo.batches.service;
+
+import com.yourcompany.cosmo.pricing.service.PriceResolver.PriceKey;
+import com.yourcompany.cosmo.pricing.service.PriceResolver.ResolvedPrice;
+import com.yourcompany.cosmo.pricing.service.PriceResolver.Source;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Смена offer'а в сценарии считается по цене offer'а; offer без цены на дату отклоняется,
+ * а не подменяется ручной ценой сырья.
+ */
+class CostSimulatorTest {
+
+  private static final LocalDate PD = LocalDate.of(2026, 3, 1);
+
+  private final UUID flour = UUID.randomUUID();
+  private final UUID defaultFlour = UUID.randomUUID();
+  private final UUID cheapFlour = UUID.randomUUID();
+  private final UUID unpricedFlour = UUID.randomUUID();
+
+  private final TemplateBomCache.TemplateBom bom = TemplateBomCache.TemplateBom.of(List.of(
+      new TemplateBomCache.Line(UUID.randomUUID(), "Bread", 10, UUID.randomUUID(), flour, "Flour", new BigDecimal("100"))));
+
+  private final Map<PriceKey, ResolvedPrice> resolved = Map.of(
+      new PriceKey(flour, null, PD), new ResolvedPrice(flour, new BigDecimal("0.05"), Source.DEFAULT_OFFER, defaultFlour),
+      new PriceKey(flour, cheapFlour, PD), new ResolvedPrice(flour, new BigDecimal("0.04"), Source.OVERRIDE, cheapFlour),
+      // у offer'а нет цены на дату — resolver вернул ручную цену сырья
+      new PriceKey(flour, unpricedFlour, PD), new ResolvedPrice(flour, new BigDecimal("0.01"), Source.MANUAL, null));
+
+  @Test
+  void swappedOfferIsPricedByOffer() {
+    var scenario = new CostSimulator.Scenario("cheap", null, null, Map.of(flour, cheapFlour));
+
+    var base = CostSimulator.base(bom, Map.of(), PD, resolved, List.of(scenario));
+    var result = CostSimulator.evaluate(base, scenario);
+
+    assertThat(base.cost().materialsTotal()).isEqualByComparingTo("50");
+    assertThat(result.materialsTotal()).isEqualByComparingTo("40");
+    assertThat(result.delta()).isEqualByComparingTo("-10");
+    assertThat(result.changed()).singleElement()
+        .satisfies(m -> assertThat(m.unitPrice()).isEqualByComparingTo("0.04"));
+  }
+
+  @Test
+  void swapToOfferWithoutPriceIsRejected() {
+    var scenarios = List.of(
+        new CostSimulator.Scenario("cheap", null, null, Map.of(flour, cheapFlour)),
+        new CostSimulator.Scenario("unpriced", null, null, Map.of(flour, unpricedFlour)));
+
+    assertThatThrownBy(() -> CostSimulator.base(bom, Map.of(), PD, resolved, scenarios))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining(unpricedFlour.toString());
+  }
+}
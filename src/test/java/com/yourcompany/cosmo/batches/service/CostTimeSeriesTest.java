@@ -0,0 +1,60 @@
+package com.yourcompany.cosmo.batches.service;
+
+import com.yourcompany.cosmo.batches.domain.CostingKernel;
+import com.yourcompany.cosmo.pricing.domain.PriceTimeline;
+import com.yourcompany.cosmo.pricing.service.RawPriceTimeline;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CostTimeSeriesTest {
+
+  @Test
+  void sweepMatchesCostingEveryDay() {
+    Random rnd = new Random(7);
+    LocalDate from = LocalDate.of(2026, 1, 1);
+    LocalDate to = LocalDate.of(2026, 3, 31);
+
+    for (int round = 0; round < 50; round++) {
+      List<TemplateBomCache.Line> lines = new ArrayList<>();
+      Map<UUID, RawPriceTimeline> timelines = new HashMap<>();
+      UUID productId = UUID.randomUUID();
+      for (int r = 0, n = 1 + rnd.nextInt(30); r < n; r++) {
+        UUID raw = UUID.randomUUID();
+        lines.add(new TemplateBomCache.Line(productId, "Product", 1 + rnd.nextInt(100), UUID.randomUUID(), raw, "Raw",
+            BigDecimal.valueOf(rnd.nextLong(1, 1_000_000_000L), rnd.nextInt(7))));
+        boolean hasOffer = rnd.nextBoolean();
+        timelines.put(raw, new RawPriceTimeline(raw, hasOffer ? UUID.randomUUID() : null, false,
+            hasOffer ? BigDecimal.valueOf(rnd.nextInt(1, 5000), rnd.nextInt(3)) : null,
+            hasOffer ? timeline(rnd, from) : PriceTimeline.EMPTY, timeline(rnd, from)));
+      }
+      var bom = TemplateBomCache.TemplateBom.of(lines);
+
+      var points = CostTimeSeries.sweep(bom, timelines, from, to, CostTimeSeries.Step.DAY);
+
+      assertThat(points).hasSize((int) (to.toEpochDay() - from.toEpochDay()) + 1);
+      for (var p : points) {
+        Map<UUID, BigDecimal> prices = new HashMap<>();
+        timelines.forEach((raw, t) -> prices.put(raw, t.at(p.date()).pricePerGram()));
+        // сравнение по toString: совпадают и значения, и scale
+        assertThat(p.materialsTotal().toString())
+            .as("total on %s", p.date())
+            .isEqualTo(CostingKernel.price(bom.compiled, prices).materialsTotal().toString());
+      }
+    }
+  }
+
+  private static PriceTimeline timeline(Random rnd, LocalDate from) {
+    List<PriceTimeline.Interval> intervals = new ArrayList<>();
+    for (int i = 0, n = rnd.nextInt(6); i < n; i++) {
+      LocalDate start = from.plusDays(rnd.nextInt(-30, 90));
+      LocalDate end = rnd.nextBoolean() ? null : start.plusDays(rnd.nextInt(60));
+      intervals.add(new PriceTimeline.Interval(start, end, BigDecimal.valueOf(rnd.nextLong(1, 100_000_000L), rnd.nextInt(9))));
+    }
+    return PriceTimeline.of(intervals);
+  }
+}
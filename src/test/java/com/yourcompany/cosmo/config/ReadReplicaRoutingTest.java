@@ -0,0 +1,127 @@
+package com.yourcompany.cosmo.config;
+
+import io.r2dbc.spi.ConnectionFactories;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.security.Principal;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+/**
+ * Маршрутизация на двух настоящих Postgres: запись в транзакции — на primary, GET — на реплику,
+ * чтения недавно писавшего пользователя — на primary до конца окна read-your-writes.
+ * Какой сервер ответил, видно по {@code inet_server_port()}.
+ */
+class ReadReplicaRoutingTest {
+
+  private static EmbeddedPostgres primary;
+  private static EmbeddedPostgres replica;
+  private static DatabaseClient db;
+  private static TransactionalOperator tx;
+
+  @BeforeAll
+  static void start() throws Exception {
+    assumeFalse("root".equals(System.getProperty("user.name")), "initdb не запускается от root");
+    primary = EmbeddedPostgres.start();
+    replica = EmbeddedPostgres.start();
+    for (EmbeddedPostgres pg : new EmbeddedPostgres[] {primary, replica}) {
+      try (var c = pg.getPostgresDatabase().getConnection(); var st = c.createStatement()) {
+        st.execute("CREATE TABLE note(author text NOT NULL)");
+      }
+    }
+
+    var routing = new ReadWriteRoutingConnectionFactory(
+        ConnectionFactories.get(url(primary)), ConnectionFactories.get(url(replica)));
+    db = DatabaseClient.create(routing);
+    tx = TransactionalOperator.create(new R2dbcTransactionManager(routing));
+  }
+
+  @AfterAll
+  static void stop() throws Exception {
+    if (primary != null) primary.close();
+    if (replica != null) replica.close();
+  }
+
+  @Test
+  void transactionalWriteLandsOnPrimary() throws Exception {
+    DbRouting.onReplica(tx.transactional(db.sql("INSERT INTO note VALUES ('tx')").then())).block();
+
+    assertThat(count(primary, "tx")).isEqualTo(1);
+    assertThat(count(replica, "tx")).isZero();
+  }
+
+  @Test
+  void getReadsReplicaOutsideReadYourWritesWindow() throws Exception {
+    AtomicLong now = new AtomicLong();
+    var filter = new ReadYourWritesFilter(Duration.ofSeconds(5), now::get);
+
+    assertThat(serve(filter, get("alice"))).isEqualTo(replica.getPort());
+
+    WebFilterChain write = ex -> tx.transactional(db.sql("INSERT INTO note VALUES ('alice')").then());
+    filter.filter(post("alice"), write).block();
+    assertThat(count(primary, "alice")).isEqualTo(1);
+
+    now.addAndGet(Duration.ofSeconds(4).toNanos());
+    assertThat(serve(filter, get("alice"))).isEqualTo(primary.getPort());
+    assertThat(serve(filter, get("bob"))).isEqualTo(replica.getPort());
+
+    now.addAndGet(Duration.ofSeconds(2).toNanos());
+    assertThat(serve(filter, get("alice"))).isEqualTo(replica.getPort());
+  }
+
+  /** Порт сервера, на котором выполнилось чтение запроса. */
+  private static int serve(ReadYourWritesFilter filter, ServerWebExchange exchange) {
+    AtomicReference<Integer> port = new AtomicReference<>();
+    WebFilterChain read = ex -> db.sql("SELECT inet_server_port() AS port")
+        .map((row, meta) -> row.get("port", Integer.class))
+        .one()
+        .doOnNext(port::set)
+        .then();
+    filter.filter(exchange, read).block();
+    return port.get();
+  }
+
+  private static int count(EmbeddedPostgres pg, String author) throws SQLException {
+    try (var c = pg.getPostgresDatabase().getConnection();
+         var st = c.prepareStatement("SELECT count(*) FROM note WHERE author = ?")) {
+      st.setString(1, author);
+      try (var rs = st.executeQuery()) {
+        rs.next();
+        return rs.getInt(1);
+      }
+    }
+  }
+
+  private static String url(EmbeddedPostgres pg) {
+    return "r2dbc:postgresql://postgres@localhost:" + pg.getPort() + "/postgres";
+  }
+
+  private static ServerWebExchange get(String user) {
+    return as(user, MockServerHttpRequest.get("/api/batches/1/cost"));
+  }
+
+  private static ServerWebExchange post(String user) {
+    return as(user, MockServerHttpRequest.post("/api/batches/1/reprice"));
+  }
+
+  private static ServerWebExchange as(String user, MockServerHttpRequest.BaseBuilder<?> request) {
+    Principal principal = () -> user;
+    return MockServerWebExchange.from(request).mutate().principal(Mono.just(principal)).build();
+  }
+}
@@ -0,0 +1,98 @@
+package com.yourcompany.cosmo.config;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.transaction.reactive.TransactionContextManager;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Транзакции и запросы без метки идут на primary, GET — на реплику, кроме окна read-your-writes.
+ */
+class ReadWriteRoutingTest {
+
+  private final Connection primaryConnection = mock(Connection.class);
+  private final Connection replicaConnection = mock(Connection.class);
+  private ReadWriteRoutingConnectionFactory routing;
+
+  @BeforeEach
+  void setUp() {
+    ConnectionFactory primary = mock(ConnectionFactory.class);
+    ConnectionFactory replica = mock(ConnectionFactory.class);
+    doReturn(Mono.just(primaryConnection)).when(primary).create();
+    doReturn(Mono.just(replicaConnection)).when(replica).create();
+    routing = new ReadWriteRoutingConnectionFactory(primary, replica);
+  }
+
+  private Mono<Connection> connect() {
+    return Mono.from(routing.create());
+  }
+
+  @Test
+  void unmarkedWorkGoesToPrimary() {
+    assertThat(connect().block()).isSameAs(primaryConnection);
+  }
+
+  @Test
+  void markedReadGoesToReplica() {
+    assertThat(DbRouting.onReplica(connect()).block()).isSameAs(replicaConnection);
+    assertThat(DbRouting.onPrimary(connect()).contextWrite(ctx -> DbRouting.mark(ctx, DbRouting.Target.REPLICA)).block())
+        .isSameAs(primaryConnection);
+  }
+
+  @Test
+  void transactionGoesToPrimaryEvenWhenMarkedRead() {
+    var inTx = connect().contextWrite(TransactionContextManager.createTransactionContext());
+
+    assertThat(DbRouting.onReplica(inTx).block()).isSameAs(primaryConnection);
+  }
+
+  @Test
+  void readsOfRecentWriterStayOnPrimaryForTheWindow() {
+    AtomicLong now = new AtomicLong();
+    var filter = new ReadYourWritesFilter(Duration.ofSeconds(5), now::get);
+
+    assertThat(serve(filter, get("alice"))).isSameAs(replicaConnection);
+
+    serve(filter, post("alice"));
+    now.addAndGet(Duration.ofSeconds(4).toNanos());
+    assertThat(serve(filter, get("alice"))).isSameAs(primaryConnection);
+    assertThat(serve(filter, get("bob"))).isSameAs(replicaConnection);
+
+    now.addAndGet(Duration.ofSeconds(2).toNanos());
+    assertThat(serve(filter, get("alice"))).isSameAs(replicaConnection);
+  }
+
+  private Connection serve(ReadYourWritesFilter filter, ServerWebExchange exchange) {
+    AtomicReference<Connection> used = new AtomicReference<>();
+    WebFilterChain handler = ex -> connect().doOnNext(used::set).then();
+    filter.filter(exchange, handler).block();
+    return used.get();
+  }
+
+  private static ServerWebExchange get(String user) {
+    return as(user, MockServerHttpRequest.get("/api/batches/1/cost"));
+  }
+
+  private static ServerWebExchange post(String user) {
+    return as(user, MockServerHttpRequest.post("/api/batches/1/reprice"));
+  }
+
+  private static ServerWebExchange as(String user, MockServerHttpRequest.BaseBuilder<?> request) {
+    Principal principal = () -> user;
+    return MockServerWebExchange.from(request).mutate().principal(Mono.just(principal)).build();
+  }
+}
@@ -0,0 +1,162 @@
+package com.yourcompany.cosmo.pricing.repository;
+
+import com.yourcompany.cosmo.config.HotPathMetrics;
+import com.yourcompany.cosmo.pricing.repository.PriceHistoryRepository.History;
+import com.yourcompany.cosmo.pricing.repository.PriceHistoryRepository.NewPrice;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.spi.ConnectionFactories;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import liquibase.Contexts;
+import liquibase.Liquibase;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+/**
+ * Миграция 009 и {@link PriceHistoryRepository#add} на настоящем Postgres: интервалы цен не теряются
+ * при делении охватывающих цен и при замене цены того же дня.
+ */
+class PriceHistoryRepositoryTest {
+
+  /**
+   * Цена до миграции; {@code order} — порядок добавления (created_at).
+   */
+  record OldPrice(UUID key, int price, LocalDate from, LocalDate to, int order) {}
+
+  private static final UUID NESTED = UUID.randomUUID();
+  private static final UUID SAME_DAY = UUID.randomUUID();
+  private static final UUID OPEN_ENDED = UUID.randomUUID();
+
+  private static final List<OldPrice> FIXTURE = List.of(
+      new OldPrice(NESTED, 10, date("2024-01-01"), date("2024-01-10"), 1),
+      new OldPrice(NESTED, 20, date("2024-01-05"), date("2024-01-07"), 2),
+      new OldPrice(SAME_DAY, 30, date("2024-02-01"), date("2024-02-28"), 1),
+      new OldPrice(SAME_DAY, 40, date("2024-02-01"), date("2024-02-10"), 2),
+      new OldPrice(OPEN_ENDED, 50, date("2024-01-01"), null, 1),
+      new OldPrice(OPEN_ENDED, 60, date("2024-02-01"), date("2024-02-10"), 2),
+      new OldPrice(OPEN_ENDED, 70, date("2024-03-01"), null, 3));
+
+  private static EmbeddedPostgres pg;
+  private static DatabaseClient db;
+  private static PriceHistoryRepository history;
+
+  @BeforeAll
+  static void start() throws Exception {
+    assumeFalse("root".equals(System.getProperty("user.name")), "initdb не запускается от root");
+    pg = EmbeddedPostgres.start();
+
+    try (var c = pg.getPostgresDatabase().getConnection(); var st = c.createStatement()) {
+      for (String table : List.of("supplier_material_price(id uuid PRIMARY KEY, supplier_material_id uuid NOT NULL, price_per_package",
+          "raw_material_manual_price(id uuid PRIMARY KEY, raw_material_id uuid NOT NULL, price_per_gram")) {
+        st.execute("CREATE TABLE " + table + " numeric(14,6) NOT NULL, currency varchar(8) NOT NULL,"
+            + " valid_from date NOT NULL, valid_to date, created_at timestamptz NOT NULL)");
+      }
+      for (OldPrice p : FIXTURE) {
+        st.execute("INSERT INTO supplier_material_price VALUES (gen_random_uuid(), '%s', %d, 'RUB', '%s', %s, timestamptz '2024-01-01' + %d * interval '1 minute')"
+            .formatted(p.key(), p.price(), p.from(), p.to() == null ? "NULL" : "'" + p.to() + "'", p.order()));
+      }
+      new Liquibase("db/changelog/009_price_validity_ranges.yml", new ClassLoaderResourceAccessor(), new JdbcConnection(c))
+          .update(new Contexts());
+    }
+
+    db = DatabaseClient.create(ConnectionFactories.get("r2dbc:postgresql://postgres@localhost:" + pg.getPort() + "/postgres"));
+    history = new PriceHistoryRepository(db, new HotPathMetrics(new SimpleMeterRegistry()));
+  }
+
+  @AfterAll
+  static void stop() throws Exception {
+    if (pg != null) pg.close();
+  }
+
+  @Test
+  void migrationKeepsPriceOfEveryDay() {
+    for (UUID key : List.of(NESTED, SAME_DAY, OPEN_ENDED)) {
+      for (LocalDate d = date("2023-12-31"); d.isBefore(date("2024-04-01")); d = d.plusDays(1)) {
+        LocalDate day = d;
+        Integer before = FIXTURE.stream()
+            .filter(p -> p.key().equals(key) && !p.from().isAfter(day) && (p.to() == null || !p.to().isBefore(day)))
+            .max(Comparator.comparing(OldPrice::from).thenComparing(OldPrice::order))
+            .map(OldPrice::price).orElse(null);
+
+        List<Integer> after = db.sql("""
+                SELECT price_per_package FROM supplier_material_price
+                WHERE supplier_material_id = :key AND validity @> :day::date
+                """)
+            .bind("key", key).bind("day", day)
+            .map((row, meta) -> row.get(0, BigDecimal.class).intValueExact())
+            .all().collectList().block();
+
+        assertThat(after).as("%s on %s", key, day).isEqualTo(before == null ? List.of() : List.of(before));
+      }
+    }
+    assertThat(intervals(NESTED)).containsExactly(
+        "10 2024-01-01..2024-01-04", "20 2024-01-05..2024-01-07", "10 2024-01-08..2024-01-10");
+  }
+
+  @Test
+  void enclosingPriceIsSplit() {
+    UUID key = UUID.randomUUID();
+    add(key, 1, "2024-01-01", "2024-12-31");
+
+    assertThat(add(key, 2, "2024-03-01", "2024-03-31")).hasSize(1);
+
+    assertThat(intervals(key)).containsExactly(
+        "1 2024-01-01..2024-02-29", "2 2024-03-01..2024-03-31", "1 2024-04-01..2024-12-31");
+  }
+
+  @Test
+  void sameDayPriceIsReplaced() {
+    UUID key = UUID.randomUUID();
+    add(key, 1, "2024-01-01", null);
+    add(key, 2, "2024-02-01", "2024-02-29");
+
+    assertThat(add(key, 3, "2024-01-01", null)).hasSize(1);
+    assertThat(add(key, 4, "2024-02-01", "2024-02-10")).hasSize(1);
+
+    assertThat(intervals(key)).containsExactly(
+        "3 2024-01-01..2024-01-31", "4 2024-02-01..2024-02-10", "2 2024-02-11..2024-02-29", "1 2024-03-01..null");
+  }
+
+  @Test
+  void priceOverlappingLaterPriceIsRejected() {
+    UUID key = UUID.randomUUID();
+    add(key, 1, "2024-01-01", "2024-01-31");
+    add(key, 2, "2024-02-01", null);
+
+    assertThat(add(key, 3, "2024-01-15", "2024-02-05")).isEmpty();
+
+    assertThat(intervals(key)).containsExactly("1 2024-01-01..2024-01-31", "2 2024-02-01..null");
+  }
+
+  private static List<UUID> add(UUID key, int price, String from, String to) {
+    var p = new NewPrice(UUID.randomUUID(), key, BigDecimal.valueOf(price), "RUB", date(from), to == null ? null : date(to));
+    return history.add(History.OFFER, List.of(p)).collectList().block();
+  }
+
+  private static List<String> intervals(UUID key) {
+    return db.sql("""
+            SELECT price_per_package, valid_from, valid_to FROM supplier_material_price
+            WHERE supplier_material_id = :key ORDER BY valid_from
+            """)
+        .bind("key", key)
+        .map((row, meta) -> row.get(0, BigDecimal.class).stripTrailingZeros().toPlainString()
+            + " " + row.get(1, LocalDate.class) + ".." + row.get(2, LocalDate.class))
+        .all().collectList().block();
+  }
+
+  private static LocalDate date(String s) {
+    return LocalDate.parse(s);
+  }
+}
@@ -0,0 +1,75 @@
+package com.yourcompany.cosmo.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * При заполнении кэша сначала вытесняются истёкшие токены, затем — давно не использованные.
+ */
+class CachingJwtAuthenticationConverterTest {
+
+  private static final class MutableClock extends Clock {
+    Instant now = Instant.parse("2026-03-01T10:00:00Z");
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+
+  private final MutableClock clock = new MutableClock();
+  private final CachingJwtAuthenticationConverter converter =
+      new CachingJwtAuthenticationConverter(new SimpleMeterRegistry(), 2, clock);
+
+  @Test
+  void expiredTokenIsEvictedBeforeLeastRecentlyUsed() {
+    Jwt shortLived = jwt("a", "short", Duration.ofSeconds(10));
+    Jwt longLived = jwt("b", "long", Duration.ofHours(1));
+    var shortAuth = converter.authenticate(shortLived);
+    var longAuth = converter.authenticate(longLived);
+    converter.authenticate(shortLived);
+
+    clock.now = clock.now.plusSeconds(20);
+    converter.authenticate(jwt("c", "other", Duration.ofHours(1)));
+
+    assertThat(converter.size()).isEqualTo(2);
+    assertThat(converter.authenticate(longLived)).isSameAs(longAuth);
+    assertThat(converter.authenticate(shortLived)).isNotSameAs(shortAuth);
+  }
+
+  @Test
+  void tokensWithoutJtiAreKeyedByValue() {
+    var first = converter.authenticate(jwt("same", null, Duration.ofHours(1)));
+
+    assertThat(converter.authenticate(jwt("same", null, Duration.ofHours(1)))).isSameAs(first);
+    assertThat(converter.authenticate(jwt("different", null, Duration.ofHours(1)))).isNotSameAs(first);
+  }
+
+  private Jwt jwt(String value, String jti, Duration ttl) {
+    var builder = Jwt.withTokenValue(value)
+        .header("alg", "RS256")
+        .subject("user")
+        .expiresAt(clock.now.plus(ttl));
+    if (jti != null) builder.jti(jti);
+    return builder.build();
+  }
+}
@@ -0,0 +1,109 @@
+package com.yourcompany.cosmo.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Токены проверяются по локальному JWKS: чужой kid и чужой issuer отклоняются,
+ * а неудачное перечитывание файла оставляет прежний набор ключей.
+ */
+class LocalJwksConfigTest {
+
+  private static final String ISSUER = "https://keycloak.local/realms/cosmo";
+  private static final Duration REFRESH = Duration.ofMillis(100);
+
+  @TempDir
+  Path dir;
+
+  private LocalJwkSet keys;
+
+  @AfterEach
+  void stop() {
+    if (keys != null) keys.destroy();
+  }
+
+  @Test
+  void tokenIsCheckedAgainstLocalKeys() throws Exception {
+    RSAKey key = rsa("k1");
+    RSAKey stranger = rsa("k2");
+    ReactiveJwtDecoder decoder = decoder(key, ISSUER);
+
+    assertThat(decoder.decode(token(key, ISSUER)).block().getSubject()).isEqualTo("user");
+    assertThatThrownBy(() -> decoder.decode(token(stranger, ISSUER)).block()).isInstanceOf(JwtException.class);
+    assertThatThrownBy(() -> decoder.decode(token(key, "https://other.local/realms/cosmo")).block())
+        .isInstanceOf(JwtException.class);
+  }
+
+  @Test
+  void failedRefreshKeepsPreviousKeys() throws Exception {
+    RSAKey first = rsa("k1");
+    RSAKey rotated = rsa("k2");
+    ReactiveJwtDecoder decoder = decoder(first, ISSUER);
+
+    writeJwks(rotated);
+    await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+        assertThat(decoder.decode(token(rotated, ISSUER)).block()).isNotNull());
+
+    Files.writeString(dir.resolve("jwks.json"), "{ not a jwk set");
+    Thread.sleep(REFRESH.multipliedBy(5).toMillis());
+
+    assertThat(decoder.decode(token(rotated, ISSUER)).block().getSubject()).isEqualTo("user");
+    assertThatThrownBy(() -> decoder.decode(token(first, ISSUER)).block()).isInstanceOf(JwtException.class);
+  }
+
+  private ReactiveJwtDecoder decoder(RSAKey key, String issuer) throws Exception {
+    writeJwks(key);
+    keys = new LocalJwkSet(new FileSystemResource(dir.resolve("jwks.json")), REFRESH);
+    keys.afterPropertiesSet();
+    return new LocalJwksConfig().jwtDecoder(keys, issuer);
+  }
+
+  private void writeJwks(RSAKey key) throws Exception {
+    // запись через временный файл: фоновое перечитывание не должно увидеть файл наполовину
+    Path tmp = dir.resolve("jwks.json.tmp");
+    Files.writeString(tmp, new JWKSet(key.toPublicJWK()).toString());
+    Files.move(tmp, dir.resolve("jwks.json"), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static RSAKey rsa(String kid) throws JOSEException {
+    return new RSAKeyGenerator(2048).keyID(kid).generate();
+  }
+
+  private static String token(RSAKey key, String issuer) throws JOSEException {
+    Instant now = Instant.now();
+    var jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(),
+        new JWTClaimsSet.Builder()
+            .issuer(issuer)
+            .subject("user")
+            .issueTime(Date.from(now))
+            .expirationTime(Date.from(now.plusSeconds(300)))
+            .build());
+    jwt.sign(new RSASSASigner(key));
+    return jwt.serialize();
+  }
+}
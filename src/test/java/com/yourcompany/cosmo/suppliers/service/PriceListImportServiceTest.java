@@ -0,0 +1,145 @@
+package com.yourcompany.cosmo.suppliers.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yourcompany.cosmo.batches.service.BatchCostTracker;
+import com.yourcompany.cosmo.pricing.repository.EffectivePriceRepository;
+import com.yourcompany.cosmo.pricing.repository.PriceHistoryRepository;
+import com.yourcompany.cosmo.pricing.repository.PriceHistoryRepository.NewPrice;
+import com.yourcompany.cosmo.pricing.service.PriceResolver;
+import com.yourcompany.cosmo.suppliers.service.PriceListImportService.ImportReport;
+import com.yourcompany.cosmo.suppliers.service.PriceListImportService.LineError;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.RowsFetchSpec;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Разбор CSV и подготовка пачки: кавычки, заголовок, строки одного offer'а с одинаковой valid_from,
+ * закрытие бессрочной цены следующей строкой и ошибки строк, отклонённых при записи пачки.
+ */
+class PriceListImportServiceTest {
+
+  private static final UUID SUPPLIER = UUID.randomUUID();
+  private static final String FLOUR_SKU = "FL-1, bag";
+  private static final String SUGAR_SKU = "SU \"fine\" 1kg";
+
+  private final UUID flour = UUID.randomUUID();
+  private final UUID sugar = UUID.randomUUID();
+
+  private DatabaseClient db;
+  private PriceHistoryRepository history;
+  private BatchCostTracker costTracker;
+  private final List<List<NewPrice>> written = new ArrayList<>();
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    db = mock(DatabaseClient.class);
+    var spec = mock(DatabaseClient.GenericExecuteSpec.class, RETURNS_SELF);
+    RowsFetchSpec<Object> offers = mock(RowsFetchSpec.class);
+    when(offers.all()).thenReturn(Flux.just(Map.entry(FLOUR_SKU, flour), Map.entry(SUGAR_SKU, sugar)));
+    when(spec.map(any(BiFunction.class))).thenReturn(offers);
+    when(db.sql(anyString())).thenReturn(spec);
+
+    history = mock(PriceHistoryRepository.class);
+    when(history.add(any(), anyList())).thenAnswer(inv -> {
+      List<NewPrice> prices = inv.getArgument(1);
+      written.add(prices);
+      return Flux.fromIterable(prices).map(NewPrice::id);
+    });
+    costTracker = mock(BatchCostTracker.class);
+  }
+
+  @Test
+  void quotedFieldsAndEscapedQuotes() {
+    assertThat(PriceListImportService.splitCsv("\"FL-1, bag\", 12.5 ,\"SU \"\"fine\"\" 1kg\",,"))
+        .containsExactly("FL-1, bag", "12.5", "SU \"fine\" 1kg", "", "");
+    assertThatThrownBy(() -> PriceListImportService.splitCsv("\"FL-1,12.5"))
+        .hasMessage("Unterminated quoted field");
+  }
+
+  @Test
+  void rowsOfOfferAreOrderedAndClosed() {
+    ImportReport report = importCsv(1000, """
+        sku,price_per_package,currency,valid_from,valid_to
+        "FL-1, bag",100,RUB,2024-01-01
+        "FL-1, bag",110,RUB,2024-02-01,2024-12-31
+        "FL-1, bag",120,RUB,2024-02-01
+        "SU ""fine"" 1kg",31,RUB,2024-03-01
+        "SU ""fine"" 1kg",30,RUB,2024-01-01,2024-01-10
+        """);
+
+    assertThat(report.linesRead()).isEqualTo(5);
+    assertThat(report.imported()).isEqualTo(4);
+    assertThat(report.errors()).containsExactly(new LineError(3, FLOUR_SKU, "Superseded by line 4"));
+    assertThat(written).singleElement().satisfies(prices -> assertThat(prices)
+        .extracting(NewPrice::key, p -> p.value().toPlainString(), NewPrice::validFrom, NewPrice::validTo)
+        .containsExactlyInAnyOrder(
+            tuple(flour, "100", date("2024-01-01"), date("2024-01-31")),
+            tuple(flour, "120", date("2024-02-01"), null),
+            tuple(sugar, "30", date("2024-01-01"), date("2024-01-10")),
+            tuple(sugar, "31", date("2024-03-01"), null)));
+  }
+
+  @Test
+  void rowsRejectedByHistoryAreReportedPerChunk() {
+    // вторая пачка: последняя по valid_from строка пересекается с уже сохранённой ценой
+    when(history.add(any(), anyList()))
+        .thenAnswer(inv -> Flux.fromIterable(inv.<List<NewPrice>>getArgument(1)).map(NewPrice::id))
+        .thenAnswer(inv -> Flux.just(inv.<List<NewPrice>>getArgument(1).get(0).id()));
+
+    ImportReport report = importCsv(2, """
+        "SU ""fine"" 1kg",10,RUB,2024-01-01
+        "SU ""fine"" 1kg",11,RUB,2024-02-01
+        "SU ""fine"" 1kg",12,RUB,2024-03-01
+        "SU ""fine"" 1kg",13,RUB,2024-04-01
+        """);
+
+    assertThat(report.imported()).isEqualTo(3);
+    assertThat(report.failed()).isEqualTo(1);
+    assertThat(report.errors())
+        .containsExactly(new LineError(4, SUGAR_SKU, "Price interval overlaps a later price of the offer"));
+    verify(history, times(2)).add(any(), anyList());
+    verify(costTracker).offerPricesChanged(Set.of(sugar), date("2024-03-01"), null);
+  }
+
+  @SuppressWarnings("unchecked")
+  private ImportReport importCsv(int chunkSize, String csv) {
+    EffectivePriceRepository effectivePrices = mock(EffectivePriceRepository.class);
+    when(effectivePrices.refreshOffers(anyCollection())).thenReturn(Mono.empty());
+    TransactionalOperator tx = mock(TransactionalOperator.class);
+    when(tx.transactional(any(Mono.class))).thenAnswer(inv -> inv.getArgument(0));
+    PriceResolver priceResolver = mock(PriceResolver.class);
+    when(priceResolver.offersChanged(anyCollection())).thenReturn(Mono.empty());
+
+    var service = new PriceListImportService(db, history, effectivePrices, tx, priceResolver, costTracker,
+        new ObjectMapper(), chunkSize, 100);
+    Flux<DataBuffer> body = Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(csv.getBytes(StandardCharsets.UTF_8)));
+    return service.importPriceList(SUPPLIER, body, MediaType.parseMediaType("text/csv")).block();
+  }
+
+  private static LocalDate date(String text) {
+    return LocalDate.parse(text);
+  }
+}